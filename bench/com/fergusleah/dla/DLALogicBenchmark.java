@@ -0,0 +1,85 @@
+package com.fergusleah.dla;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * DLALogicBenchmark measures the checks and calculations made for every move and every attached particle.
+ * A partly grown DLA is used so that the occupancy grid holds a realistic structure.
+ * @author Fergus Leah
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DLALogicBenchmark
+{
+    // The number of positions which are checked in turn, a power of two so the index can wrap with a mask
+    private static final int POSITION_COUNT = 4096;
+
+    // The DLA logic holding the grown structure
+    private DLALogic dlaLogic;
+
+    // Random positions within the DLA circle
+    private int[] positionsX;
+    private int[] positionsY;
+
+    // The index of the next position or particle to use
+    private int index;
+
+    /**
+     * Grow a DLA filling 10% of the default DLA circle and choose the positions to check.
+     */
+    @Setup
+    public void setup()
+    {
+        dlaLogic = new DLALogic();
+        dlaLogic.setSeed(42);
+        dlaLogic.setFillPercentage(10);
+        dlaLogic.run();
+
+        Random random = new Random(42);
+        positionsX = new int[POSITION_COUNT];
+        positionsY = new int[POSITION_COUNT];
+        for (int i = 0; i < POSITION_COUNT; i++)
+        {
+            positionsX[i] = random.nextInt(dlaLogic.getDlaCircleDiameter());
+            positionsY[i] = random.nextInt(dlaLogic.getDlaCircleDiameter());
+        }
+    }
+
+    /**
+     * Check whether the next position contains an attached particle.
+     * @return The result of the check, so that it is not removed as dead code.
+     */
+    @Benchmark
+    public boolean positionIsAttached()
+    {
+        index = (index + 1) & (POSITION_COUNT - 1);
+        return dlaLogic.positionIsAttached(positionsX[index], positionsY[index]);
+    }
+
+    /**
+     * Calculate the colour of the next particle, as is done when each particle is attached.
+     * @return The packed colour, so that it is not removed as dead code.
+     */
+    @Benchmark
+    public int interpolateBetweenColours()
+    {
+        int maxParticles = dlaLogic.getMaxParticles();
+        index = index + 1 < maxParticles ? index + 1 : 0;
+        return dlaLogic.interpolateBetweenColours(dlaLogic.getFirstColour(), dlaLogic.getSecondColour(), (double) (index + 1) / maxParticles);
+    }
+}
@@ -0,0 +1,103 @@
+package com.fergusleah.dla;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * DLARunBenchmark measures the full DLA generation process for several circle diameters, masks and fill percentages.
+ * As well as the number of DLAs generated per second, the steps and attachments per second are reported,
+ * and running with the gc profiler (-prof gc) reports the allocation rate.
+ * @author Fergus Leah
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+public class DLARunBenchmark
+{
+    @Param({ "250", "500", "1000" })
+    public int diameter;
+
+    @Param({ "4", "16" })
+    public int maskSize;
+
+    @Param({ "5", "20" })
+    public double fillPercentage;
+
+    // The DLA logic, which is reused so that only the generation process itself is measured
+    private DLALogic dlaLogic;
+
+    /**
+     * Create the DLA logic for this combination of parameters.
+     */
+    @Setup
+    public void setup()
+    {
+        dlaLogic = new DLALogic(diameter);
+        dlaLogic.setMaskSize(maskSize);
+        dlaLogic.setFillPercentage(fillPercentage);
+    }
+
+    /**
+     * Remove the previous DLA and reset the seed, so that every generation process grows the same structure.
+     */
+    @Setup(Level.Invocation)
+    public void reset()
+    {
+        dlaLogic.resetAttachedParticles();
+        dlaLogic.resetPositionContainsAttachedParticle();
+        dlaLogic.setSeed(42);
+    }
+
+    /**
+     * Generate a complete DLA and count its steps and attachments.
+     * @param counters The steps and attachments per second.
+     * @return The attached particles, so that the generation process is not removed as dead code.
+     */
+    @Benchmark
+    public ParticleView run(Counters counters)
+    {
+        dlaLogic.run();
+        counters.steps += dlaLogic.getSteps();
+        counters.attachments += dlaLogic.getAttachedParticles().size();
+        return dlaLogic.getAttachedParticles();
+    }
+
+    /**
+     * Counters are reported by JMH as rates alongside the benchmark score.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters
+    {
+        // The number of moves and jumps made by particles
+        public long steps;
+
+        // The number of particles attached to the growing structure
+        public long attachments;
+
+        /**
+         * Clear the counters before each iteration.
+         */
+        @Setup(Level.Iteration)
+        public void clear()
+        {
+            steps = 0;
+            attachments = 0;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.fergusleah.dla;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * SquareBenchmark measures moving a square and creating the mask of neighbourhood squares around it.
+ * @author Fergus Leah
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SquareBenchmark
+{
+    // The square which is moved, starting at the center of the default DLA circle
+    private Square square;
+
+    /**
+     * Create the square before the benchmarks are run.
+     */
+    @Setup
+    public void setup()
+    {
+        square = new Square(DLALogic.DEFAULT_DLA_CIRCLE_DIAMETER / 2, DLALogic.DEFAULT_DLA_CIRCLE_DIAMETER / 2);
+    }
+
+    /**
+     * Move the square once in a random direction.
+     * @return The moved square, so that the move is not removed as dead code.
+     */
+    @Benchmark
+    public Square randomMove()
+    {
+        square.randomMove();
+        return square;
+    }
+
+    /**
+     * Create the mask of neighbourhood squares around the square.
+     * @param maskState Holds the mask size being measured.
+     * @return The mask, so that it is not removed as dead code.
+     */
+    @Benchmark
+    public ArrayList<Square> getMask(MaskState maskState)
+    {
+        return square.getMask(maskState.maskSize);
+    }
+
+    /**
+     * MaskState holds each of the original mask sizes, so that only the mask benchmark is repeated for each size.
+     */
+    @State(Scope.Thread)
+    public static class MaskState
+    {
+        @Param({ "4", "8", "12", "16" })
+        public int maskSize;
+    }
+}
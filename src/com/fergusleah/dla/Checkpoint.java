@@ -0,0 +1,264 @@
+package com.fergusleah.dla;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Checkpoint is the state of a DLA generation process at one moment, which can be written to a checkpoint file and
+ * read back to resume the process.
+ *
+ * A checkpoint file starts with a short header, followed by one record per checkpoint. Each record holds the
+ * parameters, counters and random state at that checkpoint, along with only the particles attached since the
+ * previous record, so writing a checkpoint costs time in proportion to the growth since the last one. The grids
+ * and structure radius are not written since they are rebuilt from the particles. Each record is preceded by its length and checksum,
+ * so a record which was only partly written when the program stopped is ignored when the file is read.
+ * @author Fergus Leah
+ */
+class Checkpoint
+{
+    // Identifies a checkpoint file, the characters "DLAC"
+    static final int MAGIC = 0x444C4143;
+
+    // The version of the file layout
+    static final int VERSION = 1;
+
+    // The number of bytes in the file header
+    static final int HEADER_LENGTH = 8;
+
+    // The parameters of the DLA generation process
+    int dlaCircleDiameter;
+    double fillPercentage;
+    boolean reinjectEscapedParticles;
+    boolean deterministic;
+    long seed;
+    int firstRgb;
+    int secondRgb;
+    Mask mask;
+
+    // The number of attached particles and the number of moves and jumps made so far
+    int particleCount;
+    long steps;
+
+    // The index of the next particle to be moved in deterministic mode
+    long nextParticle;
+
+    // The state of the random source and direction stream, or null if the random state is not held
+    long[] randomState;
+    long directionBits;
+    int directionsRemaining;
+
+    // The attached particles, only held by checkpoints which were read from a file
+    int[] particlesX;
+    int[] particlesY;
+    int[] particlesRgb;
+
+    // The length of the file up to the end of the last complete record, only held by checkpoints read from a file
+    long validLength;
+
+    /**
+     * Create the record of this checkpoint, holding the particles attached since the previous record.
+     * @param particles The attached particles.
+     * @param firstParticle The index of the first particle which was not held by the previous record.
+     * @return The record, preceded by its length and checksum.
+     * @throws IOException Never thrown, since the record is written to memory.
+     */
+    byte[] toRecord(ParticleView particles, int firstParticle) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        // Write the parameters, which may have changed since the previous record
+        out.writeInt(dlaCircleDiameter);
+        out.writeDouble(fillPercentage);
+        out.writeBoolean(reinjectEscapedParticles);
+        out.writeBoolean(deterministic);
+        out.writeLong(seed);
+        out.writeInt(firstRgb);
+        out.writeInt(secondRgb);
+        out.writeUTF(mask.toString());
+        out.writeInt(mask.getSize());
+        for (int i = 0; i < mask.getSize(); i++)
+        {
+            out.writeInt(mask.getOffsetX(i));
+            out.writeInt(mask.getOffsetY(i));
+        }
+
+        // Write the counters
+        out.writeLong(steps);
+        out.writeLong(nextParticle);
+
+        // Write the random state if it is held
+        out.writeBoolean(randomState != null);
+        if (randomState != null)
+        {
+            for (int i = 0; i < randomState.length; i++)
+            {
+                out.writeLong(randomState[i]);
+            }
+            out.writeLong(directionBits);
+            out.writeInt(directionsRemaining);
+        }
+
+        // Write the particles attached since the previous record
+        out.writeInt(firstParticle);
+        out.writeInt(particleCount - firstParticle);
+        for (int i = firstParticle; i < particleCount; i++)
+        {
+            out.writeInt(particles.getX(i));
+            out.writeInt(particles.getY(i));
+            out.writeInt(particles.getRgb(i));
+        }
+        out.flush();
+
+        // Precede the record with its length and checksum
+        byte[] payload = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteArrayOutputStream record = new ByteArrayOutputStream(payload.length + 12);
+        DataOutputStream recordOut = new DataOutputStream(record);
+        recordOut.writeInt(payload.length);
+        recordOut.writeLong(crc.getValue());
+        recordOut.write(payload);
+        recordOut.flush();
+        return record.toByteArray();
+    }
+
+    /**
+     * Read the last complete checkpoint from a checkpoint file, along with every particle attached up to it.
+     * @param file The checkpoint file.
+     * @return The last complete checkpoint.
+     * @throws IOException If the file could not be read, is not a checkpoint file or holds no complete checkpoints.
+     */
+    static Checkpoint read(File file) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try
+        {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+            {
+                throw new IOException("Error - " + file + " is not a checkpoint file");
+            }
+
+            Checkpoint checkpoint = null;
+            int[] particlesX = new int[1024];
+            int[] particlesY = new int[1024];
+            int[] particlesRgb = new int[1024];
+            long validLength = HEADER_LENGTH;
+
+            // Read records until the end of the file, or a record which was only partly written
+            while (true)
+            {
+                byte[] payload;
+                long expectedCrc;
+                try
+                {
+                    payload = new byte[in.readInt()];
+                    expectedCrc = in.readLong();
+                    in.readFully(payload);
+                }
+                catch (EOFException e)
+                {
+                    break;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if (crc.getValue() != expectedCrc)
+                {
+                    break;
+                }
+
+                Checkpoint record = new Checkpoint();
+                DataInputStream recordIn = new DataInputStream(new ByteArrayInputStream(payload));
+                record.readParameters(recordIn);
+
+                // Append the particles of this record, which must follow on from the previous record
+                int firstParticle = recordIn.readInt();
+                int count = recordIn.readInt();
+                int previousCount = checkpoint == null ? 0 : checkpoint.particleCount;
+                if (firstParticle != previousCount)
+                {
+                    throw new IOException("Error - The checkpoint records in " + file + " are out of order");
+                }
+                record.particleCount = firstParticle + count;
+                if (record.particleCount > particlesX.length)
+                {
+                    int length = Math.max(record.particleCount, particlesX.length * 2);
+                    particlesX = Arrays.copyOf(particlesX, length);
+                    particlesY = Arrays.copyOf(particlesY, length);
+                    particlesRgb = Arrays.copyOf(particlesRgb, length);
+                }
+                for (int i = firstParticle; i < record.particleCount; i++)
+                {
+                    particlesX[i] = recordIn.readInt();
+                    particlesY[i] = recordIn.readInt();
+                    particlesRgb[i] = recordIn.readInt();
+                }
+
+                checkpoint = record;
+                validLength += 12 + payload.length;
+            }
+
+            if (checkpoint == null)
+            {
+                throw new IOException("Error - " + file + " holds no complete checkpoints");
+            }
+            checkpoint.particlesX = particlesX;
+            checkpoint.particlesY = particlesY;
+            checkpoint.particlesRgb = particlesRgb;
+            checkpoint.validLength = validLength;
+            return checkpoint;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Read the parameters, counters and random state at the start of a record.
+     * @param in The stream holding the record.
+     * @throws IOException If the record could not be read.
+     */
+    private void readParameters(DataInputStream in) throws IOException
+    {
+        dlaCircleDiameter = in.readInt();
+        fillPercentage = in.readDouble();
+        reinjectEscapedParticles = in.readBoolean();
+        deterministic = in.readBoolean();
+        seed = in.readLong();
+        firstRgb = in.readInt();
+        secondRgb = in.readInt();
+        String maskName = in.readUTF();
+        int[] offsetsX = new int[in.readInt()];
+        int[] offsetsY = new int[offsetsX.length];
+        for (int i = 0; i < offsetsX.length; i++)
+        {
+            offsetsX[i] = in.readInt();
+            offsetsY[i] = in.readInt();
+        }
+        mask = Mask.fromOffsets(offsetsX, offsetsY, maskName);
+
+        steps = in.readLong();
+        nextParticle = in.readLong();
+
+        if (in.readBoolean())
+        {
+            randomState = new long[4];
+            for (int i = 0; i < randomState.length; i++)
+            {
+                randomState[i] = in.readLong();
+            }
+            directionBits = in.readLong();
+            directionsRemaining = in.readInt();
+        }
+    }
+}
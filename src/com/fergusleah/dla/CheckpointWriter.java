@@ -0,0 +1,160 @@
+package com.fergusleah.dla;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * CheckpointWriter appends checkpoints to a checkpoint file on a background thread, so the threads moving particles
+ * only pause to record the counters and random state. Each checkpoint only writes the particles attached since the
+ * previous one, reading them from the particle store which never changes particles once they are added.
+ * If a checkpoint is still being written when the next one is due, the next one is skipped.
+ * @author Fergus Leah
+ */
+class CheckpointWriter
+{
+    // The single background thread which writes the checkpoints in order
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory()
+    {
+        @Override
+        public Thread newThread(Runnable runnable)
+        {
+            Thread thread = new Thread(runnable, "DLA Checkpoint Writer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    // The open checkpoint file
+    private final FileOutputStream fileOut;
+
+    // The particles which are read when each checkpoint is written
+    private final ParticleView particles;
+
+    // The number of particles which have been written, only used by the background thread
+    private int writtenParticles;
+
+    // The number of checkpoints which are waiting to be written
+    private final AtomicInteger pendingCheckpoints = new AtomicInteger();
+
+    // The first error which occurred while writing, reported when the writer is closed
+    private volatile IOException error;
+
+    /**
+     * Open a checkpoint file for writing.
+     * @param file The checkpoint file.
+     * @param particles The attached particles.
+     * @param resumed The checkpoint which the DLA generation process resumed from if it was read from this file,
+     *                in which case new checkpoints are appended after it, else null to start a new file.
+     * @throws IOException If the file could not be opened.
+     */
+    CheckpointWriter(File file, ParticleView particles, Checkpoint resumed) throws IOException
+    {
+        this.particles = particles;
+        if (resumed != null)
+        {
+            // Remove any record which was only partly written, then append after the last complete record
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+            try
+            {
+                randomAccessFile.setLength(resumed.validLength);
+            }
+            finally
+            {
+                randomAccessFile.close();
+            }
+            fileOut = new FileOutputStream(file, true);
+            writtenParticles = resumed.particleCount;
+        }
+        else
+        {
+            // Start a new file with the header
+            fileOut = new FileOutputStream(file);
+            DataOutputStream out = new DataOutputStream(fileOut);
+            out.writeInt(Checkpoint.MAGIC);
+            out.writeInt(Checkpoint.VERSION);
+            out.flush();
+        }
+    }
+
+    /**
+     * Write a checkpoint on the background thread.
+     * @param checkpoint The checkpoint, which must not be changed afterwards.
+     * @param force True to write the checkpoint even if an earlier one is still being written, else false.
+     */
+    void write(final Checkpoint checkpoint, boolean force)
+    {
+        if (!force && pendingCheckpoints.get() > 0)
+        {
+            return;
+        }
+        pendingCheckpoints.incrementAndGet();
+        executor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    // Write the record and make sure it reaches the disk before the next one
+                    fileOut.write(checkpoint.toRecord(particles, writtenParticles));
+                    fileOut.getFD().sync();
+                    writtenParticles = checkpoint.particleCount;
+                }
+                catch (IOException e)
+                {
+                    if (error == null)
+                    {
+                        error = e;
+                    }
+                }
+                finally
+                {
+                    pendingCheckpoints.decrementAndGet();
+                }
+            }
+        });
+    }
+
+    /**
+     * Wait for every checkpoint to be written, then close the file.
+     * @throws IOException If any checkpoint could not be written or the file could not be closed.
+     */
+    void close() throws IOException
+    {
+        executor.shutdown();
+        boolean interrupted = false;
+        while (true)
+        {
+            try
+            {
+                if (executor.awaitTermination(1, TimeUnit.SECONDS))
+                {
+                    break;
+                }
+            }
+            catch (InterruptedException e)
+            {
+                // Keep waiting so that the file is complete, and remember the interrupt
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        fileOut.close();
+        if (error != null)
+        {
+            throw error;
+        }
+    }
+}
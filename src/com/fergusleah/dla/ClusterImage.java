@@ -0,0 +1,188 @@
+package com.fergusleah.dla;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * ClusterImage is an image of the growing structure held as packed pixels, where each pixel is one grid position.
+ * Newly attached particles are written straight into the pixels, and the range of rows changed since the pixels were
+ * last used is remembered, so a display only needs to upload those rows and the cost of each update depends on how
+ * many particles were attached rather than on the size of the structure. The same pixels are used to save images.
+ *
+ * Rows are held from the top of the image down, so the y axis is flipped to match the OpenGL display. DLA circles
+ * larger than the maximum image size are scaled down, so each pixel covers a square of positions and shows the last
+ * particle attached within it.
+ * @author Fergus Leah
+ */
+public class ClusterImage
+{
+    // Marks a pixel as opaque, colours themselves only use the lower 24 bits
+    private static final int OPAQUE = 0xFF000000;
+
+    // The diameter of the DLA circle the image shows
+    private final int dlaCircleDiameter;
+
+    // The number of positions along each side of a pixel
+    private final int scale;
+
+    // The number of pixels along each side of the image
+    private final int size;
+
+    // The pixels packed as 0xAARRGGBB, row by row from the top of the image
+    private final int[] pixels;
+
+    // The number of particles which have been written into the pixels, and the epoch they were read from
+    private int drawnParticles;
+    private int drawnEpoch;
+
+    // The first and last rows changed since the dirty rows were last cleared, where no rows are dirty if first > last
+    private int firstDirtyRow;
+    private int lastDirtyRow;
+
+    /**
+     * Create an empty image of a DLA circle.
+     * @param dlaCircleDiameter The diameter of the DLA circle.
+     * @param maxSize The largest number of pixels along each side, where larger DLA circles are scaled down.
+     */
+    public ClusterImage(int dlaCircleDiameter, int maxSize)
+    {
+        this.dlaCircleDiameter = dlaCircleDiameter;
+        this.scale = (dlaCircleDiameter + maxSize - 1) / maxSize;
+        this.size = (dlaCircleDiameter + scale - 1) / scale;
+        this.pixels = new int[size * size];
+        clearDirtyRows();
+    }
+
+    /**
+     * Write the particles attached since the last update into the pixels, starting again if particles were removed.
+     * @param particles The attached particles, ideally a snapshot so that no particles are removed during the update.
+     * @param count The number of particles to show, read once by the caller so the whole update uses the same count.
+     */
+    public void update(ParticleView particles, int count)
+    {
+        // A new epoch or fewer particles than were drawn means particles were removed, so every pixel is drawn again
+        if (particles.getEpoch() != drawnEpoch || count < drawnParticles)
+        {
+            clear();
+            drawnEpoch = particles.getEpoch();
+        }
+
+        for (int i = drawnParticles; i < count; i++)
+        {
+            drawPosition(particles.getX(i), particles.getY(i), particles.getRgb(i));
+        }
+        drawnParticles = Math.max(drawnParticles, count);
+    }
+
+    /**
+     * Colour the pixel holding a position, ignoring positions outside of the DLA circle's grid.
+     * @param x The x coordinate of the position.
+     * @param y The y coordinate of the position.
+     * @param rgb The colour packed as 0xRRGGBB.
+     */
+    void drawPosition(int x, int y, int rgb)
+    {
+        if (x >= 0 && x < dlaCircleDiameter && y >= 0 && y < dlaCircleDiameter)
+        {
+            // Flip the y axis so that the top row of the image is the top of the display
+            int row = (dlaCircleDiameter - 1 - y) / scale;
+            pixels[row * size + x / scale] = rgb | OPAQUE;
+            firstDirtyRow = Math.min(firstDirtyRow, row);
+            lastDirtyRow = Math.max(lastDirtyRow, row);
+        }
+    }
+
+    /**
+     * Make every pixel transparent, marking every row as changed.
+     */
+    public void clear()
+    {
+        Arrays.fill(pixels, 0);
+        drawnParticles = 0;
+        firstDirtyRow = 0;
+        lastDirtyRow = size - 1;
+    }
+
+    /**
+     * Check whether any rows have changed since the dirty rows were last cleared.
+     * @return True if there are dirty rows, else false.
+     */
+    public boolean hasDirtyRows()
+    {
+        return firstDirtyRow <= lastDirtyRow;
+    }
+
+    /**
+     * Access the first row changed since the dirty rows were last cleared.
+     * @return The first dirty row.
+     */
+    public int getFirstDirtyRow()
+    {
+        return firstDirtyRow;
+    }
+
+    /**
+     * Access the last row changed since the dirty rows were last cleared.
+     * @return The last dirty row.
+     */
+    public int getLastDirtyRow()
+    {
+        return lastDirtyRow;
+    }
+
+    /**
+     * Forget the changed rows, once they have been uploaded.
+     */
+    public void clearDirtyRows()
+    {
+        firstDirtyRow = Integer.MAX_VALUE;
+        lastDirtyRow = -1;
+    }
+
+    /**
+     * Access the pixels, which must not be changed.
+     * @return The pixels packed as 0xAARRGGBB, row by row from the top of the image.
+     */
+    public int[] getPixels()
+    {
+        return pixels;
+    }
+
+    /**
+     * Access the number of pixels along each side of the image.
+     * @return The image size.
+     */
+    public int getSize()
+    {
+        return size;
+    }
+
+    /**
+     * Access the number of positions along each side of a pixel.
+     * @return The scale, 1 if the image is not scaled down.
+     */
+    public int getScale()
+    {
+        return scale;
+    }
+
+    /**
+     * Access the diameter of the DLA circle the image shows.
+     * @return The DLA circle diameter.
+     */
+    public int getDlaCircleDiameter()
+    {
+        return dlaCircleDiameter;
+    }
+
+    /**
+     * Copy the pixels into an image which can be saved, without reading anything back from the display.
+     * @return The image of the DLA on a black background.
+     */
+    public BufferedImage toBufferedImage()
+    {
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, size, size, pixels, 0, size);
+        return image;
+    }
+}
@@ -0,0 +1,399 @@
+package com.fergusleah.dla;
+
+import java.util.Arrays;
+
+/**
+ * ClusterStatistics measures the shape of the growing structure while it grows: the radius of gyration, the radial
+ * density histogram and mass-radius curve around the root particle, and the number of occupied boxes at every power
+ * of two box size, from which the fractal dimension is estimated.
+ *
+ * The statistics follow the particle store rather than being updated by the threads attaching particles, so moving
+ * particles costs nothing extra. Each query first adds the particles attached since the previous query, which takes
+ * constant time per particle for the sums and histogram and at most one step per box size for the box counts, where
+ * a box which is already occupied means every larger box containing it is too. The boxes are held in grids of their
+ * own, made by the same grid factory as the DLA logic's and only created when the statistics are first used, rather
+ * than in the occupancy pyramid, so the statistics also follow particles which the pyramid never sees, such as those
+ * of a replay. If particles are removed the statistics are built again from the remaining particles.
+ *
+ * The particles are read from the live store rather than from a snapshot, since a snapshot would stop the store from
+ * reusing its chunk table when it is next cleared. So particles must only be removed from the store while holding
+ * the lock of the statistics, which every query holds while it reads them.
+ * @author Fergus Leah
+ */
+public class ClusterStatistics
+{
+    // The smallest radius used to estimate the mass-radius dimension, below which the lattice dominates
+    private static final int MINIMUM_FIT_RADIUS = 4;
+
+    // The smallest box size used to estimate the box counting dimension is 2^3, below which the lattice dominates
+    private static final int MINIMUM_FIT_LEVEL = 3;
+
+    // The largest box size used to estimate the box counting dimension as a fraction of the structure radius,
+    // above which only a handful of boxes cover the whole structure
+    private static final int MAXIMUM_FIT_FRACTION = 8;
+
+    // The number of dimension estimates which must agree for the dimension to be converged
+    private static final int CONVERGENCE_SAMPLES = 5;
+
+    // The fewest particles for which the dimension can be converged, so that a small structure cannot stop early
+    private static final int MINIMUM_CONVERGENCE_PARTICLES = 1000;
+
+    // The attached particles, read by each update while the lock of the statistics is held
+    private final ParticleView particles;
+
+    // The size of the grid and the position of the root particle
+    private final int gridSize;
+    private final int center;
+
+    // Creates the grids of occupied boxes
+    private final OccupancyGridFactory gridFactory;
+
+    // The occupied boxes for each box size 2^k, where level 0 is the attached particles themselves and is not stored
+    private OccupancyGrid[] levels;
+
+    // The number of occupied boxes for each box size 2^k
+    private long[] boxCounts;
+
+    // The number of particles within each unit wide ring around the root particle
+    private long[] radialCounts;
+
+    // The number of particles and the epoch they were read from
+    private int particleCount;
+    private int epoch;
+
+    // The sums of the particle offsets from the root particle and of their squared distances
+    private long sumX, sumY;
+    private double sumSquaredDistance;
+
+    // The distance from the root particle to the furthest particle
+    private double maxDistance;
+
+    // The most recent dimension estimates used to check for convergence, as a ring
+    private final double[] dimensionSamples = new double[CONVERGENCE_SAMPLES];
+    private int dimensionSampleCount;
+
+    /**
+     * Create the statistics of the particles in a grid, which are empty until they are first used.
+     * @param particles The attached particles.
+     * @param gridSize The number of positions along each side of the grid, where the root particle is in the center.
+     * @param gridFactory Creates the grids of occupied boxes, which are only written by the thread updating the statistics.
+     */
+    ClusterStatistics(ParticleView particles, int gridSize, OccupancyGridFactory gridFactory)
+    {
+        this.particles = particles;
+        this.gridSize = gridSize;
+        this.center = gridSize / 2;
+        this.gridFactory = gridFactory;
+    }
+
+    /**
+     * Access the number of particles which the statistics include.
+     * @return The particle count.
+     */
+    public synchronized int getParticleCount()
+    {
+        update();
+        return particleCount;
+    }
+
+    /**
+     * Find the root mean square distance of the particles from their center of mass.
+     * @return The radius of gyration, or 0 if there are no particles.
+     */
+    public synchronized double getRadiusOfGyration()
+    {
+        update();
+        if (particleCount == 0)
+        {
+            return 0;
+        }
+        double meanX = (double) sumX / particleCount;
+        double meanY = (double) sumY / particleCount;
+        return Math.sqrt(Math.max(0, sumSquaredDistance / particleCount - meanX * meanX - meanY * meanY));
+    }
+
+    /**
+     * Count the particles within each unit wide ring around the root particle.
+     * @return The number of particles at distance [r, r + 1) from the root particle for each r, up to the furthest particle.
+     */
+    public synchronized long[] getRadialHistogram()
+    {
+        update();
+        long[] histogram = new long[getRingCount()];
+        if (histogram.length > 0)
+        {
+            System.arraycopy(radialCounts, 0, histogram, 0, histogram.length);
+        }
+        return histogram;
+    }
+
+    /**
+     * Count the particles within each distance of the root particle.
+     * @return The number of particles at distance less than r + 1 from the root particle for each r, up to the furthest particle.
+     */
+    public synchronized long[] getMassRadiusCurve()
+    {
+        update();
+        long[] curve = new long[getRingCount()];
+        long mass = 0;
+        for (int r = 0; r < curve.length; r++)
+        {
+            mass += radialCounts[r];
+            curve[r] = mass;
+        }
+        return curve;
+    }
+
+    /**
+     * Count the occupied boxes for each power of two box size.
+     * @return The number of boxes of 2^k by 2^k positions containing a particle for each k.
+     */
+    public synchronized long[] getBoxCounts()
+    {
+        update();
+        return boxCounts.clone();
+    }
+
+    /**
+     * Estimate the fractal dimension from how the number of occupied boxes falls as the box size grows, fitting a line
+     * to the logarithms of the counts for box sizes from 8 up to an eighth of the structure radius.
+     * @return The box counting dimension, or NaN if the structure is too small to fit at least two box sizes.
+     */
+    public synchronized double getBoxCountingDimension()
+    {
+        update();
+        int largestLevel = 0;
+        while (largestLevel + 1 < boxCounts.length && (1 << (largestLevel + 1)) <= maxDistance / MAXIMUM_FIT_FRACTION)
+        {
+            largestLevel++;
+        }
+        int pointCount = largestLevel - MINIMUM_FIT_LEVEL + 1;
+        if (pointCount < 2)
+        {
+            return Double.NaN;
+        }
+
+        // The count falls as the box size to the power of minus the dimension
+        double[] logSizes = new double[pointCount];
+        double[] logCounts = new double[pointCount];
+        for (int i = 0; i < pointCount; i++)
+        {
+            logSizes[i] = (MINIMUM_FIT_LEVEL + i) * Math.log(2);
+            logCounts[i] = Math.log(boxCounts[MINIMUM_FIT_LEVEL + i]);
+        }
+        return -getSlope(logSizes, logCounts);
+    }
+
+    /**
+     * Estimate the fractal dimension from how the number of particles within a distance of the root particle grows
+     * with the distance, fitting a line to the logarithms for distances growing by a factor of the square root of two
+     * from 4 up to half of the structure radius.
+     * @return The mass-radius dimension, or NaN if the structure is too small to fit at least three distances.
+     */
+    public synchronized double getMassRadiusDimension()
+    {
+        long[] curve = getMassRadiusCurve();
+        int pointCount = 0;
+        for (double r = MINIMUM_FIT_RADIUS; r <= maxDistance / 2; r *= Math.sqrt(2))
+        {
+            pointCount++;
+        }
+        if (pointCount < 3)
+        {
+            return Double.NaN;
+        }
+
+        // The mass grows as the distance to the power of the dimension
+        double[] logRadii = new double[pointCount];
+        double[] logMasses = new double[pointCount];
+        double r = MINIMUM_FIT_RADIUS;
+        for (int i = 0; i < pointCount; i++, r *= Math.sqrt(2))
+        {
+            logRadii[i] = Math.log(r);
+            logMasses[i] = Math.log(curve[(int) r - 1]);
+        }
+        return getSlope(logRadii, logMasses);
+    }
+
+    /**
+     * Record the current box counting dimension and check whether it has stopped changing. The dimension is converged
+     * once the last few recorded estimates all lie within the tolerance of each other, so this should be called as the
+     * structure grows by a steady factor rather than after every particle.
+     * @param tolerance The largest difference between the recorded estimates.
+     * @return True if the dimension is converged, else false.
+     */
+    public synchronized boolean checkDimensionConverged(double tolerance)
+    {
+        double dimension = getBoxCountingDimension();
+        if (Double.isNaN(dimension) || particleCount < MINIMUM_CONVERGENCE_PARTICLES)
+        {
+            return false;
+        }
+        dimensionSamples[dimensionSampleCount % CONVERGENCE_SAMPLES] = dimension;
+        dimensionSampleCount++;
+        if (dimensionSampleCount < CONVERGENCE_SAMPLES)
+        {
+            return false;
+        }
+
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        for (int i = 0; i < CONVERGENCE_SAMPLES; i++)
+        {
+            min = Math.min(min, dimensionSamples[i]);
+            max = Math.max(max, dimensionSamples[i]);
+        }
+        return max - min <= tolerance;
+    }
+
+    /**
+     * Forget the recorded dimension estimates, so that convergence is checked afresh.
+     */
+    synchronized void resetConvergence()
+    {
+        dimensionSampleCount = 0;
+    }
+
+    /**
+     * Release the storage of the boxes held outside of the heap. The boxes are created again if the statistics are used
+     * afterwards, starting from no particles.
+     */
+    public synchronized void close()
+    {
+        if (levels != null)
+        {
+            clear();
+            for (int k = 1; k < levels.length; k++)
+            {
+                levels[k].close();
+            }
+            levels = null;
+        }
+    }
+
+    /**
+     * Add the particles attached since the previous update, starting again if particles were removed.
+     */
+    private void update()
+    {
+        // No particles are removed while the lock is held, so the particles below the size stay readable
+        int currentEpoch = particles.getEpoch();
+        int size = particles.size();
+
+        // Create the boxes the first time the statistics are used
+        if (levels == null)
+        {
+            int levelCount = 1;
+            while ((1 << (levelCount - 1)) < gridSize)
+            {
+                levelCount++;
+            }
+            levels = new OccupancyGrid[levelCount];
+            for (int k = 1; k < levelCount; k++)
+            {
+                levels[k] = gridFactory.create((gridSize + (1 << k) - 1) >> k);
+            }
+            boxCounts = new long[levelCount];
+            radialCounts = new long[(int) Math.ceil(center * Math.sqrt(2)) + 2];
+            epoch = currentEpoch;
+        }
+
+        // A new epoch or fewer particles means particles were removed, so add every particle again
+        if (currentEpoch != epoch || size < particleCount)
+        {
+            clear();
+            epoch = currentEpoch;
+        }
+
+        for (int i = particleCount; i < size; i++)
+        {
+            addParticle(particles.getX(i), particles.getY(i));
+        }
+        particleCount = Math.max(particleCount, size);
+    }
+
+    /**
+     * Add a particle to the sums, histogram and boxes.
+     * @param x The x coordinate of the particle.
+     * @param y The y coordinate of the particle.
+     */
+    private void addParticle(int x, int y)
+    {
+        long dx = x - center;
+        long dy = y - center;
+        long squaredDistance = dx * dx + dy * dy;
+        double distance = Math.sqrt(squaredDistance);
+        sumX += dx;
+        sumY += dy;
+        sumSquaredDistance += squaredDistance;
+        maxDistance = Math.max(maxDistance, distance);
+        radialCounts[(int) distance]++;
+
+        // Each particle is a box of its own at the smallest size, and only marks larger boxes until one is already occupied
+        boxCounts[0]++;
+        for (int k = 1; k < levels.length; k++)
+        {
+            if (!levels[k].trySetOccupied(x >> k, y >> k))
+            {
+                break;
+            }
+            boxCounts[k]++;
+        }
+    }
+
+    /**
+     * Remove every particle from the statistics, reusing the existing boxes.
+     */
+    private void clear()
+    {
+        for (int k = 1; k < levels.length; k++)
+        {
+            levels[k].clear();
+        }
+        Arrays.fill(boxCounts, 0);
+        Arrays.fill(radialCounts, 0);
+        particleCount = 0;
+        sumX = 0;
+        sumY = 0;
+        sumSquaredDistance = 0;
+        maxDistance = 0;
+        dimensionSampleCount = 0;
+    }
+
+    /**
+     * Find the number of rings up to the furthest particle.
+     * @return The ring count, 0 if there are no particles.
+     */
+    private int getRingCount()
+    {
+        return particleCount == 0 ? 0 : (int) maxDistance + 1;
+    }
+
+    /**
+     * Fit a straight line to points by least squares.
+     * @param xs The x values of the points.
+     * @param ys The y values of the points.
+     * @return The slope of the line.
+     */
+    private static double getSlope(double[] xs, double[] ys)
+    {
+        double meanX = 0;
+        double meanY = 0;
+        for (int i = 0; i < xs.length; i++)
+        {
+            meanX += xs[i];
+            meanY += ys[i];
+        }
+        meanX /= xs.length;
+        meanY /= ys.length;
+
+        double covariance = 0;
+        double variance = 0;
+        for (int i = 0; i < xs.length; i++)
+        {
+            covariance += (xs[i] - meanX) * (ys[i] - meanY);
+            variance += (xs[i] - meanX) * (xs[i] - meanX);
+        }
+        return covariance / variance;
+    }
+}
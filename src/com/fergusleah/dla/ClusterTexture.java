@@ -0,0 +1,154 @@
+package com.fergusleah.dla;
+
+import java.nio.IntBuffer;
+import javax.media.opengl.GL;
+
+/**
+ * ClusterTexture shows a ClusterImage as a single textured square. Only the rows of the image which changed since the
+ * previous frame are uploaded, so the cost of each frame depends on how many particles were attached rather than on
+ * the size of the structure. The texture has power of two sides so that it works with any OpenGL version.
+ * @author Fergus Leah
+ */
+class ClusterTexture
+{
+    // The largest image which is shown as a texture, so that the image does not use too much memory
+    static final int MAX_TEXTURE_SIZE = 4096;
+
+    // The name of the texture object
+    private final int[] textureName = new int[1];
+
+    // The image shown by the texture
+    private final ClusterImage image;
+
+    // The number of texels along each side of the texture
+    private final int textureSize;
+
+    /**
+     * Find the largest image which can be shown as a texture.
+     * @param gl The graphics library variable.
+     * @return The largest number of pixels along each side of the image.
+     */
+    static int getMaxImageSize(GL gl)
+    {
+        int[] maxTextureSize = new int[1];
+        gl.glGetIntegerv(GL.GL_MAX_TEXTURE_SIZE, maxTextureSize, 0);
+        return Math.min(maxTextureSize[0], MAX_TEXTURE_SIZE);
+    }
+
+    /**
+     * Create a texture showing an image, uploading the whole image.
+     * @param gl The graphics library variable.
+     * @param image The image to show, whose size must be at most the maximum image size.
+     */
+    ClusterTexture(GL gl, ClusterImage image)
+    {
+        this.image = image;
+
+        // Find the smallest power of two which holds the image
+        int power = 1;
+        while (power < image.getSize())
+        {
+            power <<= 1;
+        }
+        textureSize = power;
+
+        // Create the empty texture, showing each texel as a sharp square when the image is scaled
+        gl.glGenTextures(1, textureName, 0);
+        gl.glBindTexture(GL.GL_TEXTURE_2D, textureName[0]);
+        gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_MIN_FILTER, GL.GL_NEAREST);
+        gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_MAG_FILTER, GL.GL_NEAREST);
+        gl.glTexImage2D(GL.GL_TEXTURE_2D, 0, GL.GL_RGBA, textureSize, textureSize, 0, GL.GL_BGRA, GL.GL_UNSIGNED_INT_8_8_8_8_REV, null);
+        gl.glBindTexture(GL.GL_TEXTURE_2D, 0);
+
+        // Upload every row of the image
+        if (image.getSize() > 0)
+        {
+            upload(gl, 0, image.getSize() - 1);
+        }
+        image.clearDirtyRows();
+    }
+
+    /**
+     * Upload the rows of the image which changed since the previous frame.
+     * @param gl The graphics library variable.
+     */
+    void update(GL gl)
+    {
+        if (image.hasDirtyRows())
+        {
+            upload(gl, image.getFirstDirtyRow(), image.getLastDirtyRow());
+            image.clearDirtyRows();
+        }
+    }
+
+    /**
+     * Draw the image as a square covering the DLA circle, where each pixel covers the squares of its positions.
+     * @param gl The graphics library variable.
+     */
+    void draw(GL gl)
+    {
+        // Particles are drawn as squares centered on their positions, so the image starts half a position before 0
+        float left = -0.5f;
+        float right = image.getSize() * image.getScale() - 0.5f;
+        float top = image.getDlaCircleDiameter() - 0.5f;
+        float bottom = top - image.getSize() * image.getScale();
+        float textureExtent = (float) image.getSize() / textureSize;
+
+        // Skip the transparent pixels where no particle is attached, so anything drawn underneath still shows
+        gl.glEnable(GL.GL_ALPHA_TEST);
+        gl.glAlphaFunc(GL.GL_GREATER, 0);
+        gl.glEnable(GL.GL_TEXTURE_2D);
+        gl.glBindTexture(GL.GL_TEXTURE_2D, textureName[0]);
+        gl.glTexEnvi(GL.GL_TEXTURE_ENV, GL.GL_TEXTURE_ENV_MODE, GL.GL_REPLACE);
+
+        // The first image row is the top of the display
+        gl.glBegin(GL.GL_QUADS);
+        gl.glTexCoord2f(0, 0);
+        gl.glVertex2f(left, top);
+        gl.glTexCoord2f(textureExtent, 0);
+        gl.glVertex2f(right, top);
+        gl.glTexCoord2f(textureExtent, textureExtent);
+        gl.glVertex2f(right, bottom);
+        gl.glTexCoord2f(0, textureExtent);
+        gl.glVertex2f(left, bottom);
+        gl.glEnd();
+
+        gl.glBindTexture(GL.GL_TEXTURE_2D, 0);
+        gl.glDisable(GL.GL_TEXTURE_2D);
+        gl.glDisable(GL.GL_ALPHA_TEST);
+    }
+
+    /**
+     * Delete the texture object.
+     * @param gl The graphics library variable.
+     */
+    void dispose(GL gl)
+    {
+        gl.glDeleteTextures(1, textureName, 0);
+    }
+
+    /**
+     * Access the image shown by the texture.
+     * @return The image.
+     */
+    ClusterImage getImage()
+    {
+        return image;
+    }
+
+    /**
+     * Upload a range of whole rows of the image.
+     * @param gl The graphics library variable.
+     * @param firstRow The first row to upload.
+     * @param lastRow The last row to upload.
+     */
+    private void upload(GL gl, int firstRow, int lastRow)
+    {
+        int size = image.getSize();
+        IntBuffer rows = IntBuffer.wrap(image.getPixels(), firstRow * size, (lastRow - firstRow + 1) * size).slice();
+        gl.glBindTexture(GL.GL_TEXTURE_2D, textureName[0]);
+        gl.glPixelStorei(GL.GL_UNPACK_ALIGNMENT, 4);
+        gl.glTexSubImage2D(GL.GL_TEXTURE_2D, 0, 0, firstRow, size, lastRow - firstRow + 1, GL.GL_BGRA, GL.GL_UNSIGNED_INT_8_8_8_8_REV, rows);
+        gl.glBindTexture(GL.GL_TEXTURE_2D, 0);
+    }
+}
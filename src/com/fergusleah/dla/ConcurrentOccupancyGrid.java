@@ -0,0 +1,94 @@
+package com.fergusleah.dla;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * ConcurrentOccupancyGrid is a thread safe version of PackedOccupancyGrid with the same tile layout and guard border.
+ * Positions are marked with an atomic compare and set on their tile, so many threads can mark positions without locks
+ * and exactly one thread succeeds when several try to claim the same position.
+ * @author Fergus Leah
+ */
+public class ConcurrentOccupancyGrid implements OccupancyGrid
+{
+    // The number of positions along each side of the grid, not including the guard border
+    private final int size;
+
+    // The number of tiles along each side of the grid, including the guard border
+    private final int tilesPerRow;
+
+    // The tiles stored row by row
+    private final AtomicLongArray tiles;
+
+    /**
+     * Create an empty grid.
+     * @param size The number of positions along each side of the grid.
+     */
+    public ConcurrentOccupancyGrid(int size)
+    {
+        this.size = size;
+        this.tilesPerRow = PackedOccupancyGrid.getTilesPerRow(size);
+        this.tiles = new AtomicLongArray(tilesPerRow * tilesPerRow);
+    }
+
+    @Override
+    public boolean isOccupied(int x, int y)
+    {
+        x += PackedOccupancyGrid.GUARD;
+        y += PackedOccupancyGrid.GUARD;
+        return (tiles.get(PackedOccupancyGrid.tileIndex(tilesPerRow, x, y)) & PackedOccupancyGrid.bit(x, y)) != 0;
+    }
+
+    @Override
+    public void setOccupied(int x, int y)
+    {
+        trySetOccupied(x, y);
+    }
+
+    @Override
+    public boolean trySetOccupied(int x, int y)
+    {
+        x += PackedOccupancyGrid.GUARD;
+        y += PackedOccupancyGrid.GUARD;
+        int index = PackedOccupancyGrid.tileIndex(tilesPerRow, x, y);
+        long bit = PackedOccupancyGrid.bit(x, y);
+
+        // Retry until this thread sets the bit, or another thread is found to have set it
+        long tile;
+        do
+        {
+            tile = tiles.get(index);
+            if ((tile & bit) != 0)
+            {
+                return false;
+            }
+        }
+        while (!tiles.compareAndSet(index, tile, tile | bit));
+        return true;
+    }
+
+    /**
+     * Mark every position as unoccupied. This must not be called while other threads are using the grid.
+     */
+    @Override
+    public void clear()
+    {
+        for (int i = 0; i < tiles.length(); i++)
+        {
+            tiles.set(i, 0);
+        }
+    }
+
+    /**
+     * Nothing is held outside of the heap, so the storage is left to the garbage collector.
+     */
+    @Override
+    public void close()
+    {
+    }
+
+    @Override
+    public int getSize()
+    {
+        return size;
+    }
+}
@@ -0,0 +1,268 @@
+package com.fergusleah.dla;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import javax.imageio.ImageIO;
+import javax.management.JMException;
+
+/**
+ * DLABatch is a headless command line entry point which generates a single DLA without any display.
+ * Only the DLA logic is used, so no OpenGL or Swing classes are loaded and no native libraries are required.
+ * The metrics of the generation process are published over JMX while it runs, so long runs can be watched, as the
+ * MBean com.fergusleah.dla:type=DLAMetrics,name="DLABatch".
+ * Usage: DLABatch [options], where the options are listed by USAGE and described in the README.
+ * @author Fergus Leah
+ */
+public class DLABatch
+{
+    // The largest image which is written, so that very large DLA circles do not need a huge image
+    private static final int MAX_IMAGE_SIZE = 8192;
+
+    // The options and their defaults, grouped by the feature they control
+    private static final String USAGE = "Usage: DLABatch [options]\n"
+            + "  Structure:   --diameter 500  --mask 4|8|12|16|chebyshev:r|euclidean:r  --fill 50  --seed n\n"
+            + "  Walkers:     --reinject true  --off-lattice true\n"
+            + "  Threads:     --threads 1  --deterministic true\n"
+            + "  Grids:       --grid packed|sparse|mapped  --grid-directory dir\n"
+            + "  Checkpoints: --checkpoint file  --checkpoint-interval 60  --resume file\n"
+            + "  Event log:   --event-log file\n"
+            + "  Statistics:  --converge 0.01\n"
+            + "  Output:      --output dla.png";
+
+    /**
+     * Generate a single DLA using the command line arguments, save it as an image and print the timing.
+     * @param args The command line options, each given as a name followed by a value.
+     */
+    public static void main(String[] args)
+    {
+        // Make sure no display is required when the image is written
+        System.setProperty("java.awt.headless", "true");
+
+        // Exit with a failure code if the DLA could not be generated or saved
+        int status = run(args);
+        if (status != 0)
+        {
+            System.exit(status);
+        }
+    }
+
+    /**
+     * Generate a single DLA using the command line arguments, save it as an image and print the timing.
+     * Any option which cannot be read or used is printed along with the usage before the DLA is generated.
+     * @param args The command line options, each given as a name followed by a value.
+     * @return The exit status, 0 if the DLA was generated and saved, else 1.
+     */
+    static int run(String[] args)
+    {
+        // Set the default options
+        int diameter = DLALogic.DEFAULT_DLA_CIRCLE_DIAMETER;
+        Mask mask = Mask.fromSize(4);
+        double fillPercentage = 50;
+        Long seed = null;
+        boolean reinject = false;
+        int threads = 1;
+        boolean deterministic = false;
+        boolean offLattice = false;
+        GridStorage gridStorage = GridStorage.PACKED;
+        File gridDirectory = null;
+        File checkpointFile = null;
+        long checkpointInterval = DLALogic.DEFAULT_CHECKPOINT_INTERVAL;
+        File resumeFile = null;
+        File eventLogFile = null;
+        double dimensionTolerance = 0;
+        File output = new File("dla.png");
+
+        DLALogic dlaLogic;
+        try
+        {
+            // Read each option name and value pair
+            for (int i = 0; i < args.length; i += 2)
+            {
+                // Every option requires a value
+                if (i + 1 >= args.length)
+                {
+                    throw new IllegalArgumentException("Error - Missing value for option " + args[i]);
+                }
+
+                String name = args[i];
+                String value = args[i + 1];
+
+                if (name.equals("--diameter"))    { diameter = Integer.parseInt(value); }
+                else if (name.equals("--mask"))   { mask = parseMask(value); }
+                else if (name.equals("--fill"))   { fillPercentage = Double.parseDouble(value); }
+                else if (name.equals("--seed"))   { seed = Long.valueOf(value); }
+                else if (name.equals("--reinject")) { reinject = Boolean.parseBoolean(value); }
+                else if (name.equals("--threads"))  { threads = Integer.parseInt(value); }
+                else if (name.equals("--deterministic")) { deterministic = Boolean.parseBoolean(value); }
+                else if (name.equals("--off-lattice")) { offLattice = Boolean.parseBoolean(value); }
+                else if (name.equals("--grid"))     { gridStorage = parseGridStorage(value); }
+                else if (name.equals("--grid-directory")) { gridDirectory = new File(value); }
+                else if (name.equals("--checkpoint")) { checkpointFile = new File(value); }
+                else if (name.equals("--checkpoint-interval")) { checkpointInterval = (long) (Double.parseDouble(value) * 1000); }
+                else if (name.equals("--resume"))   { resumeFile = new File(value); }
+                else if (name.equals("--event-log")) { eventLogFile = new File(value); }
+                else if (name.equals("--converge")) { dimensionTolerance = Double.parseDouble(value); }
+                else if (name.equals("--output")) { output = new File(value); }
+                else
+                {
+                    throw new IllegalArgumentException("Error - Unknown option " + name);
+                }
+            }
+
+            // Off-lattice DLAs ignore deterministic mode, so asking for both would silently lose one of them
+            if (deterministic && offLattice)
+            {
+                throw new IllegalArgumentException("Error - Deterministic mode cannot be used with off-lattice mode");
+            }
+
+            // Setup the DLA logic using the chosen options, which checks the values and creates the grids
+            dlaLogic = new DLALogic(diameter, gridStorage, gridDirectory);
+            dlaLogic.setMask(mask);
+            dlaLogic.setFillPercentage(fillPercentage);
+            dlaLogic.setReinjectEscapedParticles(reinject);
+            dlaLogic.setThreadCount(threads);
+            dlaLogic.setDeterministic(deterministic);
+            dlaLogic.setOffLattice(offLattice);
+            if (seed != null)
+            {
+                dlaLogic.setSeed(seed);
+            }
+            dlaLogic.setCheckpointFile(checkpointFile);
+            dlaLogic.setCheckpointInterval(checkpointInterval);
+            dlaLogic.setEventLogFile(eventLogFile);
+            dlaLogic.setDimensionTolerance(dimensionTolerance);
+        }
+        catch (IllegalArgumentException e)
+        {
+            return printUsage(e.getMessage());
+        }
+        catch (IllegalStateException e)
+        {
+            return printUsage(e.getMessage());
+        }
+
+        // Continue from a checkpoint, whose saved parameters replace the options above
+        if (resumeFile != null)
+        {
+            try
+            {
+                dlaLogic.resume(resumeFile);
+            }
+            catch (IOException e)
+            {
+                System.err.println("Error reading checkpoint: " + e.getMessage());
+                return 1;
+            }
+            System.out.println("Resumed: " + dlaLogic.getAttachedParticles().size() + " particles");
+        }
+
+        // Publish the metrics so that the run can be watched with a JMX client, carrying on without them if that fails
+        DLAMetrics metrics = dlaLogic.getMetrics();
+        try
+        {
+            metrics.register("DLABatch");
+        }
+        catch (JMException e)
+        {
+            System.err.println("Error registering metrics: " + e.getMessage());
+        }
+
+        // Run the DLA generation process on this thread and time it
+        long startTime = System.nanoTime();
+        dlaLogic.run();
+        long elapsedMillis = (System.nanoTime() - startTime) / 1000000;
+
+        // Save the DLA as an image
+        try
+        {
+            ImageIO.write(createImage(dlaLogic), "png", output);
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error writing image: " + e.getMessage());
+            return 1;
+        }
+
+        // Print the timing results
+        int particles = dlaLogic.getAttachedParticles().size();
+        System.out.println("Particles: " + particles);
+        System.out.println("Time: " + elapsedMillis + " ms");
+        System.out.println("Particles per second: " + (long) (particles * 1000.0 / Math.max(1, elapsedMillis)));
+        System.out.println("Steps: " + metrics.getSteps());
+        System.out.println("Killed walkers: " + metrics.getKilledWalkers());
+        System.out.println("Walk length: mean " + (long) metrics.getMeanWalkLength() + ", p99 " + metrics.getP99WalkLength());
+
+        // Print the shape of the structure
+        ClusterStatistics statistics = dlaLogic.getStatistics();
+        System.out.println(String.format(Locale.ENGLISH, "Radius of gyration: %.1f", statistics.getRadiusOfGyration()));
+        System.out.println(String.format(Locale.ENGLISH, "Box counting dimension: %.3f", statistics.getBoxCountingDimension()));
+        System.out.println(String.format(Locale.ENGLISH, "Mass radius dimension: %.3f", statistics.getMassRadiusDimension()));
+        System.out.println("Output: " + output.getPath());
+        return 0;
+    }
+
+    /**
+     * Print a problem with the options along with the usage.
+     * @param message The problem.
+     * @return The failure exit status.
+     */
+    private static int printUsage(String message)
+    {
+        System.err.println(message);
+        System.err.println(USAGE);
+        return 1;
+    }
+
+    /**
+     * Find the grid storage named by a command line value.
+     * @param value One of packed, sparse or mapped, in any case.
+     * @return The grid storage.
+     */
+    static GridStorage parseGridStorage(String value)
+    {
+        for (GridStorage gridStorage : GridStorage.values())
+        {
+            if (gridStorage.name().equalsIgnoreCase(value))
+            {
+                return gridStorage;
+            }
+        }
+        throw new IllegalArgumentException("Error - Unknown grid storage " + value + ", use packed, sparse or mapped");
+    }
+
+    /**
+     * Create a mask from a command line value.
+     * @param value One of the original mask sizes 4, 8, 12 or 16, or a radius mask such as chebyshev:3 or euclidean:3.
+     * @return The mask described by the value.
+     */
+    static Mask parseMask(String value)
+    {
+        if (value.startsWith("chebyshev:"))
+        {
+            return Mask.chebyshev(Integer.parseInt(value.substring("chebyshev:".length())));
+        }
+        if (value.startsWith("euclidean:"))
+        {
+            return Mask.euclidean(Integer.parseInt(value.substring("euclidean:".length())));
+        }
+        return Mask.fromSize(Integer.parseInt(value));
+    }
+
+    /**
+     * Create an image of the DLA where each pixel is a single position in the array grid.
+     * DLA circles larger than the maximum image size are scaled down, so each pixel covers a square of positions
+     * and shows the last particle attached within it.
+     * @param dlaLogic Contains the DLA structure to be drawn.
+     * @return The image of the DLA on a black background.
+     */
+    static BufferedImage createImage(DLALogic dlaLogic)
+    {
+        // Write each attached particle into the same pixels the display uses, flipping the y axis to match it
+        ClusterImage clusterImage = new ClusterImage(dlaLogic.getDlaCircleDiameter(), MAX_IMAGE_SIZE);
+        ParticleView attachedParticles = dlaLogic.getAttachedParticles();
+        clusterImage.update(attachedParticles, attachedParticles.size());
+        return clusterImage.toBufferedImage();
+    }
+}
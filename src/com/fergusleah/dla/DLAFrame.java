@@ -7,6 +7,9 @@ import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.IOException;
+import javax.management.JMException;
 import javax.media.opengl.GLCanvas;
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
@@ -17,8 +20,11 @@ import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JSeparator;
 import javax.swing.JSlider;
+import javax.swing.JSpinner;
+import javax.swing.SpinnerNumberModel;
 import javax.swing.SwingConstants;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
@@ -32,34 +38,54 @@ public class DLAFrame extends JFrame
 {
     /**
      * Start a single instance of the DLA Application
-     * @param args Unused
+     * @param args Optionally --replay followed by an event log file to replay
      */
     public static void main(String[] args) 
     {
+        // Replay an event log if one is given
+        final File replayFile = args.length == 2 && args[0].equals("--replay") ? new File(args[1]) : null;
+        
         SwingUtilities.invokeLater (new Runnable() 
         { 
             @Override
             public void run() 
             {
                 // Create an instance of the DLA app
-                new DLAFrame();
+                new DLAFrame(replayFile);
             } 
         }); 
     }
     
+    // The mask types which contain every position within the chosen mask radius
+    private static final String CHEBYSHEV_MASK = "Chebyshev";
+    private static final String EUCLIDEAN_MASK = "Euclidean";
+    
     // An instance of the core dla logic
     private final DLALogic dlaLogic = new DLALogic();
     
-    // Create a new thread which the DLA runs on
-    private Thread dlaThread = new Thread(dlaLogic);
+    // Pauses and unpauses the DLA, showing which of these it will do
+    private JButton pauseButton;
     
     // Used to contain the user controls
     private final JPanel userControlsPanel;
+    
+    // The replay of an event log and the thread it runs on, or null if no event log is being replayed
+    private ReplayPlayer replayPlayer;
+    private Thread replayThread;
         
     /**
      * Setup the frame, graphics library display, user interface and DLA logic thread.
      */
     public DLAFrame() 
+    {
+        this(null);
+    }
+    
+    /**
+     * Setup the frame, graphics library display, user interface and DLA logic thread, replaying an event log.
+     * @param replayFile The event log to replay, or null to only generate new DLAs.
+     */
+    public DLAFrame(File replayFile) 
     {
         // Set the JFrame title
         super("Diffusion Limited Aggregation");
@@ -72,7 +98,17 @@ public class DLAFrame extends JFrame
         add(glCanvas);
         
         // Create and start the animator 
-        new Animator(glCanvas).start(); 
+        new Animator(glCanvas).start();
+        
+        // Publish the metrics of the DLA so that they can be watched with a JMX client
+        try
+        {
+            dlaLogic.getMetrics().register("DLAFrame");
+        }
+        catch (JMException e)
+        {
+            System.out.println("Error registering metrics: " + e.getMessage());
+        } 
         
         // Create the JPanel which contains the user interface controls
         userControlsPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
@@ -80,7 +116,7 @@ public class DLAFrame extends JFrame
         // Add the user controls JPanel to the bottom of the JFrame
         add(userControlsPanel, BorderLayout.SOUTH);
         
-        // Create and add the clear and start buttons
+        // Create and add the start, pause and clear buttons
         addStartAndClearButtons();
         
         // Add a seperator between the start/clear buttons and the colour control buttons
@@ -107,6 +143,19 @@ public class DLAFrame extends JFrame
         // Create and add the percentage fill slider
         addPercentageFillSlider();
         
+        // Add a seperator between the percentage fill slider and the diameter spinner
+        addSeparator();
+        
+        // Create and add the DLA circle diameter spinner
+        addDiameterSpinner();
+        
+        // Create and add the replay controls if an event log is being replayed
+        if (replayFile != null)
+        {
+            addSeparator();
+            addReplayControls(replayFile);
+        }
+        
         // Maximise the frame
         setExtendedState(JFrame.MAXIMIZED_BOTH);
         
@@ -115,7 +164,7 @@ public class DLAFrame extends JFrame
     }
 
     /**
-     * Add the start and clear buttons to the user controls panel.
+     * Add the start, pause and clear buttons to the user controls panel.
      */
     private void addStartAndClearButtons() 
     {
@@ -128,18 +177,39 @@ public class DLAFrame extends JFrame
             @Override
             public void actionPerformed(ActionEvent e) 
             {
-                // Clear screen and reset DLA
-                clear();
-               
-                // Start a new DLA Thread
-                dlaThread = new Thread(dlaLogic);
-                dlaThread.start();
+                // Clear screen and reset DLA, then start generating the DLA in the background
+                clear(new Runnable()
+                {
+                    @Override
+                    public void run() 
+                    {
+                        dlaLogic.start();
+                    }
+                });
             }
         });
         
         // Add the start button to the user controls panel
         userControlsPanel.add(startButton);
         
+        // Create the pause button
+        pauseButton = new JButton("Pause");
+        
+        // Create and add the pause button functionality, which pauses or unpauses the DLA
+        pauseButton.addActionListener(new ActionListener()
+        {
+            @Override
+            public void actionPerformed(ActionEvent e) 
+            {
+                boolean paused = !dlaLogic.isPaused();
+                dlaLogic.setPaused(paused);
+                pauseButton.setText(paused ? "Resume" : "Pause");
+            }
+        });
+        
+        // Add the pause button to the user controls panel
+        userControlsPanel.add(pauseButton);
+        
         // Create the clear button
         JButton clearButton = new JButton("Clear");
         
@@ -150,7 +220,7 @@ public class DLAFrame extends JFrame
             public void actionPerformed(ActionEvent e) 
             {
                 // Clear the screen
-                clear();
+                clear(null);
             }
         });
         
@@ -244,25 +314,42 @@ public class DLAFrame extends JFrame
         // Add the mask options label
         userControlsPanel.add(new JLabel("Mask Type: "));
         
-        // Create a string array holding the available types of mask
-        String[] maskTypes = { "4", "8", "12", "16" };
+        // Create a string array holding the available types of mask, the last two types use the mask radius
+        String[] maskTypes = { "4", "8", "12", "16", CHEBYSHEV_MASK, EUCLIDEAN_MASK };
         
         // Create the mask list ComboBox using the mask types array 
         final JComboBox maskList = new JComboBox(maskTypes);
         
+        // Create the mask radius spinner with values ranging from 1 to 32, only enabled for the radius mask types
+        final JSpinner maskRadiusSpinner = new JSpinner(new SpinnerNumberModel(2, 1, 32, 1));
+        maskRadiusSpinner.setEnabled(false);
+        
         // Create and add the masklist functionality
         maskList.addActionListener(new ActionListener()
         {
             @Override
             public void actionPerformed(ActionEvent e)
             {
-                // Convert the chosen string value to an integer then assign it to the maskSize variable
-                dlaLogic.setMaskSize(Integer.parseInt(maskList.getSelectedItem().toString()));
+                // Assign the chosen mask and enable the radius spinner if the mask type uses it
+                updateMask(maskList.getSelectedItem().toString(), maskRadiusSpinner);
             }
         });
         
-        // Add the mask list to the user controls panel
+        // Create and add the mask radius functionality
+        maskRadiusSpinner.addChangeListener(new ChangeListener()
+        {
+            @Override
+            public void stateChanged(ChangeEvent e) 
+            {
+                // Assign the chosen mask using the new radius
+                updateMask(maskList.getSelectedItem().toString(), maskRadiusSpinner);
+            }
+        });
+        
+        // Add the mask list and mask radius spinner to the user controls panel
         userControlsPanel.add(maskList);
+        userControlsPanel.add(new JLabel("Radius: "));
+        userControlsPanel.add(maskRadiusSpinner);
         
         // Create the checkbox which determines whether the mask will be drawn on the canvas
         final JCheckBox maskEnabledSwitch = new JCheckBox("Draw Mask: ");
@@ -286,6 +373,55 @@ public class DLAFrame extends JFrame
         
         // Add the draw mask check box to the user controls panel
         userControlsPanel.add(maskEnabledSwitch);
+        
+        // Create the checkbox which determines whether particles are discs moving in continuous space
+        final JCheckBox offLatticeSwitch = new JCheckBox("Off-Lattice: ");
+        
+        // Make the checkbox text appear to the left of the actual square box
+        offLatticeSwitch.setHorizontalTextPosition(SwingConstants.LEFT);
+        
+        // Set whether the off-lattice setting is selected to the default value
+        offLatticeSwitch.setSelected(dlaLogic.isOffLattice());
+        
+        // Add the off-lattice functionality, which is used by the next DLA to be started
+        offLatticeSwitch.addActionListener(new ActionListener()
+        {
+            @Override
+            public void actionPerformed(ActionEvent e) 
+            {
+                dlaLogic.setOffLattice(offLatticeSwitch.isSelected());
+            }
+        });
+        
+        // Add the off-lattice check box to the user controls panel
+        userControlsPanel.add(offLatticeSwitch);
+    }
+
+    /**
+     * Assign the mask chosen by the mask controls to the DLA logic.
+     * @param maskType The mask type chosen in the mask list.
+     * @param maskRadiusSpinner The spinner holding the chosen mask radius.
+     */
+    private void updateMask(String maskType, JSpinner maskRadiusSpinner)
+    {
+        int maskRadius = ((Integer) maskRadiusSpinner.getValue()).intValue();
+        
+        // The radius is only used by the Chebyshev and Euclidean mask types
+        maskRadiusSpinner.setEnabled(maskType.equals(CHEBYSHEV_MASK) || maskType.equals(EUCLIDEAN_MASK));
+        
+        if (maskType.equals(CHEBYSHEV_MASK))
+        {
+            dlaLogic.setMask(Mask.chebyshev(maskRadius));
+        }
+        else if (maskType.equals(EUCLIDEAN_MASK))
+        {
+            dlaLogic.setMask(Mask.euclidean(maskRadius));
+        }
+        else
+        {
+            // Convert the chosen string value to an integer then assign it as the mask size
+            dlaLogic.setMaskSize(Integer.parseInt(maskType));
+        }
     }
 
     /** 
@@ -329,21 +465,157 @@ public class DLAFrame extends JFrame
     }
     
     /**
-     * Clear the current canvas display and reset the DLA data structures.
-     */ 
-    private void clear()
+     * Add the DLA circle diameter spinner to the user controls panel.
+     */
+    private void addDiameterSpinner()
     {
-        // Stop the previous thread
-        dlaThread.stop();
+        // Add a label explaining the purpose of the diameter spinner
+        userControlsPanel.add(new JLabel("Diameter:"));
         
-        //Wait until the thread has completely stopped
-        while(dlaThread.isAlive()){}
+        // Create the spinner with values ranging from 100 to 20000, starting at the current diameter
+        final JSpinner diameterSpinner = new JSpinner(new SpinnerNumberModel(dlaLogic.getDlaCircleDiameter(), 100, 20000, 100));
         
-        // Create a new particle container
-        dlaLogic.resetAttachedParticles();
+        // Add the spinner functionality
+        diameterSpinner.addChangeListener(new ChangeListener()
+        {
+            @Override
+            public void stateChanged(ChangeEvent e) 
+            {
+                // Stop and clear the current DLA, then create grids for the new diameter
+                clear(new Runnable()
+                {
+                    @Override
+                    public void run() 
+                    {
+                        dlaLogic.setDlaCircleDiameter(((Integer) diameterSpinner.getValue()).intValue());
+                    }
+                });
+            }
+        });
+        
+        // Add the spinner to the user controls panel
+        userControlsPanel.add(diameterSpinner);
+    }
+    
+    /**
+     * Add the replay position slider and speed spinner to the user controls panel, then start the replay.
+     * @param replayFile The event log to replay.
+     */
+    private void addReplayControls(File replayFile)
+    {
+        try
+        {
+            replayPlayer = new ReplayPlayer(new EventLogReader(replayFile), dlaLogic, 10000);
+        }
+        catch (IOException e)
+        {
+            // Print out message if an error occurs and carry on without the replay
+            System.out.println("Error opening event log: " + e.getMessage());
+            return;
+        }
         
-        // Create a new position checker container
-        dlaLogic.resetPositionContainsAttachedParticle();
+        // Add a label explaining the purpose of the replay slider
+        userControlsPanel.add(new JLabel("Replay:"));
+        
+        // Create the slider covering every particle in the event log
+        final JSlider replaySlider = new JSlider(0, replayPlayer.getParticleCount(), 0);
+        replaySlider.setPreferredSize(new Dimension(400, 50));
+        
+        // Move the replay to the chosen particle while the user drags the slider
+        replaySlider.addChangeListener(new ChangeListener()
+        {
+            @Override
+            public void stateChanged(ChangeEvent e) 
+            {
+                if (replaySlider.getValueIsAdjusting() && replayPlayer != null)
+                {
+                    replayPlayer.seek(replaySlider.getValue());
+                }
+            }
+        });
+        userControlsPanel.add(replaySlider);
+        
+        // Create the speed spinner in particles per second, where 0 pauses the replay
+        userControlsPanel.add(new JLabel("Speed:"));
+        final JSpinner speedSpinner = new JSpinner(new SpinnerNumberModel(10000, 0, 10000000, 1000));
+        speedSpinner.addChangeListener(new ChangeListener()
+        {
+            @Override
+            public void stateChanged(ChangeEvent e) 
+            {
+                if (replayPlayer != null)
+                {
+                    replayPlayer.setSpeed(((Integer) speedSpinner.getValue()).intValue());
+                }
+            }
+        });
+        userControlsPanel.add(speedSpinner);
+        
+        // Keep the slider at the replay position unless the user is dragging it
+        new Timer(100, new ActionListener()
+        {
+            @Override
+            public void actionPerformed(ActionEvent e) 
+            {
+                if (!replaySlider.getValueIsAdjusting() && replayPlayer != null)
+                {
+                    replaySlider.setValue(replayPlayer.getPosition());
+                }
+            }
+        }).start();
+        
+        // Start the replay on its own thread
+        replayThread = new Thread(replayPlayer, "DLA Replay");
+        replayThread.start();
+    }
+    
+    /**
+     * Clear the current canvas display and reset the DLA data structures.
+     * The previous DLA is stopped without blocking the event dispatch thread, so the reset happens once it has finished.
+     * @param afterClear The task to run on the event dispatch thread once the DLA has been reset, or null.
+     */ 
+    private void clear(final Runnable afterClear)
+    {
+        // Stop the replay so that it no longer adds particles
+        if (replayPlayer != null)
+        {
+            replayPlayer.stop(replayThread);
+            replayPlayer = null;
+        }
+        
+        // Stop the previous DLA, which finishes within a few thousand moves of each thread, then reset it on this thread
+        pauseButton.setText("Pause");
+        dlaLogic.cancel(new Runnable()
+        {
+            @Override
+            public void run() 
+            {
+                SwingUtilities.invokeLater(new Runnable()
+                {
+                    @Override
+                    public void run() 
+                    {
+                        // A DLA started by an earlier clear may be running by now, so stop that one first
+                        if (dlaLogic.isRunning())
+                        {
+                            clear(afterClear);
+                            return;
+                        }
+                        
+                        // Create a new particle container
+                        dlaLogic.resetAttachedParticles();
+
+                        // Create a new position checker container
+                        dlaLogic.resetPositionContainsAttachedParticle();
+                        
+                        if (afterClear != null)
+                        {
+                            afterClear.run();
+                        }
+                    }
+                });
+            }
+        });
     }
     /**
      * Add a separator element to the user controls panel.
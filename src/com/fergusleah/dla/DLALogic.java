@@ -1,160 +1,1784 @@
 package com.fergusleah.dla;
 
 import java.awt.Color;
-import java.util.ArrayList;
-import java.util.Random;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * DLALogic is responsible for running the diffusion limited aggregation algorithm which causes the structure to grow.
  * This class also holds the data structures and variables which are used to store and control the growing structure.
+ *
+ * With more than one thread, each thread moves its own particles against the shared grids and claims positions using
+ * atomic compare and set, so exactly one particle attaches at any position and the particle count never overshoots.
+ * This differs from strictly sequential DLA in a bounded way: while a thread is attaching a particle, the other
+ * threads may not yet see that particle (or its sticky halo and launch circle growth). So every decision a particle
+ * makes is against a structure missing at most (threads - 1) of the most recent attachments, and particles attached
+ * close together in time may be ordered differently than a single thread would order them.
+ *
+ * In deterministic mode every particle k is moved using its own random stream made from the seed and k, and particles
+ * are attached strictly in order of k. Worker threads move particles speculatively against the structure as it is
+ * when they start, recording the path of each particle. The coordinating thread then checks each path against the
+ * particles attached since it was started and moves the particle again itself if any of them could have changed the
+ * path. So the result depends only on the seed and is identical for any number of threads.
+ *
+ * A checkpoint file can be written periodically while the DLA is generated, and the generation process can later be
+ * resumed from it. Resuming gives exactly the same result as an uninterrupted run with one thread, where the random
+ * state is saved, and in deterministic mode, where each particle's random stream only depends on its index.
+ *
+ * The generation process can be started on a background thread with start(), then paused, unpaused and cancelled.
+ * Every thread checks whether it should pause or stop before moving each particle, and also checks whether it should
+ * stop every few thousand moves within a walk, so these take effect quickly without slowing the moves themselves.
+ * Alternatively step() advances the generation process on the calling thread by a number of attachments or an amount
+ * of time, so a front end can interleave generating and drawing the DLA.
+ * While the DLA is generated, the rates of steps and attachments, killed particles, walk lengths and structure radius
+ * are counted in DLAMetrics, which can be published over JMX. The shape of the structure, including its fractal
+ * dimension, is measured by ClusterStatistics, and the generation process can stop early once the dimension converges.
+ *
+ * In off-lattice mode particles are discs of unit diameter which move by random angles in continuous space and attach
+ * where they first touch an attached disc. The attached discs are held in an OffLatticeCluster, and each disc is also
+ * added to the particle store at its nearest grid position so that it is displayed, saved and measured as usual.
+ * Off-lattice DLAs are generated on one thread, do not use the mask and stop once the structure reaches the edge of
+ * the DLA circle, and since a grid position does not hold a disc's exact position they are not checkpointed.
  * @author Fergus Leah.
  */
 public class DLALogic implements Runnable
 {
-    //  Determines the DLA circle diameter and array grid size (may be too high for slow computers)
-    private final int dlaCircleDiameter = 500;
+    // The default DLA circle diameter and array grid size (may be too high for slow computers)
+    public static final int DEFAULT_DLA_CIRCLE_DIAMETER = 500;
+    
+    //  Determines the DLA circle diameter and array grid size
+    private int dlaCircleDiameter;
 
     // Reusable variable defining half of the DLA circle diameter
-    private final int dlaCircleRadius = dlaCircleDiameter / 2;
+    private int dlaCircleRadius;
+    
+    // The gap between the growing structure and the circle which new particles are launched from
+    private static final int LAUNCH_GAP = 5;
+    
+    // The kill zone radius as a multiple of the launch circle radius
+    private static final int KILL_RADIUS_FACTOR = 2;
+    
+    // The finest occupancy pyramid level used for jumps, smaller blocks would give jumps too short to be worthwhile
+    private static final int MINIMUM_JUMP_LEVEL = 3;
+    
+    // The shortest jump worth taking instead of a single random move
+    private static final int MINIMUM_JUMP_DISTANCE = 2;
+    
+    // The gap between the launch circle and the circle where escaped particles are reinjected
+    private static final int REINJECTION_GAP = 2;
+    
+    // The number of particles each worker thread may move ahead of the last attached particle in deterministic mode
+    private static final int SPECULATION_WINDOW_PER_THREAD = 4;
+    
+    // The finest occupancy pyramid level used for jumps in off-lattice mode, where every other move is a free flight
+    // to the nearest disc found by the spatial hash, so shorter jumps are still worthwhile
+    private static final int MINIMUM_DISC_JUMP_LEVEL = 2;
+    
+    // The length of a single random move in off-lattice mode, one disc diameter
+    private static final double DISC_STEP_LENGTH = 1;
+    
+    // The number of moves between checks for a request to stop in the middle of a walk, which must be a power of two
+    private static final int STOP_CHECK_STEPS = 1 << 12;
+    
+    // The distance from the center to the furthest attached particle, used to place the launch circle
+    private final AtomicInteger clusterRadius = new AtomicInteger();
+    
+    // The number of particles which have been claimed for attachment, which never exceeds the maximum
+    private final AtomicInteger claimedParticles = new AtomicInteger();
+    
+    // The number of moves and jumps made by every particle, including those which were killed or moved again
+    private final AtomicLong movedSteps = new AtomicLong();
+    
+    // Counts what the generation process is doing while it runs, with a stripe for each walker
+    private final DLAMetrics metrics = new DLAMetrics(this);
+    
+    // Create primitive particle store to hold attached particles for display purposes
+    private final ParticleStore attachedParticles = new ParticleStore();
+    
+    // Create bit packed grid used to quickly determine whether position [x][y] contains an attached particle
+    private OccupancyGrid occupancyGrid;
+    
+    // Create bit packed grid marking every position within the mask of an attached particle, where particles stick
+    private OccupancyGrid stickyHalo;
+    
+    // Create the occupancy pyramid of the sticky halo, used to find how far a particle is from the growing structure
+    private OccupancyPyramid occupancyPyramid;
+    
+    // The seed of the random streams used in deterministic mode, from the clock by default
+    private long seed = System.nanoTime();
+    
+    // Setup the random source, seeded from the clock by default
+    private RandomSource random = new Xoshiro256StarStar(seed);
+    
+    // Setup the stream of random directions which moves particles 32 moves per random value
+    private DirectionStream directions = new DirectionStream(random);
+    
+    // Set the default user interface settings
+    private Color firstColour = Color.CYAN;
+    private Color secondColour = Color.BLUE;
+    private volatile Mask mask = Mask.fromSize(4);
+    private double fillPercentage = 100;
+    private boolean drawMaskEnabled = false;
+    
+    // Whether particles leaving the kill zone are placed back on the launch circle instead of being killed
+    private boolean reinjectEscapedParticles = false;
+
+    // The number of particles when DLA the generation is completed
+    private int maxParticles;
+    
+    // The mask which the sticky halo has been built with
+    private Mask activeMask = mask;
+    
+    // The number of threads which move particles
+    private int threadCount = 1;
+    
+    // Where the grids hold their positions
+    private GridStorage gridStorage = GridStorage.PACKED;
+    
+    // The directory which holds the files of memory mapped grids, or null for the default temporary file directory
+    private File gridDirectory = null;
+    
+    // Whether particles are attached in a fixed order so that the result is the same for any number of threads
+    private boolean deterministic = false;
+    
+    // Whether particles are discs moving in continuous space rather than grid positions
+    private boolean offLattice = false;
+    
+    // Holds the discs attached in off-lattice mode, or null until an off-lattice DLA is first generated in this grid
+    private OffLatticeCluster discs;
+    
+    // Set to tell the worker threads to stop moving particles
+    private volatile boolean workersStopped;
+    
+    // The index of the next particle to be moved speculatively in deterministic mode
+    private final AtomicLong nextSpeculativeParticle = new AtomicLong();
+    
+    // The number of particles which have been attached or killed in order in deterministic mode
+    private volatile long committedParticles;
+    
+    // The number of attached particles whose positions and sticky halos are visible to every thread in deterministic mode
+    private volatile int publishedAttachments;
+    
+    // The default time between checkpoints in milliseconds
+    public static final long DEFAULT_CHECKPOINT_INTERVAL = 60000;
+    
+    // The file which checkpoints are written to, or null if checkpoints are not written
+    private File checkpointFile = null;
+    
+    // The time between checkpoints in milliseconds
+    private long checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+    
+    // Writes checkpoints on a background thread while the DLA is being generated
+    private volatile CheckpointWriter checkpointWriter;
+    
+    // The time when the next checkpoint is due, claimed by the first thread to pass it
+    private final AtomicLong nextCheckpointTime = new AtomicLong();
+    
+    // The file which attached particles are recorded to, or null if they are not recorded
+    private File eventLogFile = null;
+    
+    // The checkpoint which the next DLA generation process resumes from, and the file it was read from
+    private Checkpoint resumedCheckpoint;
+    private File resumedFile;
+    
+    // Runs the generation process and its worker threads on reusable daemon threads, so they never keep the program open
+    private final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory()
+    {
+        // The number of threads created so far, used to name each thread
+        private final AtomicInteger createdThreads = new AtomicInteger();
+        
+        @Override
+        public Thread newThread(Runnable task)
+        {
+            Thread thread = new Thread(task, "DLA Engine " + createdThreads.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    
+    // The generation process started by start(), or null if it has never been started
+    private Future<?> runFuture;
+    
+    // Set to pause or cancel the generation process, checked by every thread before moving each particle
+    private volatile boolean paused;
+    private volatile boolean cancelled;
+    
+    // The failure of the last generation process started by start(), or null if it has not failed
+    private volatile RuntimeException failure;
+    
+    // The factor the structure grows by between checks of whether its dimension has converged
+    private static final double CONVERGENCE_CHECK_GROWTH = 1.1;
+    
+    // Measures the shape of the structure, following the attached particles
+    private ClusterStatistics statistics;
+    
+    // The largest change in the fractal dimension which counts as converged, or 0 to always attach every particle
+    private double dimensionTolerance = 0;
+    
+    // The number of attached particles when the dimension is next checked, claimed by the first thread to reach it
+    private final AtomicInteger nextConvergenceCheck = new AtomicInteger();
+    
+    // Set once the dimension has converged, which stops the generation process
+    private volatile boolean dimensionConverged;
+    
+    // Paused threads wait on this lock until they are unpaused or told to stop
+    private final Object pauseLock = new Object();
+    
+    // The walker moving particles for step(), or null if step() has not started a generation process
+    private Walker stepWalker;
+    
+    // The index of the next particle moved by step() in deterministic mode
+    private long stepParticle;
+    
+    /**
+     * Create the DLA logic using the default DLA circle diameter.
+     */
+    public DLALogic()
+    {
+        this(DEFAULT_DLA_CIRCLE_DIAMETER);
+    }
+    
+    /**
+     * Create the DLA logic using a custom DLA circle diameter.
+     * @param dlaCircleDiameter The diameter of the DLA circle and the size of the array grid.
+     */
+    public DLALogic(int dlaCircleDiameter)
+    {
+        this(dlaCircleDiameter, GridStorage.PACKED, null);
+    }
+    
+    /**
+     * Create the DLA logic using a custom DLA circle diameter and grid storage.
+     * @param dlaCircleDiameter The diameter of the DLA circle and the size of the array grid.
+     * @param gridStorage Where the grids hold their positions, which can only be packed when several threads are used.
+     * @param gridDirectory The directory which holds the files of memory mapped grids, or null for the default.
+     */
+    public DLALogic(int dlaCircleDiameter, GridStorage gridStorage, File gridDirectory)
+    {
+        this.gridStorage = gridStorage;
+        this.gridDirectory = gridDirectory;
+        setDlaCircleDiameter(dlaCircleDiameter);
+    }
+   
+    /**
+     * The core DLA logic. 
+     * Particles are launched from a circle just outside the growing structure, move randomly within the grid and 
+     * attempt to attach themselves to the growing structure.
+     * Particles which move too far away from the growing structure to the outside kill zone are eliminated. 
+     * Once the launch circle reaches the edge of the DLA circle, particles are created anywhere within the grid.
+     * If a checkpoint was resumed, the generation process continues from it instead of starting from the root particle.
+     */
+    @Override
+    public void run()
+    {
+        // A resumed checkpoint is only used by a single generation process
+        Checkpoint resumed = resumedCheckpoint;
+        resumedCheckpoint = null;
+        long firstParticle = beginGeneration(resumed);
+        
+        // Start recording attached particles, including any which were resumed
+        EventLogWriter eventLogWriter = startEventLog();
+        
+        boolean completed = false;
+        try
+        {
+            // Start writing checkpoints, appending to the resumed checkpoint file if it is used again
+            startCheckpoints(checkpointFile != null && checkpointFile.equals(resumedFile) ? resumed : null);
+            
+            // Move discs on this thread, or move particles in a fixed order, on this thread or on the worker threads
+            if (offLattice)
+            {
+                Walker walker = new Walker(random, directions, metrics.createStripe());
+                try
+                {
+                    walkDiscs(walker);
+                }
+                finally
+                {
+                    movedSteps.addAndGet(walker.steps);
+                }
+                completed = !walker.abandoned;
+            }
+            else if (deterministic)
+            {
+                runDeterministic(firstParticle);
+                completed = true;
+            }
+            else if (threadCount == 1)
+            {
+                Walker walker = new Walker(random, directions, metrics.createStripe());
+                try
+                {
+                    walkParticles(walker, true);
+                }
+                finally
+                {
+                    movedSteps.addAndGet(walker.steps);
+                }
+                completed = !walker.abandoned;
+            }
+            else
+            {
+                runWorkers();
+                completed = true;
+            }
+        }
+        finally
+        {
+            try
+            {
+                // Write the final state and wait for every checkpoint to reach the file
+                stopCheckpoints(completed);
+            }
+            finally
+            {
+                // Record the remaining attached particles and close the event log
+                stopEventLog(eventLogWriter);
+            }
+        }
+    }
+    
+    /**
+     * Prepare a generation process, adding the root particle unless the particles were restored from a checkpoint.
+     * @param resumed The checkpoint which the particles were restored from, or null to start from the root particle.
+     * @return The index of the first particle to move, which is only above 0 when a checkpoint is resumed.
+     */
+    private long beginGeneration(Checkpoint resumed)
+    {
+        // Calculate the number of particles in the DLA when the generation process is complete
+        calculateMaxParticles();
+        
+        // Any stop requested of an earlier generation process does not apply to this one
+        workersStopped = false;
+        
+        // Count the metrics of this generation process from zero, and check the dimension for convergence afresh
+        metrics.reset();
+        statistics.resetConvergence();
+        nextConvergenceCheck.set(0);
+        dimensionConverged = false;
+        
+        if (resumed == null)
+        {
+            // The structure starts with no size and no particles have moved
+            clusterRadius.set(0);
+            movedSteps.set(0);
+
+            // Build the sticky halo using the current mask
+            activeMask = mask;
+            
+            // Add the root disc directly in the center, creating the discs the first time they are used in this grid
+            if (offLattice)
+            {
+                if (discs == null)
+                {
+                    discs = new OffLatticeCluster(dlaCircleDiameter, new OccupancyGridFactory(gridStorage, false, gridDirectory));
+                }
+                discs.clear();
+                attachDisc(dlaCircleRadius, dlaCircleRadius);
+                return 0;
+            }
+
+            // Add the first root particle positioned directly in the center
+            claimedParticles.set(1);
+            occupancyGrid.setOccupied(dlaCircleRadius, dlaCircleRadius);
+            attachParticle(dlaCircleRadius, dlaCircleRadius);
+            return 0;
+        }
+        
+        // The particles, grids and counters were restored from the checkpoint, which only holds grid positions
+        if (offLattice)
+        {
+            throw new IllegalStateException("Error - An off-lattice DLA cannot be resumed from a checkpoint");
+        }
+        claimedParticles.set(attachedParticles.size());
+        return resumed.nextParticle;
+    }
+    
+    /**
+     * Start the generation process on a background thread, as run() would on the calling thread.
+     * If the generation process fails, the failure is printed to the standard error stream and kept for getFailure().
+     * @throws IllegalStateException If a generation process started by start() is still running.
+     */
+    public synchronized void start()
+    {
+        if (isRunning())
+        {
+            throw new IllegalStateException("Error - The DLA is already running");
+        }
+        paused = false;
+        cancelled = false;
+        failure = null;
+        runFuture = executor.submit(new Runnable()
+        {
+            @Override
+            public void run() 
+            {
+                try
+                {
+                    DLALogic.this.run();
+                }
+                catch (RuntimeException e)
+                {
+                    // Nothing waits for this thread, so report the failure here and keep it for the front end
+                    failure = e;
+                    System.err.println("Error generating the DLA: " + e.getMessage());
+                }
+            }
+        });
+    }
+    
+    /**
+     * Access the failure of the last generation process started by start().
+     * @return The exception which stopped the generation process, or null if it has not failed.
+     */
+    public RuntimeException getFailure()
+    {
+        return failure;
+    }
+    
+    /**
+     * Check whether a generation process started by start() is still running, including while it is paused.
+     * @return True if the generation process is running, else false.
+     */
+    public synchronized boolean isRunning()
+    {
+        return runFuture != null && !runFuture.isDone();
+    }
+    
+    /**
+     * Pause or unpause the generation process. Every thread finishes moving its current particle before pausing.
+     * @param paused True to pause the generation process, false to carry on.
+     */
+    public void setPaused(boolean paused)
+    {
+        synchronized (pauseLock)
+        {
+            this.paused = paused;
+            pauseLock.notifyAll();
+        }
+    }
+    
+    /**
+     * Check whether the generation process has been paused.
+     * @return True if the generation process is paused, else false.
+     */
+    public boolean isPaused()
+    {
+        return paused;
+    }
+    
+    /**
+     * Stop the generation process started by start() and wait for it to finish, which takes at most the time for each
+     * thread to make a few thousand moves. A final checkpoint is written as for any stopped generation process, so it
+     * can be resumed later. The attached particles are kept until they are reset.
+     * This blocks the calling thread, so a user interface should use cancel(Runnable) instead.
+     */
+    public void cancel()
+    {
+        awaitFinished(requestCancel());
+    }
+    
+    /**
+     * Stop the generation process started by start() without waiting for it to finish, as cancel() does otherwise.
+     * @param whenStopped The task to run once the generation process has finished, which is run on a background thread.
+     */
+    public void cancel(final Runnable whenStopped)
+    {
+        final Future<?> future = requestCancel();
+        executor.execute(new Runnable()
+        {
+            @Override
+            public void run() 
+            {
+                awaitFinished(future);
+                whenStopped.run();
+            }
+        });
+    }
+    
+    /**
+     * Tell every thread of the generation process started by start() to stop, waking any which are paused.
+     * @return The result of the generation process, or null if none was started.
+     */
+    private Future<?> requestCancel()
+    {
+        Future<?> future;
+        synchronized (this)
+        {
+            future = runFuture;
+        }
+        
+        // Wake any paused threads so that they see the cancellation
+        cancelled = true;
+        setPaused(false);
+        return future;
+    }
     
-    // Create array list to hold attached particles for display purposes
-    public ArrayList<Square> attachedParticles = new ArrayList<Square>();
+    /**
+     * Wait for a generation process to finish, even if this thread is interrupted.
+     * @param future The result of the generation process, or null if none was started.
+     */
+    private static void awaitFinished(Future<?> future)
+    {
+        boolean interrupted = false;
+        while (future != null && !future.isDone())
+        {
+            try
+            {
+                future.get();
+            }
+            catch (InterruptedException e)
+            {
+                interrupted = true;
+            }
+            catch (ExecutionException e)
+            {
+                // The failure was already reported by the generation process
+                break;
+            }
+        }
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
     
-    // Create boolean array used to quickly determine whether position [x][y] contains an attached particle
-    public boolean[][] positionContainsAttachedParticle = new boolean[dlaCircleDiameter][dlaCircleDiameter];
+    /**
+     * Advance the generation process on the calling thread until a number of particles have been attached, an amount
+     * of time has passed or the DLA is complete. The first call starts the generation process from the root particle,
+     * or from a resumed checkpoint, and each later call carries on from the previous one until the particles are reset.
+     * Particles are moved one at a time exactly as run() moves them with one thread, so the result for a seed is the
+     * same, including in off-lattice mode. Checkpoints and the event log are only written by run().
+     * @param maxAttachments The most particles to attach in this call.
+     * @param maxMillis The most time to spend in this call in milliseconds, checked before moving each particle.
+     * @return True if more particles remain to be attached, false once the DLA is complete.
+     * @throws IllegalStateException If a generation process started by start() is running.
+     */
+    public boolean step(int maxAttachments, long maxMillis)
+    {
+        if (isRunning())
+        {
+            throw new IllegalStateException("Error - The DLA cannot be stepped while it is running");
+        }
+        
+        // Stepping is not cancelled, so a stop requested of an earlier generation process does not apply to it
+        cancelled = false;
+        workersStopped = false;
+        
+        // Start a generation process on the first step, using the same random sources as run() with one thread
+        if (stepWalker == null)
+        {
+            Checkpoint resumed = resumedCheckpoint;
+            resumedCheckpoint = null;
+            stepParticle = beginGeneration(resumed);
+            if (deterministic && !offLattice)
+            {
+                Xoshiro256StarStar streamRandom = new Xoshiro256StarStar(seed);
+                stepWalker = new Walker(streamRandom, new DirectionStream(streamRandom), metrics.createStripe());
+            }
+            else
+            {
+                stepWalker = new Walker(random, directions, metrics.createStripe());
+            }
+        }
+        
+        long startTime = System.nanoTime();
+        long maxNanos = TimeUnit.MILLISECONDS.toNanos(maxMillis);
+        long targetParticles = Math.min((long) attachedParticles.size() + maxAttachments, maxParticles);
+        while (attachedParticles.size() < targetParticles && !dimensionConverged && System.nanoTime() - startTime < maxNanos)
+        {
+            if (offLattice)
+            {
+                // Stop once the structure reaches the edge of the DLA circle
+                if (discsReachedEdge())
+                {
+                    break;
+                }
+                walkDisc(stepWalker);
+            }
+            else if (deterministic)
+            {
+                // Move the next particle in order using its own random stream, as the coordinating thread does
+                long launchSteps = stepWalker.steps;
+                boolean attached = moveParticle(stepWalker, (Xoshiro256StarStar) stepWalker.random, stepParticle, null);
+                
+                // A particle abandoned part way is moved again from its launch by the next step
+                if (stepWalker.abandoned)
+                {
+                    break;
+                }
+                if (attached)
+                {
+                    occupancyGrid.setOccupied(stepWalker.x, stepWalker.y);
+                    attachParticle(stepWalker.x, stepWalker.y);
+                    stepWalker.stripe.addAttachment(stepWalker.steps - launchSteps);
+                }
+                else
+                {
+                    stepWalker.stripe.addKilled();
+                }
+                stepParticle++;
+            }
+            else
+            {
+                // If the mask has been changed rebuild the sticky halo around the particles which are already attached
+                if (mask != activeMask)
+                {
+                    activeMask = mask;
+                    rebuildStickyHalo();
+                }
+                walkParticle(stepWalker);
+            }
+            checkConvergenceIfDue();
+        }
+        
+        // Count the moves made in this call
+        movedSteps.addAndGet(stepWalker.steps);
+        stepWalker.steps = 0;
+        return attachedParticles.size() < maxParticles && !dimensionConverged && !(offLattice && discsReachedEdge());
+    }
     
-    // Setup the random variable
-    private final Random random = new Random();
+    /**
+     * Wait while the generation process is paused, then check whether this thread should stop moving particles.
+     * This is called before each particle is moved, so while running it only costs two volatile reads per particle.
+     * @return True if the worker threads were told to stop, the generation process was cancelled or the dimension
+     * converged, else false.
+     */
+    private boolean isStopRequested()
+    {
+        if (paused)
+        {
+            synchronized (pauseLock)
+            {
+                while (paused && !workersStopped && !cancelled)
+                {
+                    try
+                    {
+                        pauseLock.wait();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        // Treat an interrupt as a request to stop, keeping the interrupt for whoever waits for this thread
+                        stopWorkers();
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }
+        return workersStopped || cancelled || dimensionConverged;
+    }
+    
+    /**
+     * Check whether a particle should stop moving part way through its walk, without waiting while paused.
+     * A single walk can be very long, and an escaped particle which is reinjected never ends while no position is
+     * reachable, so this is checked every few thousand moves.
+     * @return True if the worker threads were told to stop, the generation process was cancelled or the dimension
+     * converged, else false.
+     */
+    private boolean isWalkStopRequested()
+    {
+        return workersStopped || cancelled || dimensionConverged;
+    }
+    
+    /**
+     * Tell the worker threads to stop moving particles, waking any which are paused.
+     */
+    private void stopWorkers()
+    {
+        synchronized (pauseLock)
+        {
+            workersStopped = true;
+            pauseLock.notifyAll();
+        }
+    }
+    
+    /**
+     * Start the worker threads, each with its own random source, and wait for them to finish.
+     * If this thread is interrupted the workers are told to stop, and this thread still waits for them.
+     */
+    private void runWorkers()
+    {
+        joinWorkers(startWorkers(null));
+    }
+    
+    /**
+     * Attach particles strictly in order, taking each particle's path from the worker threads when it is still valid.
+     * With one thread every particle is moved on this thread, giving the reference result for the seed.
+     * @param firstParticle The index of the first particle to move, which is only above 0 when a checkpoint is resumed.
+     */
+    private void runDeterministic(long firstParticle)
+    {
+        // This thread moves any particle whose speculative path is invalid, or every particle with one thread
+        Xoshiro256StarStar committerRandom = new Xoshiro256StarStar(seed);
+        Walker committer = new Walker(committerRandom, new DirectionStream(committerRandom), metrics.createStripe());
+        
+        // Each particle's speculative path is held in a window slot until it is attached or killed
+        WalkerPath[] window = new WalkerPath[threadCount == 1 ? 0 : threadCount * SPECULATION_WINDOW_PER_THREAD];
+        for (int i = 0; i < window.length; i++)
+        {
+            window[i] = new WalkerPath();
+        }
+        
+        // The root particle, or every resumed particle, is visible to every worker before they start
+        committedParticles = firstParticle;
+        publishedAttachments = attachedParticles.size();
+        nextSpeculativeParticle.set(firstParticle);
+        Future<?>[] workers = window.length == 0 ? new Future<?>[0] : startWorkers(window);
+        
+        try
+        {
+            for (long particle = firstParticle; attachedParticles.size() < maxParticles && !isStopRequested(); particle++)
+            {
+                boolean attached;
+                int x, y;
+                long walkLength;
+                WalkerPath path = window.length == 0 ? null : window[(int) (particle % window.length)];
+                
+                // Wait for a worker to finish moving this particle, unless the generation process is cancelled
+                while (path != null && path.walker != particle && !isStopRequested())
+                {
+                    Thread.yield();
+                }
+                if (path != null && path.walker != particle)
+                {
+                    break;
+                }
+                
+                // Use the speculative path if no particle attached since it started could have changed it
+                if (path != null && path.isValid(attachedParticles, publishedAttachments, clusterRadius.get(), activeMask.getReach()))
+                {
+                    attached = path.isAttached();
+                    x = path.getX();
+                    y = path.getY();
+                    walkLength = path.getSteps();
+                }
+                else
+                {
+                    long launchSteps = committer.steps;
+                    attached = moveParticle(committer, committerRandom, particle, null);
+                    
+                    // A particle abandoned part way is not committed, so resuming moves it again from its launch
+                    if (committer.abandoned)
+                    {
+                        break;
+                    }
+                    x = committer.x;
+                    y = committer.y;
+                    walkLength = committer.steps - launchSteps;
+                }
+                
+                // Attach the particle and make it visible to the workers, then free its window slot
+                if (attached)
+                {
+                    occupancyGrid.setOccupied(x, y);
+                    attachParticle(x, y);
+                    publishedAttachments = attachedParticles.size();
+                    committer.stripe.addAttachment(walkLength);
+                }
+                else
+                {
+                    committer.stripe.addKilled();
+                }
+                committedParticles = particle + 1;
+                checkpointIfDue(committer.steps, particle + 1);
+                checkConvergenceIfDue();
+            }
+        }
+        finally
+        {
+            // Stop the workers, which are always ahead of the last particle to be attached, then wait for them
+            movedSteps.addAndGet(committer.steps);
+            stopWorkers();
+            joinWorkers(workers);
+        }
+    }
+    
+    /**
+     * Start the worker threads on the executor, each with its own random source.
+     * @param window The window of speculative paths in deterministic mode, or null to attach particles freely.
+     * @return The results of the started worker threads.
+     */
+    private Future<?>[] startWorkers(final WalkerPath[] window)
+    {
+        workersStopped = false;
+        
+        Future<?>[] workers = new Future<?>[threadCount];
+        for (int i = 0; i < threadCount; i++)
+        {
+            // In deterministic mode each particle resets the random source to its own stream
+            final Xoshiro256StarStar streamRandom = new Xoshiro256StarStar(seed);
+            final RandomSource workerRandom = window == null ? random.split() : streamRandom;
+            workers[i] = executor.submit(new Runnable()
+            {
+                @Override
+                public void run() 
+                {
+                    Walker walker = new Walker(workerRandom, new DirectionStream(workerRandom), metrics.createStripe());
+                    try
+                    {
+                        if (window == null)
+                        {
+                            walkParticles(walker, false);
+                        }
+                        else
+                        {
+                            speculateParticles(walker, streamRandom, window);
+                        }
+                    }
+                    finally
+                    {
+                        movedSteps.addAndGet(walker.steps);
+                    }
+                }
+            });
+        }
+        return workers;
+    }
+    
+    /**
+     * Wait for every worker thread to finish, even if this thread is interrupted.
+     * If a worker fails the others are told to stop, and the failure is thrown once they have all finished.
+     * @param workers The results of the worker threads.
+     */
+    private void joinWorkers(Future<?>[] workers)
+    {
+        boolean interrupted = false;
+        RuntimeException failure = null;
+        for (int i = 0; i < workers.length; i++)
+        {
+            while (true)
+            {
+                try
+                {
+                    workers[i].get();
+                    break;
+                }
+                catch (InterruptedException e)
+                {
+                    // Tell the workers to stop and remember the interrupt for when they have finished
+                    stopWorkers();
+                    interrupted = true;
+                }
+                catch (ExecutionException e)
+                {
+                    // Stop the other workers, keeping the first failure to throw once they have all finished
+                    stopWorkers();
+                    if (failure == null)
+                    {
+                        failure = new IllegalStateException("Error - A DLA worker thread failed: " + e.getCause(), e.getCause());
+                    }
+                    break;
+                }
+            }
+        }
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null)
+        {
+            throw failure;
+        }
+    }
+    
+    /**
+     * Create and move particles until the maximum number of particles has been claimed.
+     * @param walker The moving particle, with a random source which is not shared with any other thread.
+     * @param allowMaskChanges True if the sticky halo may be rebuilt when the mask changes, which is only safe on one thread.
+     */
+    private void walkParticles(Walker walker, boolean allowMaskChanges)
+    {
+        // While the number of claimed particles is less than the maximum
+        while (claimedParticles.get() < maxParticles && !isStopRequested())
+        {
+            // If the mask has been changed rebuild the sticky halo around the particles which are already attached
+            if (allowMaskChanges && mask != activeMask)
+            {
+                activeMask = mask;
+                rebuildStickyHalo();
+            }
+            
+            walkParticle(walker);
+            checkpointIfDue(walker.steps, 0);
+            checkConvergenceIfDue();
+        }
+    }
+    
+    /**
+     * Create a single particle and move it until it attaches to the growing structure or is killed.
+     * @param walker The moving particle.
+     */
+    private void walkParticle(Walker walker)
+    {
+        launchParticle(walker, clusterRadius.get());
+        long launchSteps = walker.steps;
+        
+        // Move the particle until it reaches a position where it attaches or it is killed
+        while (moveParticle(walker, null))
+        {
+            // Stop if the maximum number of particles has already been claimed by this or another thread
+            if (!claimParticle())
+            {
+                return;
+            }
+
+            // Claim the position and attach this particle, unless another thread attached a particle here first
+            if (occupancyGrid.trySetOccupied(walker.x, walker.y))
+            {
+                attachParticle(walker.x, walker.y);
+                walker.stripe.addAttachment(walker.steps - launchSteps);
+                return;
+            }
+            claimedParticles.decrementAndGet();
+        }
+        if (!walker.abandoned)
+        {
+            walker.stripe.addKilled();
+        }
+    }
+    
+    /**
+     * Create and move discs in off-lattice mode until the maximum number of particles has been attached or the
+     * structure reaches the edge of the DLA circle.
+     * @param walker The moving disc.
+     */
+    private void walkDiscs(Walker walker)
+    {
+        while (attachedParticles.size() < maxParticles && !discsReachedEdge() && !isStopRequested())
+        {
+            walkDisc(walker);
+            checkConvergenceIfDue();
+        }
+    }
+    
+    /**
+     * Check whether an off-lattice structure has grown so far that its launch circle no longer fits inside the DLA circle.
+     * Discs cannot be created anywhere within the grid as lattice particles are, since they may overlap attached discs.
+     * @return True if the off-lattice DLA is complete, else false.
+     */
+    private boolean discsReachedEdge()
+    {
+        return clusterRadius.get() + LAUNCH_GAP >= dlaCircleRadius - 1;
+    }
+    
+    /**
+     * Create a single disc on the launch circle and move it until it attaches to the growing structure or is killed.
+     * @param walker The moving disc.
+     */
+    private void walkDisc(Walker walker)
+    {
+        // Create a new disc positioned randomly on the launch circle
+        int launchRadius = setKillZone(walker, clusterRadius.get());
+        double launchAngle = walker.random.nextDouble() * 2 * Math.PI;
+        walker.discX = dlaCircleRadius + launchRadius * Math.cos(launchAngle);
+        walker.discY = dlaCircleRadius + launchRadius * Math.sin(launchAngle);
+        long launchSteps = walker.steps;
+        
+        if (moveDisc(walker))
+        {
+            attachDisc(walker.discX, walker.discY);
+            walker.stripe.addAttachment(walker.steps - launchSteps);
+        }
+        else if (!walker.abandoned)
+        {
+            walker.stripe.addKilled();
+        }
+    }
+    
+    /**
+     * Move a disc by random angles until it touches an attached disc or is killed.
+     * Far from the structure the disc jumps through the empty blocks of the occupancy pyramid as a lattice particle does.
+     * Closer in it flies freely by the gap to the nearest attached disc, found by searching the spatial hash a few cells
+     * around it, and only once that gap is shorter than a single move does it take moves of one diameter, stopping
+     * exactly where it first touches a disc.
+     * @param walker The moving disc, whose position is updated.
+     * @return True if the disc touches an attached disc, false if it was killed or abandoned because a stop was requested.
+     */
+    private boolean moveDisc(Walker walker)
+    {
+        RandomSource random = walker.random;
+        long killRadiusSquared = walker.killRadiusSquared;
+        int reinjectionRadius = walker.reinjectionRadius;
+        
+        // The disc position is held as primitive coordinates so that moving it allocates nothing
+        double x = walker.discX;
+        double y = walker.discY;
+
+        // Count the moves and jumps locally so that the loop only reads and writes local variables
+        long steps = 0;
+        walker.abandoned = false;
+
+        // Repeat random movement until the disc touches the growing structure or is killed
+        while (true)
+        {
+            steps++;
+            
+            // Abandon the disc part way if the generation process is stopping
+            if ((steps & (STOP_CHECK_STEPS - 1)) == 0 && isWalkStopRequested())
+            {
+                walker.discX = x;
+                walker.discY = y;
+                walker.abandoned = true;
+                walker.steps += steps;
+                walker.stripe.addSteps(steps);
+                return false;
+            }
+            
+            // Every move, jump or flight is in a random direction
+            double angle = random.nextDouble() * 2 * Math.PI;
+            double dx = Math.cos(angle);
+            double dy = Math.sin(angle);
+            
+            // Every disc center is at least the empty distance minus one away, so a jump two shorter cannot reach touching
+            int jumpDistance = discs.getEmptyDistance(x, y, MINIMUM_DISC_JUMP_LEVEL) - 2;
+            if (jumpDistance >= MINIMUM_JUMP_DISTANCE)
+            {
+                // Jump to a random position on the circle around the disc, as a long random walk would
+                x += jumpDistance * dx;
+                y += jumpDistance * dy;
+            }
+            else
+            {
+                // Discs touch when their centers are one diameter apart, so the disc can fly freely until then
+                double gap = discs.getNearestDistance(x, y) - 1;
+                if (gap > DISC_STEP_LENGTH)
+                {
+                    x += gap * dx;
+                    y += gap * dy;
+                }
+                else
+                {
+                    // Make a single move, stopping where the disc first touches an attached disc on the way
+                    double contactDistance = discs.getContactDistance(x, y, dx, dy, DISC_STEP_LENGTH);
+                    if (contactDistance <= DISC_STEP_LENGTH)
+                    {
+                        walker.discX = x + contactDistance * dx;
+                        walker.discY = y + contactDistance * dy;
+                        walker.steps += steps;
+                        walker.stripe.addSteps(steps);
+                        return true;
+                    }
+                    x += DISC_STEP_LENGTH * dx;
+                    y += DISC_STEP_LENGTH * dy;
+                }
+            }
+
+            // Calculate the disc's squared distance from the center using pythagoras
+            double xDist = x - dlaCircleRadius;
+            double yDist = y - dlaCircleRadius;
+
+            // If this disc has moved outside the kill zone radius
+            if (xDist * xDist + yDist * yDist >= killRadiusSquared)
+            {
+                // If escaped discs are reinjected
+                if (reinjectEscapedParticles)
+                {
+                    // Place this disc back on the reinjection circle where a random walk would first return to it
+                    double reinjectionAngle = getReinjectionAngle(random, xDist, yDist, reinjectionRadius);
+                    x = dlaCircleRadius + reinjectionRadius * Math.cos(reinjectionAngle);
+                    y = dlaCircleRadius + reinjectionRadius * Math.sin(reinjectionAngle);
+                    continue;
+                }
+
+                // Kill this disc so that a new disc is created
+                walker.discX = x;
+                walker.discY = y;
+                walker.steps += steps;
+                walker.stripe.addSteps(steps);
+                return false;
+            }
+        }
+    }
+    
+    /**
+     * Move particles ahead of the last attached particle in deterministic mode, recording each path in the window.
+     * @param walker The moving particle, which uses the random source.
+     * @param random The random source, which is reset to the stream of each particle.
+     * @param window The window of speculative paths, where particle k uses slot k modulo the window size.
+     */
+    private void speculateParticles(Walker walker, Xoshiro256StarStar random, WalkerPath[] window)
+    {
+        while (!isStopRequested())
+        {
+            long particle = nextSpeculativeParticle.getAndIncrement();
+            WalkerPath path = window[(int) (particle % window.length)];
+            
+            // Wait until the particle which used this slot before has been attached or killed
+            while (committedParticles <= particle - window.length)
+            {
+                if (isStopRequested())
+                {
+                    return;
+                }
+                Thread.yield();
+            }
+            
+            // Read the number of visible attachments before the grids, so the path is checked against any that follow
+            path.start(publishedAttachments, clusterRadius.get());
+            long launchSteps = walker.steps;
+            boolean attached = moveParticle(walker, random, particle, path);
+            
+            // An abandoned path is never handed over, so the coordinating thread stops waiting for it
+            if (walker.abandoned)
+            {
+                return;
+            }
+            path.finish(attached, walker.x, walker.y, walker.steps - launchSteps);
+            
+            // Hand the complete path to the coordinating thread
+            path.walker = particle;
+        }
+    }
+    
+    /**
+     * Launch and move a particle in deterministic mode using the random stream of its index.
+     * @param walker The moving particle, which uses the random source.
+     * @param random The random source, which is reset to the stream of this particle.
+     * @param particle The index of the particle.
+     * @param path The path to record the steps of the particle in, or null if they are not needed.
+     * @return True if the particle reached a position where it attaches, false if it was killed.
+     */
+    private boolean moveParticle(Walker walker, Xoshiro256StarStar random, long particle, WalkerPath path)
+    {
+        random.setStream(seed, particle);
+        walker.directions.reset();
+        launchParticle(walker, path == null ? clusterRadius.get() : path.getStartClusterRadius());
+        return moveParticle(walker, path);
+    }
+    
+    /**
+     * Create a new particle on the launch circle, or anywhere within the grid once the launch circle is too large.
+     * @param walker The particle to place, which also holds the kill zone and reinjection circle for this structure radius.
+     * @param radius The structure radius.
+     */
+    private void launchParticle(Walker walker, int radius)
+    {
+        int launchRadius = setKillZone(walker, radius);
+
+        // If the launch circle fits inside the DLA circle
+        if (launchRadius < dlaCircleRadius - 1)
+        {
+            // Create a new particle positioned randomly on the launch circle
+            double launchAngle = walker.random.nextDouble() * 2 * Math.PI;
+            walker.x = dlaCircleRadius + (int) Math.round(launchRadius * Math.cos(launchAngle));
+            walker.y = dlaCircleRadius + (int) Math.round(launchRadius * Math.sin(launchAngle));
+        }
+        else
+        {
+            // Create a new particle positioned randomly within the grid 
+            walker.x = walker.random.nextInt(dlaCircleDiameter);
+            walker.y = walker.random.nextInt(dlaCircleDiameter);
+        }
+    }
+    
+    /**
+     * Place the launch circle just outside the sticky halo of the growing structure and set the walker's kill zone and
+     * reinjection circle, which both scale with the launch circle.
+     * @param walker The particle to set the kill zone and reinjection circle of.
+     * @param radius The structure radius.
+     * @return The radius of the launch circle.
+     */
+    private int setKillZone(Walker walker, int radius)
+    {
+        // Place the launch circle just outside the sticky halo, which discs do not use, and scale the kill zone with it
+        int haloReach = offLattice ? 0 : activeMask.getDistanceReach();
+        int launchRadius = radius + haloReach + LAUNCH_GAP;
+        int killRadius = Math.min(launchRadius * KILL_RADIUS_FACTOR, dlaCircleRadius);
+
+        // Reinjection is exact at any distance, so escaped particles can be caught just outside the launch circle
+        if (reinjectEscapedParticles)
+        {
+            killRadius = Math.min(launchRadius + REINJECTION_GAP, dlaCircleRadius);
+        }
+
+        // Compare squared distances so that no square root is needed on each move
+        walker.killRadiusSquared = (long) killRadius * killRadius;
+
+        // Escaped particles are placed back on the launch circle, or just inside the DLA circle once it is reached
+        walker.reinjectionRadius = Math.min(launchRadius, dlaCircleRadius - 2);
+        return launchRadius;
+    }
+    
+    /**
+     * Move a particle randomly until it reaches a position where it attaches to the growing structure or is killed.
+     * @param walker The moving particle, whose position is updated.
+     * @param path The path to record the steps of the particle in, or null if they are not needed.
+     * @return True if the particle is at an unoccupied position within the mask of an attached particle, false if it was
+     * killed or abandoned because a stop was requested.
+     */
+    private boolean moveParticle(Walker walker, WalkerPath path)
+    {
+        RandomSource random = walker.random;
+        DirectionStream directions = walker.directions;
+        long killRadiusSquared = walker.killRadiusSquared;
+        int reinjectionRadius = walker.reinjectionRadius;
+        
+        // The particle position is held as primitive coordinates so that moving it allocates nothing
+        int x = walker.x;
+        int y = walker.y;
+
+        // Count the moves and jumps locally so that the loop only reads and writes local variables
+        long steps = 0;
+        walker.abandoned = false;
+
+        // Repeat random movement until the particle is attached to the growing structure or killed
+        while (true)
+        {
+            steps++;
+            
+            // Abandon the particle part way if the generation process is stopping
+            if ((steps & (STOP_CHECK_STEPS - 1)) == 0 && isWalkStopRequested())
+            {
+                walker.x = x;
+                walker.y = y;
+                walker.abandoned = true;
+                walker.steps += steps;
+                walker.stripe.addSteps(steps);
+                return false;
+            }
+            
+            // Find the distance to the sticky halo and how far the particle may jump without passing into it
+            int emptyDistance = occupancyPyramid.getEmptyDistance(x, y, MINIMUM_JUMP_LEVEL);
+            int jumpDistance = emptyDistance - 2;
+            
+            // Attached particles only ever make the pyramid levels less empty, so the distance found here can only
+            // change if an empty level within twice the distance fills, and a single move only looks one position away
+            if (path != null)
+            {
+                path.addStep(x, y, emptyDistance == 0 ? 1 : emptyDistance << 1);
+            }
+
+            // If the particle is far from the growing structure
+            if (jumpDistance >= MINIMUM_JUMP_DISTANCE)
+            {
+                // Jump to a random position on the circle around the particle, as a long random walk would
+                double jumpAngle = random.nextDouble() * 2 * Math.PI;
+                x += (int) Math.round(jumpDistance * Math.cos(jumpAngle));
+                y += (int) Math.round(jumpDistance * Math.sin(jumpAngle));
+            }
+            else
+            {
+                // Randomly move left, right, down or up using the stream of random directions
+                switch (directions.nextDirection())
+                {
+                    case 0: x--; break;
+                    case 1: x++; break;
+                    case 2: y--; break;
+                    default: y++; break;
+                }
+            }
+
+            // Calculate the particle's squared distance from the center using pythagoras
+            long xDist = x - dlaCircleRadius;
+            long yDist = y - dlaCircleRadius;
+
+            // If this particle has moved outside the kill zone radius
+            if (xDist * xDist + yDist * yDist >= killRadiusSquared)
+            {
+                // If escaped particles are reinjected
+                if (reinjectEscapedParticles)
+                {
+                    // Place this particle back on the reinjection circle where a random walk would first return to it
+                    double angle = getReinjectionAngle(random, xDist, yDist, reinjectionRadius);
+                    x = dlaCircleRadius + (int) Math.round(reinjectionRadius * Math.cos(angle));
+                    y = dlaCircleRadius + (int) Math.round(reinjectionRadius * Math.sin(angle));
+                    continue;
+                }
+
+                // Kill this particle so that a new particle is created
+                walker.x = x;
+                walker.y = y;
+                walker.steps += steps;
+                walker.stripe.addSteps(steps);
+                return false;
+            }
+
+            // If this particle's position is not already occupied and lies within the mask of an attached particle
+            if (!positionIsAttached(x, y) && stickyHalo.isOccupied(x, y))
+            {
+                walker.x = x;
+                walker.y = y;
+                walker.steps += steps;
+                walker.stripe.addSteps(steps);
+                return true;
+            }
+        }
+    }
+    
+    /**
+     * Claim one of the remaining particles, so that the maximum number of particles is never exceeded.
+     * @return True if a particle was claimed, false if the maximum number of particles has been claimed.
+     */
+    private boolean claimParticle()
+    {
+        while (true)
+        {
+            int claimed = claimedParticles.get();
+            if (claimed >= maxParticles)
+            {
+                return false;
+            }
+            if (claimedParticles.compareAndSet(claimed, claimed + 1))
+            {
+                return true;
+            }
+        }
+    }
+    
+    /**
+     * Find where an escaped particle first returns to a circle around the center of the DLA circle.
+     * The angle is drawn from the exact distribution of where a random walk starting at the particle's position
+     * first reaches the circle (the Poisson kernel), which is a wrapped Cauchy distribution around the particle's angle.
+     * @param random The random source used to sample the angle.
+     * @param xDist The x distance of the particle from the center.
+     * @param yDist The y distance of the particle from the center.
+     * @param reinjectionRadius The radius of the circle to place the particle on, which must be less than its distance.
+     * @return The angle around the center at which to place the particle.
+     */
+    private double getReinjectionAngle(RandomSource random, double xDist, double yDist, int reinjectionRadius)
+    {
+        // The ratio of the circle radius to the particle's distance controls how spread out the angle is
+        double ratio = reinjectionRadius / Math.sqrt(xDist * xDist + yDist * yDist);
+        
+        // Sample the angle relative to the particle's current angle from the wrapped Cauchy distribution
+        double offsetAngle = 2 * Math.atan((1 - ratio) / (1 + ratio) * Math.tan(Math.PI * (random.nextDouble() - 0.5)));
+        return Math.atan2(yDist, xDist) + offsetAngle;
+    }
+    
+    /**
+     * Check if this position contains a particle that is attached to the growing DLA structure.
+     * Positions just outside of the grid fall in the occupancy grid's guard border, so no bounds checking is needed.
+     * Package private so that the benchmarks can measure it.
+     * @param x The x coordinate of the position to check
+     * @param y The y coordinate of the position to check
+     * @return True if position contains an attached particle, else false
+     */
+    boolean positionIsAttached(int x, int y)
+    {
+        return occupancyGrid.isOccupied(x, y);
+    }
+    
+    /**
+     * Update the particle store and grid data structures to attach a particle to the growing DLA structure.
+     * The particle's position must already have been claimed in the occupancy grid.
+     * Also set the particles display colour by interpolating between the first and second selected colours. 
+     * @param x The x coordinate of the particle to be attached to the growing DLA structure.
+     * @param y The y coordinate of the particle to be attached to the growing DLA structure.
+     */
+    private void attachParticle(int x, int y)
+    {
+        // The attachment order of this particle is the number of particles already added to the store
+        int order = attachedParticles.reserve();
+        
+        // Calculate the particle colour based on how many particles are attached to the growing structure
+        int rgb = interpolateBetweenColours(firstColour, secondColour, (double) (order + 1) / maxParticles);
+        
+        // Add particle to the store of attached particles for display purposes
+        attachedParticles.set(order, x, y, rgb);
+        
+        // Mark the positions within this particle's mask as sticky so that the attach check is a single lookup
+        markStickyHalo(x, y);
+        
+        // Grow the structure radius if this particle is further from the center than any other attached particle
+        long xDist = x - dlaCircleRadius;
+        long yDist = y - dlaCircleRadius;
+        growClusterRadius(xDist * xDist + yDist * yDist);
+    }
+    
+    /**
+     * Attach a disc to the growing structure in off-lattice mode, adding it to the particle store at its nearest grid
+     * position so that it is displayed like any other particle.
+     * @param x The x coordinate of the disc center.
+     * @param y The y coordinate of the disc center.
+     */
+    private void attachDisc(double x, double y)
+    {
+        // Add the disc to the spatial hash and occupancy pyramid used to move later discs
+        discs.add(x, y);
+        
+        // Colour the disc by its attachment order and add it to the particle store for display purposes
+        int order = attachedParticles.reserve();
+        int rgb = interpolateBetweenColours(firstColour, secondColour, (double) (order + 1) / maxParticles);
+        attachedParticles.set(order, (int) Math.round(x), (int) Math.round(y), rgb);
+        
+        // Grow the structure radius if this disc is further from the center than any other attached disc
+        double xDist = x - dlaCircleRadius;
+        double yDist = y - dlaCircleRadius;
+        growClusterRadius(xDist * xDist + yDist * yDist);
+    }
+    
+    /**
+     * Grow the structure radius to include a newly attached particle, unless another particle is already further away.
+     * @param squaredDistance The squared distance of the particle from the center.
+     */
+    private void growClusterRadius(double squaredDistance)
+    {
+        int distance = (int) Math.ceil(Math.sqrt(squaredDistance));
+        int radius = clusterRadius.get();
+        while (distance > radius && !clusterRadius.compareAndSet(radius, distance))
+        {
+            radius = clusterRadius.get();
+        }
+    }
+    
+    /**
+     * Create the occupancy grid, sticky halo and occupancy pyramid using the grid storage,
+     * using thread safe versions if several threads are used. Any grids they replace are closed first, so memory
+     * mapped grids release their mappings and files straight away.
+     */
+    private void createGrids()
+    {
+        closeGrids();
+        OccupancyGridFactory gridFactory = new OccupancyGridFactory(gridStorage, threadCount > 1, gridDirectory);
+        occupancyGrid = gridFactory.create(dlaCircleDiameter);
+        stickyHalo = gridFactory.create(dlaCircleDiameter);
+        occupancyPyramid = new OccupancyPyramid(dlaCircleDiameter, gridFactory);
+        
+        // The discs of an off-lattice DLA are created again at the new size when they are next used
+        discs = null;
+        
+        // The statistics are only updated by one thread at a time, so their grids never need to be concurrent
+        statistics = new ClusterStatistics(attachedParticles, dlaCircleDiameter, new OccupancyGridFactory(gridStorage, false, gridDirectory));
+    }
+    
+    /**
+     * Close the grids, discs and statistics of the current grid storage, if they have been created.
+     */
+    private void closeGrids()
+    {
+        if (occupancyGrid != null)
+        {
+            occupancyGrid.close();
+            stickyHalo.close();
+            occupancyPyramid.close();
+            statistics.close();
+        }
+        if (discs != null)
+        {
+            discs.close();
+        }
+    }
+    
+    /**
+     * Mark every position from which this particle can be found by the active mask as sticky.
+     * Also mark the blocks containing those positions in the occupancy pyramid so that particles cannot jump past them.
+     * Positions outside of the grid are never reached by a moving particle and are skipped.
+     * @param x The x coordinate of the attached particle.
+     * @param y The y coordinate of the attached particle.
+     */
+    private void markStickyHalo(int x, int y)
+    {
+        for (int i = 0; i < activeMask.getSize(); i++)
+        {
+            // A particle at this position would find the attached particle at offset i of its mask
+            int haloX = x - activeMask.getOffsetX(i);
+            int haloY = y - activeMask.getOffsetY(i);
+            
+            if (haloX >= 0 && haloX < dlaCircleDiameter && haloY >= 0 && haloY < dlaCircleDiameter)
+            {
+                stickyHalo.setOccupied(haloX, haloY);
+                occupancyPyramid.setOccupied(haloX, haloY);
+            }
+        }
+    }
+    
+    /**
+     * Clear the sticky halo and occupancy pyramid and mark them again around every attached particle using the active mask.
+     */
+    private void rebuildStickyHalo()
+    {
+        stickyHalo.clear();
+        occupancyPyramid.clear();
+        for (int i = 0; i < attachedParticles.size(); i++)
+        {
+            markStickyHalo(attachedParticles.getX(i), attachedParticles.getY(i));
+        }
+    }
+    
+    /**
+     * Start writing checkpoints if a checkpoint file is set, with the first one due after the checkpoint interval.
+     * @param resumed The checkpoint which was resumed from the checkpoint file, so new checkpoints are appended to it,
+     *                or null to start a new checkpoint file.
+     */
+    private void startCheckpoints(Checkpoint resumed)
+    {
+        // Checkpoints only hold grid positions, which do not hold the exact positions of off-lattice discs
+        if (checkpointFile == null || offLattice)
+        {
+            return;
+        }
+        try
+        {
+            checkpointWriter = new CheckpointWriter(checkpointFile, attachedParticles, resumed);
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Error - The checkpoint file could not be opened: " + e.getMessage(), e);
+        }
+        nextCheckpointTime.set(System.currentTimeMillis() + checkpointInterval);
+    }
+    
+    /**
+     * Write a checkpoint if one is due. Only the thread which claims the due time records the state, which takes
+     * no longer than reading a few fields since the particles are written on the checkpoint writer's thread.
+     * @param walkerSteps The steps made by the calling thread's walker which have not been added to the total yet.
+     * @param nextParticle The index of the next particle to be moved in deterministic mode, else 0.
+     */
+    private void checkpointIfDue(long walkerSteps, long nextParticle)
+    {
+        CheckpointWriter writer = checkpointWriter;
+        if (writer == null)
+        {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long due = nextCheckpointTime.get();
+        if (now >= due && nextCheckpointTime.compareAndSet(due, now + checkpointInterval))
+        {
+            // With one thread this is called between particles, so the random state is exact
+            writer.write(createCheckpoint(walkerSteps, nextParticle, threadCount == 1 && !deterministic), false);
+        }
+    }
+    
+    /**
+     * Check whether the fractal dimension has converged if the structure has grown enough since the last check, which
+     * stops the generation process once it has. Only the thread which claims the check brings the statistics up to
+     * date, and checks are spaced by a steady growth factor so they cost a constant time per particle overall.
+     */
+    private void checkConvergenceIfDue()
+    {
+        if (dimensionTolerance <= 0)
+        {
+            return;
+        }
+        int size = attachedParticles.size();
+        int due = nextConvergenceCheck.get();
+        if (size >= due && nextConvergenceCheck.compareAndSet(due, Math.max(size + 1, (int) (size * CONVERGENCE_CHECK_GROWTH))))
+        {
+            if (statistics.checkDimensionConverged(dimensionTolerance))
+            {
+                dimensionConverged = true;
+            }
+        }
+    }
+    
+    /**
+     * Write the final checkpoint and close the checkpoint file.
+     * @param completed True if the generation process finished normally, so the random state is between particles.
+     */
+    private void stopCheckpoints(boolean completed)
+    {
+        CheckpointWriter writer = checkpointWriter;
+        if (writer == null)
+        {
+            return;
+        }
+        checkpointWriter = null;
+        
+        // Deterministic mode resumes from the index of the next particle rather than from the random state
+        writer.write(createCheckpoint(0, deterministic ? committedParticles : 0, completed && threadCount == 1 && !deterministic), true);
+        try
+        {
+            writer.close();
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Error - The checkpoint file could not be written: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Start recording attached particles to the event log file if one is set.
+     * @return The event log writer, or null if attached particles are not recorded.
+     */
+    private EventLogWriter startEventLog()
+    {
+        if (eventLogFile == null)
+        {
+            return null;
+        }
+        try
+        {
+            return new EventLogWriter(eventLogFile, attachedParticles, dlaCircleDiameter, EventLogWriter.DEFAULT_INDEX_INTERVAL);
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Error - The event log file could not be created: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Record the remaining attached particles and close the event log.
+     * @param writer The event log writer, or null if attached particles are not recorded.
+     */
+    private void stopEventLog(EventLogWriter writer)
+    {
+        if (writer == null)
+        {
+            return;
+        }
+        try
+        {
+            writer.close();
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Error - The event log file could not be written: " + e.getMessage(), e);
+        }
+    }
     
-    // Set the default user interface settings
-    private Color firstColour = Color.CYAN;
-    private Color secondColour = Color.BLUE;
-    private int maskSize = 4;
-    private double fillPercentage = 100;
-    private boolean drawMaskEnabled = false;
-
-    // The number of particles when DLA the generation is completed
-    private int maxParticles;
-   
     /**
-     * The core DLA logic. 
-     * Particles move randomly within the grid and attempt to attach themselves to the growing structure.
-     * Particles which move too far away from the growing structure to the outside kill zone are eliminated. 
+     * Record the current state of the DLA generation process.
+     * @param walkerSteps The steps made by the calling thread's walker which have not been added to the total yet.
+     * @param nextParticle The index of the next particle to be moved in deterministic mode, else 0.
+     * @param includeRandomState True to record the state of the random source and direction stream.
+     * @return The checkpoint, holding the number of particles which are visible to every thread.
      */
-    @Override
-    public void run()
+    private Checkpoint createCheckpoint(long walkerSteps, long nextParticle, boolean includeRandomState)
     {
-        // Calculate the number of particles in the DLA when the generation process is complete
-        calculateMaxParticles();
+        Checkpoint checkpoint = new Checkpoint();
+        checkpoint.dlaCircleDiameter = dlaCircleDiameter;
+        checkpoint.fillPercentage = fillPercentage;
+        checkpoint.reinjectEscapedParticles = reinjectEscapedParticles;
+        checkpoint.deterministic = deterministic;
+        checkpoint.seed = seed;
+        checkpoint.firstRgb = firstColour.getRGB() & 0xFFFFFF;
+        checkpoint.secondRgb = secondColour.getRGB() & 0xFFFFFF;
+        checkpoint.mask = activeMask;
+        checkpoint.particleCount = attachedParticles.size();
+        checkpoint.steps = movedSteps.get() + walkerSteps;
+        checkpoint.nextParticle = nextParticle;
         
-        // Add the first root particle positioned directly in the center
-        attachParticle(new Square(dlaCircleRadius, dlaCircleRadius));
-
-        // While the current number of attached particles is less than the maximum
-        while (attachedParticles.size() < maxParticles)
+        // Only generators with a known state can be restored exactly
+        if (includeRandomState && random instanceof Xoshiro256StarStar)
         {
-            // Create a new particle positioned randomly within the grid 
-            Square particle = new Square(random.nextInt(dlaCircleDiameter), random.nextInt(dlaCircleDiameter));
-           
-            // The particle is initially detached from the growing structure
-            boolean particleIsDetached = true;
-            
-            // Repeat random movement until the particle is attached to the growing structure
-            while(particleIsDetached)
-            {
-                // Move the particle in a random direction
-                particle.randomMove();
-                
-                // Calculate the particle's distance from the center using pythagoras
-                int xDist = particle.getX() - dlaCircleRadius;
-                int yDist = particle.getY() - dlaCircleRadius;
-                double particleDistanceFromCenter = Math.sqrt(Math.pow(xDist, 2) + Math.pow(yDist, 2));
-                
-                // Kill this particle if it has moved outside the DLA radius
-                if (particleDistanceFromCenter >= dlaCircleRadius)
-                {
-                    // Kill this particle by moving to the outerloop and assigning a new particle
-                    break;
-                }
-                
-                // If this particle's position is not already occupied by an attached particle
-                if (!positionIsAttached(particle.getX(), particle.getY()))
-                {
-                    // For each neighbourhood position in the particle mask
-                    for(Square neighbourPosition: particle.getMask(maskSize))
-                    {
-                        // If there is an attached particle in a neighbourhood position allow this particle to attach
-                        if (positionIsAttached(neighbourPosition.getX(), neighbourPosition.getY()))
-                        {
-                            // Attach this particle to the growing structure
-                            attachParticle(particle);
-
-                            // Set to false now that the particle is attached to the growing structure
-                            particleIsDetached = false;
-
-                            // Break out of this neighbourhood position checking loop
-                            break;
-                        }
-                    }
-                }
-            }
+            checkpoint.randomState = ((Xoshiro256StarStar) random).getState();
+            checkpoint.directionBits = directions.getBits();
+            checkpoint.directionsRemaining = directions.getRemaining();
         }
+        return checkpoint;
     }
     
     /**
-     * Check if this position contains a particle that is attached to the growing DLA structure.
-     * This method avoids out of bounds access to the positionContainsAttachedParticle array.
-     * @param x The x coordinate of the position to check
-     * @param y The y coordinate of the position to check
-     * @return True if position contains an attached particle, else false
+     * Restore the DLA generation process from the last complete checkpoint in a checkpoint file, so that the next
+     * call to run() continues from it. The parameters saved in the checkpoint replace the current ones, and the grids
+     * are rebuilt from the saved particles. The thread count and grid storage are kept.
+     * If the checkpoint holds no random state, the random source is seeded from the clock.
+     * This must not be called while the DLA is being generated.
+     * @param file The checkpoint file.
+     * @throws IOException If the checkpoint file could not be read or holds no complete checkpoints.
      */
-    private boolean positionIsAttached(int x, int y)
+    public void resume(File file) throws IOException
     {
-        // If position is out of bounds return false
-        if(x < 0 || x >= positionContainsAttachedParticle.length || y < 0 || y  >= positionContainsAttachedParticle.length)
+        Checkpoint checkpoint = Checkpoint.read(file);
+        
+        // Restore the parameters, creating new grids of the saved size
+        setDlaCircleDiameter(checkpoint.dlaCircleDiameter);
+        setFillPercentage(checkpoint.fillPercentage);
+        setReinjectEscapedParticles(checkpoint.reinjectEscapedParticles);
+        setDeterministic(checkpoint.deterministic);
+        setFirstColour(new Color(checkpoint.firstRgb));
+        setSecondColour(new Color(checkpoint.secondRgb));
+        setMask(checkpoint.mask);
+        activeMask = checkpoint.mask;
+        
+        // Restore the random source, continuing exactly where it stopped if its state was saved
+        seed = checkpoint.seed;
+        if (checkpoint.randomState != null)
         {
-            return false;
+            setRandomSource(new Xoshiro256StarStar(checkpoint.randomState));
+            directions.setState(checkpoint.directionBits, checkpoint.directionsRemaining);
         }
-        // Else check the position using the positionContainsAttachedParticle array
         else
         {
-            return positionContainsAttachedParticle[x][y];
+            setRandomSource(new Xoshiro256StarStar(System.nanoTime()));
+        }
+        
+        // Attach the saved particles in order with their saved colours, rebuilding the grids and structure radius
+        clusterRadius.set(0);
+        for (int i = 0; i < checkpoint.particleCount; i++)
+        {
+            restoreParticle(checkpoint.particlesX[i], checkpoint.particlesY[i], checkpoint.particlesRgb[i]);
         }
+        movedSteps.set(checkpoint.steps);
+        
+        // Only the counts are needed from here on, so the saved particles can be freed
+        checkpoint.particlesX = null;
+        checkpoint.particlesY = null;
+        checkpoint.particlesRgb = null;
+        resumedCheckpoint = checkpoint;
+        resumedFile = file;
     }
     
     /**
-     * Update the list and array data structures to attach this particle to the growing DLA structure.
-     * Also set the particles display colour by interpolating between the first and second selected colours. 
-     * @param particle The particle to be attached to the growing DLA structure.
+     * Attach a particle saved in a checkpoint, keeping its saved colour.
+     * @param x The x coordinate of the particle.
+     * @param y The y coordinate of the particle.
+     * @param rgb The colour of the particle packed as 0xRRGGBB.
      */
-    private void attachParticle(Square particle)
+    private void restoreParticle(int x, int y, int rgb)
     {
-        // Add particle to the list of attached particles for display purposes
-        attachedParticles.add(particle);
+        occupancyGrid.setOccupied(x, y);
+        attachedParticles.add(x, y, rgb);
+        markStickyHalo(x, y);
         
-        // Set this position as containing an attached particle (true) for quick position checking purposes
-        positionContainsAttachedParticle[particle.getX()][particle.getY()] = true;
-        
-        // Calculate the particle colour based on how many particles are already attached to the growing structure
-        particle.setColour(interpolateBetweenColours(firstColour, secondColour, (double) attachedParticles.size() / maxParticles));
+        // Grow the structure radius in the same way as attaching the particle did
+        long xDist = x - dlaCircleRadius;
+        long yDist = y - dlaCircleRadius;
+        clusterRadius.set(Math.max(clusterRadius.get(), (int) Math.ceil(Math.sqrt(xDist * xDist + yDist * yDist))));
+    }
+    
+    /**
+     * Add a particle replayed from an event log to the attached particles so that it is displayed.
+     * Only the particle store is changed, so this must not be used while the DLA is being generated.
+     * @param x The x coordinate of the particle.
+     * @param y The y coordinate of the particle.
+     * @param rgb The colour of the particle packed as 0xRRGGBB.
+     */
+    void addReplayedParticle(int x, int y, int rgb)
+    {
+        attachedParticles.add(x, y, rgb);
+    }
+    
+    /**
+     * Remove every attached particle after the first few, used to move a replay back to an earlier particle.
+     * This must not be used while the DLA is being generated.
+     * @param size The number of particles to keep.
+     */
+    void truncateAttachedParticles(int size)
+    {
+        // The statistics read the live particles, so they must not be updated while particles are removed
+        synchronized (statistics)
+        {
+            attachedParticles.truncate(size);
+        }
     }
     
     /**
      * Interpolate between two colours according to an interpolation value and return the result.
+     * Package private so that the benchmarks can measure it.
      * @param c1 The first colour which will be returned if the interpolation value is set to 0.
      * @param c2 The second colour which will be returned if the interpolation value is set to 1.
      * @param interpolation The interpolation value between [0-1] used to interpolate between c1 and c2.
-     * @return The resultant colour between c1 and c2.
+     * @return The resultant colour between c1 and c2 packed as 0xRRGGBB.
      */
-    private Color interpolateBetweenColours(Color c1, Color c2, double interpolation)
+    int interpolateBetweenColours(Color c1, Color c2, double interpolation)
     {
         // Interpolate individual RGB components
-        int r = (int)(((1 - interpolation) * firstColour.getRed()   + interpolation * secondColour.getRed()));
-        int g = (int)(((1 - interpolation) * firstColour.getGreen() + interpolation * secondColour.getGreen()));
-        int b = (int)(((1 - interpolation) * firstColour.getBlue()  + interpolation * secondColour.getBlue()));
+        int r = (int)(((1 - interpolation) * c1.getRed()   + interpolation * c2.getRed()));
+        int g = (int)(((1 - interpolation) * c1.getGreen() + interpolation * c2.getGreen()));
+        int b = (int)(((1 - interpolation) * c1.getBlue()  + interpolation * c2.getBlue()));
         
-        //Return colour
-        return new Color(r, g, b);
+        //Return packed colour without creating a colour object
+        return (r << 16) | (g << 8) | b;
     }
     
     /**
@@ -162,7 +1786,36 @@ public class DLALogic implements Runnable
      */
     private void calculateMaxParticles()
     {
-        maxParticles = (int)((fillPercentage / 100) * Math.PI * Math.pow(dlaCircleRadius, 2));
+        // Large circles can hold more particles than the particle store, so the count is limited to its capacity
+        maxParticles = (int) Math.min((fillPercentage / 100) * Math.PI * Math.pow(dlaCircleRadius, 2), ParticleStore.CAPACITY);
+        
+        // The area of the circle is slightly more than the positions inside it, which a full DLA could never reach
+        maxParticles = (int) Math.min(maxParticles, countCirclePositions());
+    }
+    
+    /**
+     * Count the grid positions which particles can attach at, those strictly inside the kill zone of the full DLA circle.
+     * @return The number of grid positions inside the DLA circle.
+     */
+    private long countCirclePositions()
+    {
+        long radiusSquared = (long) dlaCircleRadius * dlaCircleRadius;
+        long positions = 0;
+        for (int y = 0; y < dlaCircleDiameter; y++)
+        {
+            // Count the positions in this row whose squared distance from the center is less than the squared radius
+            long yDist = y - dlaCircleRadius;
+            long xReach = (long) Math.sqrt(radiusSquared - yDist * yDist);
+            while (xReach >= 0 && xReach * xReach + yDist * yDist >= radiusSquared)
+            {
+                xReach--;
+            }
+            if (xReach >= 0)
+            {
+                positions += Math.min(xReach, dlaCircleDiameter - 1 - dlaCircleRadius) + Math.min(xReach, dlaCircleRadius) + 1;
+            }
+        }
+        return positions;
     }
 
     /**
@@ -175,28 +1828,330 @@ public class DLALogic implements Runnable
     }
 
     /**
-     * Access the list of particles which are attached to the growing structure.
-     * @return The list of attached particles.
+     * Set the diameter of the full DLA circle, creating new grids of the matching size.
+     * This must not be called while the DLA is being generated, and any attached particles are removed.
+     * @param dlaCircleDiameter The new DLA circle diameter, at least 8.
+     */
+    public void setDlaCircleDiameter(int dlaCircleDiameter) 
+    {
+        // A circle smaller than this cannot hold the root particle and its mask
+        if (dlaCircleDiameter < 8)
+        {
+            throw new IllegalArgumentException("Error - The DLA circle diameter must be at least 8");
+        }
+        
+        // Initialise the circle dimensions and the matching position checking grid
+        this.dlaCircleDiameter = dlaCircleDiameter;
+        this.dlaCircleRadius = dlaCircleDiameter / 2;
+        createGrids();
+        resetAttachedParticles();
+        
+        // Calculate the number of particles using the current fill percentage
+        calculateMaxParticles();
+    }
+
+    /**
+     * Access where the grids hold their positions.
+     * @return The grid storage, packed by default.
+     */
+    public GridStorage getGridStorage() 
+    {
+        return gridStorage;
+    }
+
+    /**
+     * Set where the grids hold their positions. Sparse grids only allocate storage around the growing structure and
+     * mapped grids are held in files off the heap, so very large DLA circles can be used, but each position check
+     * is slower. Only packed grids can be used with several threads.
+     * This must not be called while the DLA is being generated, and any attached particles are removed.
+     * @param gridStorage The new grid storage.
+     */
+    public void setGridStorage(GridStorage gridStorage) 
+    {
+        if (gridStorage != GridStorage.PACKED && threadCount > 1)
+        {
+            throw new IllegalStateException("Error - Only packed grids can be used with several threads");
+        }
+        this.gridStorage = gridStorage;
+        createGrids();
+        resetAttachedParticles();
+    }
+
+    /**
+     * Access the directory which holds the files of memory mapped grids.
+     * @return The directory, or null for the default temporary file directory.
+     */
+    public File getGridDirectory() 
+    {
+        return gridDirectory;
+    }
+
+    /**
+     * Set the directory which holds the files of memory mapped grids, used the next time the grids are created.
+     * @param gridDirectory The directory, or null for the default temporary file directory.
+     */
+    public void setGridDirectory(File gridDirectory) 
+    {
+        this.gridDirectory = gridDirectory;
+    }
+
+    /**
+     * Seed the random source so that the DLA generation process can be repeated.
+     * @param seed The new seed of the random source.
+     */
+    public void setSeed(long seed) 
+    {
+        this.seed = seed;
+        setRandomSource(new Xoshiro256StarStar(seed));
+    }
+
+    /**
+     * Set the random source used to create and move particles.
+     * @param random The new random source, which must not be shared with any other thread.
+     */
+    public void setRandomSource(RandomSource random) 
+    {
+        this.random = random;
+        this.directions = new DirectionStream(random);
+    }
+
+    /**
+     * Access the number of attached particles when the DLA generation process is completed.
+     * @return The maximum number of attached particles.
+     */
+    public int getMaxParticles() 
+    {
+        return maxParticles;
+    }
+
+    /**
+     * Access the distance from the center to the furthest attached particle.
+     * @return The radius of the growing structure.
+     */
+    public int getClusterRadius() 
+    {
+        return clusterRadius.get();
+    }
+
+    /**
+     * Access whether particles are attached in a fixed order so that the result depends only on the seed.
+     * @return True if deterministic mode is enabled, else false.
+     */
+    public boolean isDeterministic() 
+    {
+        return deterministic;
+    }
+
+    /**
+     * Set whether particles are attached in a fixed order so that the result depends only on the seed.
+     * Each particle then uses its own random stream made from the seed, so the random source is not used.
+     * The mask cannot be changed while a deterministic DLA is being generated.
+     * @param deterministic True to enable deterministic mode, else false.
      */
-    public ArrayList<Square> getAttachedParticles() 
+    public void setDeterministic(boolean deterministic) 
+    {
+        this.deterministic = deterministic;
+    }
+
+    /**
+     * Access whether particles are discs moving in continuous space rather than grid positions.
+     * @return True if off-lattice mode is enabled, else false.
+     */
+    public boolean isOffLattice() 
+    {
+        return offLattice;
+    }
+
+    /**
+     * Set whether particles are discs moving in continuous space rather than grid positions.
+     * Off-lattice DLAs are generated on one thread whatever the thread count, ignore deterministic mode and the mask,
+     * and are not checkpointed. This must not be changed while a DLA is being generated.
+     * @param offLattice True to enable off-lattice mode, else false.
+     */
+    public void setOffLattice(boolean offLattice) 
+    {
+        this.offLattice = offLattice;
+    }
+
+    /**
+     * Access the number of moves and jumps made by particles during the last DLA generation process.
+     * This includes particles which were killed, and in deterministic mode particles which were moved again.
+     * @return The number of steps, which is updated when the generation process finishes.
+     */
+    public long getSteps() 
+    {
+        return movedSteps.get();
+    }
+    
+    /**
+     * Access the statistics of the shape of the structure, which can be read while the DLA is generated.
+     * @return The statistics.
+     */
+    public ClusterStatistics getStatistics() 
+    {
+        return statistics;
+    }
+    
+    /**
+     * Access the largest change in the fractal dimension which counts as converged.
+     * @return The tolerance, or 0 if the generation process always attaches every particle.
+     */
+    public double getDimensionTolerance() 
+    {
+        return dimensionTolerance;
+    }
+    
+    /**
+     * Set the largest change in the box counting dimension, across several checks as the structure grows by 10% each
+     * time, which counts as converged. The generation process stops early once the dimension converges.
+     * @param dimensionTolerance The tolerance, such as 0.01, or 0 to always attach every particle.
+     */
+    public void setDimensionTolerance(double dimensionTolerance) 
+    {
+        this.dimensionTolerance = dimensionTolerance;
+    }
+    
+    /**
+     * Access the metrics of the generation process, which are counted while it runs and can be published over JMX.
+     * @return The metrics.
+     */
+    public DLAMetrics getMetrics() 
+    {
+        return metrics;
+    }
+
+    /**
+     * Access the number of threads which move particles.
+     * @return The thread count, 1 by default.
+     */
+    public int getThreadCount() 
+    {
+        return threadCount;
+    }
+
+    /**
+     * Set the number of threads which move particles. With one thread the DLA grows strictly sequentially.
+     * This must not be called while the DLA is being generated, and any attached particles are removed.
+     * @param threadCount The new thread count, at least 1.
+     */
+    public void setThreadCount(int threadCount) 
+    {
+        if (threadCount < 1)
+        {
+            throw new IllegalArgumentException("Error - The thread count must be at least 1");
+        }
+        if (threadCount > 1 && gridStorage != GridStorage.PACKED)
+        {
+            throw new IllegalStateException("Error - Only packed grids can be used with several threads");
+        }
+        
+        // Switch between the thread safe and single threaded grids if needed
+        boolean concurrencyChanged = (threadCount > 1) != (this.threadCount > 1);
+        this.threadCount = threadCount;
+        if (concurrencyChanged)
+        {
+            createGrids();
+            resetAttachedParticles();
+        }
+    }
+
+    /**
+     * Access the particles which are attached to the growing structure.
+     * @return A read only view of the attached particles, in attachment order.
+     */
+    public ParticleView getAttachedParticles() 
     {
         return attachedParticles;
     }
 
     /**
-     * Create and assign a new empty list to hold the attached particles.
+     * Remove all of the attached particles, reusing the existing particle store.
      */
     public void resetAttachedParticles() 
     {
-        attachedParticles = new ArrayList<Square>();
+        // A resumed checkpoint or stepped generation process no longer matches the attached particles
+        resumedCheckpoint = null;
+        stepWalker = null;
+        
+        // The statistics read the live particles, so they must not be updated while particles are removed
+        synchronized (statistics)
+        {
+            attachedParticles.clear();
+        }
     }
 
     /**
-     * Create and assign a new array of false boolean values, used to quickly check positions for attached particles.
+     * Clear the occupancy grid used to quickly check positions for attached particles, along with the sticky halo
+     * and occupancy pyramid. The existing storage is cleared in place rather than allocating new grids.
      */
     public void resetPositionContainsAttachedParticle() 
     {
-        positionContainsAttachedParticle = new boolean[dlaCircleDiameter][dlaCircleDiameter];
+        occupancyGrid.clear();
+        stickyHalo.clear();
+        occupancyPyramid.clear();
+    }
+
+    /**
+     * Access the file which checkpoints are written to while the DLA is being generated.
+     * @return The checkpoint file, or null if checkpoints are not written.
+     */
+    public File getCheckpointFile() 
+    {
+        return checkpointFile;
+    }
+
+    /**
+     * Set the file which checkpoints are written to while the DLA is being generated, used by the next generation
+     * process. Each checkpoint only adds the particles attached since the previous one, and a final checkpoint is
+     * written when the generation process finishes or is stopped. If the generation process was resumed from the
+     * same file, the new checkpoints are appended to it.
+     * @param checkpointFile The checkpoint file, or null to stop writing checkpoints.
+     */
+    public void setCheckpointFile(File checkpointFile) 
+    {
+        this.checkpointFile = checkpointFile;
+    }
+
+    /**
+     * Access the time between checkpoints.
+     * @return The checkpoint interval in milliseconds, 60 seconds by default.
+     */
+    public long getCheckpointInterval() 
+    {
+        return checkpointInterval;
+    }
+
+    /**
+     * Set the time between checkpoints. A checkpoint which is due while the previous one is still being written is skipped.
+     * @param checkpointInterval The new checkpoint interval in milliseconds, at least 1.
+     */
+    public void setCheckpointInterval(long checkpointInterval) 
+    {
+        if (checkpointInterval < 1)
+        {
+            throw new IllegalArgumentException("Error - The checkpoint interval must be at least 1 millisecond");
+        }
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Access the file which attached particles are recorded to while the DLA is being generated.
+     * @return The event log file, or null if attached particles are not recorded.
+     */
+    public File getEventLogFile() 
+    {
+        return eventLogFile;
+    }
+
+    /**
+     * Set the file which attached particles are recorded to while the DLA is being generated, used by the next
+     * generation process. The particles are recorded in attachment order on a background thread, along with an
+     * index file at the same path with ".idx" added, so the growth can be replayed later.
+     * @param eventLogFile The event log file, or null to stop recording attached particles.
+     */
+    public void setEventLogFile(File eventLogFile) 
+    {
+        this.eventLogFile = eventLogFile;
     }
 
     /**
@@ -237,20 +2192,38 @@ public class DLALogic implements Runnable
 
     /**
      * Access the size of the particle mask.
-     * @return The size of the mask used to attach particles to the growing structure.
+     * @return The number of neighbourhood positions in the mask used to attach particles to the growing structure.
      */
     public int getMaskSize() 
     {
-        return maskSize;
+        return mask.getSize();
     }
 
     /**
-     * Set the size of the particle mask.
-     * @param maskSize The new size of the mask used to attach particles to the growing structure.
+     * Set the particle mask to one of the original masks.
+     * @param maskSize The size of the new mask used to attach particles to the growing structure: 4, 8, 12 or 16.
      */
     public void setMaskSize(int maskSize) 
     {
-        this.maskSize = maskSize;
+        setMask(Mask.fromSize(maskSize));
+    }
+
+    /**
+     * Access the particle mask.
+     * @return The mask used to attach particles to the growing structure.
+     */
+    public Mask getMask() 
+    {
+        return mask;
+    }
+
+    /**
+     * Set the particle mask. If the DLA is being generated the sticky halo is rebuilt before the next particle is created.
+     * @param mask The new mask used to attach particles to the growing structure.
+     */
+    public void setMask(Mask mask) 
+    {
+        this.mask = mask;
     }
 
     /**
@@ -269,6 +2242,10 @@ public class DLALogic implements Runnable
      */
     public void setFillPercentage(double fillPercentage) 
     {
+        if (!(fillPercentage >= 0 && fillPercentage <= 100))
+        {
+            throw new IllegalArgumentException("Error - The fill percentage must be between 0 and 100");
+        }
         this.fillPercentage = fillPercentage;
         calculateMaxParticles();
     }
@@ -290,4 +2267,66 @@ public class DLALogic implements Runnable
     {
         this.drawMaskEnabled = drawMaskEnabled;
     }
+
+    /**
+     * Access the boolean value used to determine whether escaped particles are reinjected or killed.
+     * @return True if escaped particles are reinjected, else false.
+     */
+    public boolean isReinjectEscapedParticles() 
+    {
+        return reinjectEscapedParticles;
+    }
+
+    /**
+     * Set the boolean value used to determine whether escaped particles are reinjected or killed.
+     * Reinjected particles are placed back on the launch circle using the exact first return distribution,
+     * so no random walk is thrown away.
+     * @param reinjectEscapedParticles New boolean value to enable or disable reinjection.
+     */
+    public void setReinjectEscapedParticles(boolean reinjectEscapedParticles) 
+    {
+        this.reinjectEscapedParticles = reinjectEscapedParticles;
+    }
+
+    /**
+     * Walker is the state of a moving particle, kept in one reusable object per thread so that moving it allocates nothing.
+     */
+    private static final class Walker
+    {
+        // The random source and direction stream used to move the particle
+        final RandomSource random;
+        final DirectionStream directions;
+        
+        // The position of the particle
+        int x, y;
+        
+        // The position of the particle in off-lattice mode
+        double discX, discY;
+        
+        // The squared kill zone radius and the reinjection circle radius for the structure radius it was launched with
+        long killRadiusSquared;
+        int reinjectionRadius;
+        
+        // The number of moves and jumps made by every particle this walker has moved
+        long steps;
+        
+        // True if the last walk was stopped part way because a stop was requested, so it was neither attached nor killed
+        boolean abandoned;
+        
+        // The metrics stripe which this walker counts into
+        final DLAMetrics.Stripe stripe;
+        
+        /**
+         * Create a walker which uses a random source.
+         * @param random The random source, which is not shared with any other thread.
+         * @param directions The stream of random directions using the same random source.
+         * @param stripe The metrics stripe to count into, which is not shared with any other walker.
+         */
+        Walker(RandomSource random, DirectionStream directions, DLAMetrics.Stripe stripe)
+        {
+            this.random = random;
+            this.directions = directions;
+            this.stripe = stripe;
+        }
+    }
 }
@@ -0,0 +1,310 @@
+package com.fergusleah.dla;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * DLAMetrics counts what the generation process is doing while it runs, and can be published as a JMX MBean named
+ * com.fergusleah.dla:type=DLAMetrics,name="&lt;name&gt;", where the quoted name is given when it is registered.
+ * Each thread moving particles counts into its own stripe, which only that thread writes, so counting needs no locks
+ * or atomic read-modify-write operations and costs a few ordered writes per particle rather than per step. Reading a
+ * metric adds up the stripes, so the counts are exact once the generation process has finished and at most a
+ * particle behind while it runs.
+ *
+ * Walk lengths are kept in a histogram with eight buckets for each power of two, so the percentile is found to within
+ * one eighth without storing every walk length.
+ * @author Fergus Leah
+ */
+public class DLAMetrics implements DLAMetricsMBean
+{
+    // The number of histogram buckets for each power of two, as a shift
+    private static final int SUB_BUCKET_SHIFT = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_SHIFT;
+
+    // Enough buckets for any positive long walk length
+    private static final int BUCKETS = (64 - SUB_BUCKET_SHIFT) * SUB_BUCKETS;
+
+    // The shortest time the rates are measured over
+    private static final long RATE_INTERVAL_NANOS = 1000000000L;
+
+    // The JMX domain which the metrics are registered in
+    private static final String DOMAIN = "com.fergusleah.dla";
+
+    // The generation process being measured, used to read the structure radius
+    private final DLALogic dlaLogic;
+
+    // The stripes of every thread which has moved particles in the current generation process
+    private final CopyOnWriteArrayList<Stripe> stripes = new CopyOnWriteArrayList<Stripe>();
+
+    // The counts and time when the rates were last measured, and the rates found
+    private long rateTime;
+    private long rateSteps;
+    private long rateAttachments;
+    private double stepsPerSecond;
+    private double attachmentsPerSecond;
+
+    // The name the metrics are registered with, or null if they are not registered
+    private ObjectName objectName;
+
+    /**
+     * Create the metrics of a DLA generation process.
+     * @param dlaLogic The generation process being measured.
+     */
+    DLAMetrics(DLALogic dlaLogic)
+    {
+        this.dlaLogic = dlaLogic;
+        reset();
+    }
+
+    /**
+     * Start counting again from zero, for a new generation process. Stripes created before this are no longer counted.
+     */
+    synchronized void reset()
+    {
+        stripes.clear();
+        rateTime = System.nanoTime();
+        rateSteps = 0;
+        rateAttachments = 0;
+        stepsPerSecond = 0;
+        attachmentsPerSecond = 0;
+    }
+
+    /**
+     * Create a stripe for a thread which moves particles. Each stripe must only be written by one thread at a time.
+     * @return The new stripe.
+     */
+    Stripe createStripe()
+    {
+        Stripe stripe = new Stripe();
+        stripes.add(stripe);
+        return stripe;
+    }
+
+    /**
+     * Publish the metrics on the platform MBean server, so they can be watched with any JMX client.
+     * The object name is com.fergusleah.dla:type=DLAMetrics,name="&lt;name&gt;", with the name quoted as by ObjectName.quote().
+     * @param name The name identifying this generation process, which must be unique within the program.
+     * @throws JMException If the name is not valid or is already registered.
+     */
+    public synchronized void register(String name) throws JMException
+    {
+        unregister();
+        ObjectName newName = new ObjectName(DOMAIN + ":type=DLAMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, newName);
+        objectName = newName;
+    }
+
+    /**
+     * Remove the metrics from the platform MBean server, if they are registered.
+     * @throws JMException If the metrics could not be removed.
+     */
+    public synchronized void unregister() throws JMException
+    {
+        if (objectName != null)
+        {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName oldName = objectName;
+            objectName = null;
+            server.unregisterMBean(oldName);
+        }
+    }
+
+    @Override
+    public long getSteps()
+    {
+        long steps = 0;
+        for (Stripe stripe : stripes)
+        {
+            steps += stripe.steps.get();
+        }
+        return steps;
+    }
+
+    @Override
+    public long getAttachments()
+    {
+        long attachments = 0;
+        for (Stripe stripe : stripes)
+        {
+            attachments += stripe.attachments.get();
+        }
+        return attachments;
+    }
+
+    @Override
+    public long getKilledWalkers()
+    {
+        long killed = 0;
+        for (Stripe stripe : stripes)
+        {
+            killed += stripe.killed.get();
+        }
+        return killed;
+    }
+
+    @Override
+    public double getStepsPerSecond()
+    {
+        measureRates();
+        return stepsPerSecond;
+    }
+
+    @Override
+    public double getAttachmentsPerSecond()
+    {
+        measureRates();
+        return attachmentsPerSecond;
+    }
+
+    @Override
+    public double getMeanWalkLength()
+    {
+        long attachments = 0;
+        long walkSteps = 0;
+        for (Stripe stripe : stripes)
+        {
+            attachments += stripe.attachments.get();
+            walkSteps += stripe.walkSteps.get();
+        }
+        return attachments == 0 ? 0 : (double) walkSteps / attachments;
+    }
+
+    @Override
+    public long getP99WalkLength()
+    {
+        // Add up the histograms of every stripe
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (Stripe stripe : stripes)
+        {
+            for (int i = 0; i < BUCKETS; i++)
+            {
+                long count = stripe.walkLengths.get(i);
+                counts[i] += count;
+                total += count;
+            }
+        }
+
+        // Find the bucket holding the 99th percentile and give the largest walk length within it
+        long rank = (total * 99 + 99) / 100;
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            seen += counts[i];
+            if (seen >= rank && seen > 0)
+            {
+                return getBucketStart(i + 1) - 1;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public int getClusterRadius()
+    {
+        return dlaLogic.getClusterRadius();
+    }
+
+    /**
+     * Measure the rates if at least the rate interval has passed since they were last measured.
+     */
+    private synchronized void measureRates()
+    {
+        long now = System.nanoTime();
+        long elapsed = now - rateTime;
+        if (elapsed >= RATE_INTERVAL_NANOS)
+        {
+            long steps = getSteps();
+            long attachments = getAttachments();
+            stepsPerSecond = (steps - rateSteps) * 1e9 / elapsed;
+            attachmentsPerSecond = (attachments - rateAttachments) * 1e9 / elapsed;
+            rateTime = now;
+            rateSteps = steps;
+            rateAttachments = attachments;
+        }
+    }
+
+    /**
+     * Find the histogram bucket of a walk length.
+     * @param length The walk length, at least 0.
+     * @return The bucket index.
+     */
+    static int getBucket(long length)
+    {
+        // Short lengths have a bucket each, longer lengths share a bucket with those of the same top four bits
+        if (length < SUB_BUCKETS)
+        {
+            return (int) length;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(length);
+        int subBucket = (int) (length >>> (exponent - SUB_BUCKET_SHIFT)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_SHIFT + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Find the shortest walk length in a histogram bucket.
+     * @param bucket The bucket index, which may be one past the last bucket.
+     * @return The shortest walk length in the bucket.
+     */
+    static long getBucketStart(int bucket)
+    {
+        if (bucket < SUB_BUCKETS)
+        {
+            return bucket;
+        }
+        if (bucket >= BUCKETS)
+        {
+            return Long.MAX_VALUE;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_SHIFT - 1;
+        long subBucket = bucket & (SUB_BUCKETS - 1);
+        return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_SHIFT);
+    }
+
+    /**
+     * Stripe holds the counts of one thread. Only that thread writes them, so each count is updated with an ordered
+     * write of its new value rather than an atomic add, and other threads read the counts at any time.
+     */
+    static final class Stripe
+    {
+        private final AtomicLong steps = new AtomicLong();
+        private final AtomicLong attachments = new AtomicLong();
+        private final AtomicLong walkSteps = new AtomicLong();
+        private final AtomicLong killed = new AtomicLong();
+        private final AtomicLongArray walkLengths = new AtomicLongArray(BUCKETS);
+
+        /**
+         * Count the moves and jumps made while moving a particle.
+         * @param count The number of steps.
+         */
+        void addSteps(long count)
+        {
+            steps.lazySet(steps.get() + count);
+        }
+
+        /**
+         * Count an attached particle.
+         * @param walkLength The number of steps the particle took from being launched to attaching.
+         */
+        void addAttachment(long walkLength)
+        {
+            attachments.lazySet(attachments.get() + 1);
+            walkSteps.lazySet(walkSteps.get() + walkLength);
+            int bucket = getBucket(walkLength);
+            walkLengths.lazySet(bucket, walkLengths.get(bucket) + 1);
+        }
+
+        /**
+         * Count a particle killed at the kill zone.
+         */
+        void addKilled()
+        {
+            killed.lazySet(killed.get() + 1);
+        }
+    }
+}
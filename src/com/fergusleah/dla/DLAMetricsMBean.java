@@ -0,0 +1,57 @@
+package com.fergusleah.dla;
+
+/**
+ * DLAMetricsMBean is the management interface of DLAMetrics, listing the metrics which can be read over JMX.
+ * Counts cover the current generation process, and start again from zero when the next one begins.
+ * @author Fergus Leah
+ */
+public interface DLAMetricsMBean
+{
+    /**
+     * Access the number of moves and jumps made by every particle, including particles moved speculatively.
+     * @return The number of steps.
+     */
+    long getSteps();
+
+    /**
+     * Access the number of particles which have been attached, not counting the root or resumed particles.
+     * @return The number of attachments.
+     */
+    long getAttachments();
+
+    /**
+     * Access the number of particles which were killed at the kill zone.
+     * @return The number of killed walkers.
+     */
+    long getKilledWalkers();
+
+    /**
+     * Access the rate of steps since the rates were last read, measured over at least one second.
+     * @return The number of steps per second.
+     */
+    double getStepsPerSecond();
+
+    /**
+     * Access the rate of attachments since the rates were last read, measured over at least one second.
+     * @return The number of attachments per second.
+     */
+    double getAttachmentsPerSecond();
+
+    /**
+     * Access the mean number of steps a particle takes from being launched to attaching.
+     * @return The mean walk length, or 0 if no particles have been attached.
+     */
+    double getMeanWalkLength();
+
+    /**
+     * Access the walk length which 99% of attached particles do not exceed, rounded up to within one eighth.
+     * @return The 99th percentile walk length, or 0 if no particles have been attached.
+     */
+    long getP99WalkLength();
+
+    /**
+     * Access the distance from the center to the furthest attached particle.
+     * @return The structure radius.
+     */
+    int getClusterRadius();
+}
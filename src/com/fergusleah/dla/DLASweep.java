@@ -0,0 +1,373 @@
+package com.fergusleah.dla;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.ImageIO;
+
+/**
+ * DLASweep is a headless command line entry point which generates a DLA for every combination of masks, fill
+ * percentages and seeds, running independent DLAs at once on a fixed pool of threads sized to the machine.
+ * Each pool thread keeps its own DLALogic, so the grids are created once per thread and cleared in place between runs.
+ * One summary row per run is written to a CSV file in the order of the combinations, and each DLA can also be saved.
+ * Usage: DLASweep [--diameter 500] [--masks 4,8,12,16] [--fills 50] [--seeds 1..10] [--reinject true] [--deterministic true] [--workers n] [--output sweep.csv] [--image-directory dir]
+ * @author Fergus Leah
+ */
+public class DLASweep
+{
+    // The columns of the CSV file
+    private static final String CSV_HEADER = "mask,fill,seed,particles,radius,time_ms,steps";
+
+    /**
+     * Generate a DLA for every combination of the command line parameters and write the summary of each run.
+     * @param args The command line options, each given as a name followed by a value.
+     */
+    public static void main(String[] args)
+    {
+        // Make sure no display is required when images are written
+        System.setProperty("java.awt.headless", "true");
+
+        // Set the default options
+        int diameter = DLALogic.DEFAULT_DLA_CIRCLE_DIAMETER;
+        String[] masks = { "4", "8", "12", "16" };
+        double[] fillPercentages = { 50 };
+        long[] seeds = parseSeeds("1..10");
+        boolean reinject = false;
+        boolean deterministic = false;
+        int workers = Runtime.getRuntime().availableProcessors();
+        File output = new File("sweep.csv");
+        File imageDirectory = null;
+
+        try
+        {
+            // Read each option name and value pair
+            for (int i = 0; i < args.length; i += 2)
+            {
+                // Every option requires a value
+                if (i + 1 >= args.length)
+                {
+                    throw new IllegalArgumentException("Error - Missing value for option " + args[i]);
+                }
+
+                String name = args[i];
+                String value = args[i + 1];
+
+                if (name.equals("--diameter"))    { diameter = Integer.parseInt(value); }
+                else if (name.equals("--masks"))  { masks = value.split(","); }
+                else if (name.equals("--fills"))  { fillPercentages = parseFillPercentages(value); }
+                else if (name.equals("--seeds"))  { seeds = parseSeeds(value); }
+                else if (name.equals("--reinject")) { reinject = Boolean.parseBoolean(value); }
+                else if (name.equals("--deterministic")) { deterministic = Boolean.parseBoolean(value); }
+                else if (name.equals("--workers")) { workers = Integer.parseInt(value); }
+                else if (name.equals("--output")) { output = new File(value); }
+                else if (name.equals("--image-directory")) { imageDirectory = new File(value); }
+                else
+                {
+                    throw new IllegalArgumentException("Error - Unknown option " + name);
+                }
+            }
+
+            // Check every mask before any run starts
+            for (int i = 0; i < masks.length; i++)
+            {
+                DLABatch.parseMask(masks[i]);
+            }
+            if (workers < 1)
+            {
+                throw new IllegalArgumentException("Error - There must be at least one worker");
+            }
+        }
+        catch (IllegalArgumentException e)
+        {
+            // Print the problem along with the usage and exit with a failure code
+            System.err.println(e.getMessage());
+            System.err.println("Usage: DLASweep [--diameter 500] [--masks 4,8,12,16] [--fills 50] [--seeds 1..10] [--reinject true] [--deterministic true] [--workers n] [--output sweep.csv] [--image-directory dir]");
+            System.exit(1);
+        }
+
+        if (imageDirectory != null && !imageDirectory.isDirectory() && !imageDirectory.mkdirs())
+        {
+            System.err.println("Error - Could not create the image directory " + imageDirectory);
+            System.exit(1);
+        }
+
+        // Create a run for every combination, in the order the rows are written
+        List<Run> runs = new ArrayList<Run>();
+        for (int m = 0; m < masks.length; m++)
+        {
+            for (int f = 0; f < fillPercentages.length; f++)
+            {
+                for (int s = 0; s < seeds.length; s++)
+                {
+                    runs.add(new Run(diameter, masks[m], fillPercentages[f], seeds[s], reinject, deterministic, imageDirectory));
+                }
+            }
+        }
+
+        // Start every run on the pool, where each thread reuses its own DLA logic
+        long startTime = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(workers, new ThreadFactory()
+        {
+            // The number of threads created so far, used to name each thread
+            private final AtomicInteger createdThreads = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable task)
+            {
+                Thread thread = new Thread(task, "DLA Sweep Worker " + createdThreads.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        List<Future<Run>> results = new ArrayList<Future<Run>>();
+        for (Run run : runs)
+        {
+            results.add(pool.submit(run));
+        }
+
+        // Write each row as soon as its run and every earlier run have finished
+        int failures = 0;
+        PrintWriter csv = null;
+        try
+        {
+            csv = new PrintWriter(new BufferedWriter(new FileWriter(output)));
+            csv.println(CSV_HEADER);
+            for (int i = 0; i < results.size(); i++)
+            {
+                Run run = runs.get(i);
+                try
+                {
+                    results.get(i).get();
+                    csv.println(run.toCsvRow());
+                    csv.flush();
+                    System.out.println("Run " + (i + 1) + "/" + runs.size() + ": " + run);
+                }
+                catch (ExecutionException e)
+                {
+                    // Carry on with the other runs, leaving out the row of the failed run
+                    failures++;
+                    System.err.println("Error in run " + (i + 1) + " (" + run.getDescription() + "): " + e.getCause().getMessage());
+                }
+            }
+            if (csv.checkError())
+            {
+                throw new IOException("Error - Could not write " + output);
+            }
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error writing summary: " + e.getMessage());
+            System.exit(1);
+        }
+        catch (InterruptedException e)
+        {
+            System.err.println("Error - The sweep was interrupted");
+            System.exit(1);
+        }
+        finally
+        {
+            if (csv != null)
+            {
+                csv.close();
+            }
+            pool.shutdownNow();
+        }
+
+        // Print the timing results
+        long elapsedMillis = (System.nanoTime() - startTime) / 1000000;
+        System.out.println("Runs: " + (runs.size() - failures) + " of " + runs.size());
+        System.out.println("Workers: " + workers);
+        System.out.println("Time: " + elapsedMillis + " ms");
+        System.out.println("Output: " + output.getPath());
+        if (failures > 0)
+        {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Read a list of fill percentages from a command line value.
+     * @param value The fill percentages separated by commas, such as 10,50,100.
+     * @return The fill percentages.
+     */
+    private static double[] parseFillPercentages(String value)
+    {
+        String[] items = value.split(",");
+        double[] fillPercentages = new double[items.length];
+        for (int i = 0; i < items.length; i++)
+        {
+            fillPercentages[i] = Double.parseDouble(items[i]);
+        }
+        return fillPercentages;
+    }
+
+    /**
+     * Read a list of seeds from a command line value.
+     * @param value The seeds separated by commas, where each item is a seed or an inclusive range such as 1..10.
+     * @return The seeds.
+     */
+    private static long[] parseSeeds(String value)
+    {
+        List<Long> seeds = new ArrayList<Long>();
+        String[] items = value.split(",");
+        for (int i = 0; i < items.length; i++)
+        {
+            int range = items[i].indexOf("..");
+            if (range < 0)
+            {
+                seeds.add(Long.valueOf(items[i]));
+                continue;
+            }
+            long first = Long.parseLong(items[i].substring(0, range));
+            long last = Long.parseLong(items[i].substring(range + 2));
+            if (last < first)
+            {
+                throw new IllegalArgumentException("Error - The seed range " + items[i] + " is empty");
+            }
+            for (long seed = first; seed <= last; seed++)
+            {
+                seeds.add(seed);
+            }
+        }
+
+        long[] result = new long[seeds.size()];
+        for (int i = 0; i < result.length; i++)
+        {
+            result[i] = seeds.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Run is a single combination of the sweep parameters, which generates its DLA and holds the summary.
+     */
+    private static class Run implements Callable<Run>
+    {
+        // The DLA logic of each pool thread, whose grids are reused by every run on that thread
+        private static final ThreadLocal<DLALogic> THREAD_DLA_LOGIC = new ThreadLocal<DLALogic>();
+
+        // The parameters of the run
+        private final int diameter;
+        private final String mask;
+        private final double fillPercentage;
+        private final long seed;
+        private final boolean reinject;
+        private final boolean deterministic;
+        private final File imageDirectory;
+
+        // The summary, written by the pool thread and read once its future has completed
+        private int particles;
+        private int radius;
+        private long elapsedMillis;
+        private long steps;
+
+        /**
+         * Create a run.
+         * @param diameter The DLA circle diameter.
+         * @param mask The mask as given on the command line.
+         * @param fillPercentage The fill percentage.
+         * @param seed The seed of the random source.
+         * @param reinject Whether escaped particles are reinjected.
+         * @param deterministic Whether particles are attached in deterministic mode.
+         * @param imageDirectory The directory to save the DLA in, or null if it is not saved.
+         */
+        Run(int diameter, String mask, double fillPercentage, long seed, boolean reinject, boolean deterministic, File imageDirectory)
+        {
+            this.diameter = diameter;
+            this.mask = mask;
+            this.fillPercentage = fillPercentage;
+            this.seed = seed;
+            this.reinject = reinject;
+            this.deterministic = deterministic;
+            this.imageDirectory = imageDirectory;
+        }
+
+        /**
+         * Generate the DLA on the calling pool thread, reusing the grids of that thread's DLA logic.
+         * @return This run, holding its summary.
+         * @throws IOException If the image could not be written.
+         */
+        @Override
+        public Run call() throws IOException
+        {
+            // Create the DLA logic the first time this thread is used, otherwise clear its particles and grids in place
+            DLALogic dlaLogic = THREAD_DLA_LOGIC.get();
+            if (dlaLogic == null || dlaLogic.getDlaCircleDiameter() != diameter)
+            {
+                dlaLogic = new DLALogic(diameter);
+                THREAD_DLA_LOGIC.set(dlaLogic);
+            }
+            else
+            {
+                dlaLogic.resetAttachedParticles();
+                dlaLogic.resetPositionContainsAttachedParticle();
+            }
+            dlaLogic.setMask(DLABatch.parseMask(mask));
+            dlaLogic.setFillPercentage(fillPercentage);
+            dlaLogic.setReinjectEscapedParticles(reinject);
+            dlaLogic.setDeterministic(deterministic);
+            dlaLogic.setSeed(seed);
+
+            // Run the DLA generation process on this thread and time it
+            long startTime = System.nanoTime();
+            dlaLogic.run();
+            elapsedMillis = (System.nanoTime() - startTime) / 1000000;
+            particles = dlaLogic.getAttachedParticles().size();
+            radius = dlaLogic.getClusterRadius();
+            steps = dlaLogic.getSteps();
+
+            // Save the DLA as an image, naming it after the parameters
+            if (imageDirectory != null)
+            {
+                String name = String.format(Locale.ENGLISH, "dla-mask%s-fill%s-seed%d.png", mask.replace(':', '-'), formatFillPercentage(), seed);
+                ImageIO.write(DLABatch.createImage(dlaLogic), "png", new File(imageDirectory, name));
+            }
+            return this;
+        }
+
+        /**
+         * Describe the parameters of the run.
+         * @return The description.
+         */
+        String getDescription()
+        {
+            return "mask " + mask + ", fill " + formatFillPercentage() + ", seed " + seed;
+        }
+
+        /**
+         * Create the CSV row of the run summary.
+         * @return The row, without a line ending.
+         */
+        String toCsvRow()
+        {
+            return mask + "," + formatFillPercentage() + "," + seed + "," + particles + "," + radius + "," + elapsedMillis + "," + steps;
+        }
+
+        /**
+         * Format the fill percentage without a trailing .0 for whole percentages.
+         * @return The formatted fill percentage.
+         */
+        private String formatFillPercentage()
+        {
+            return fillPercentage == Math.rint(fillPercentage) ? String.valueOf((long) fillPercentage) : String.valueOf(fillPercentage);
+        }
+
+        @Override
+        public String toString()
+        {
+            return getDescription() + " - " + particles + " particles, radius " + radius + ", " + elapsedMillis + " ms";
+        }
+    }
+}
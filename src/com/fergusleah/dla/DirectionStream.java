@@ -0,0 +1,84 @@
+package com.fergusleah.dla;
+
+/**
+ * DirectionStream hands out random movement directions two bits at a time from 64 bit random values.
+ * Each call to the random source provides 32 moves, instead of one call per move.
+ * @author Fergus Leah
+ */
+public class DirectionStream
+{
+    // The source of the random bits
+    private final RandomSource random;
+
+    // The random bits which have not been used yet
+    private long bits;
+
+    // The number of directions left in the random bits
+    private int remaining;
+
+    /**
+     * Create a direction stream using a random source.
+     * @param random The source of the random bits.
+     */
+    public DirectionStream(RandomSource random)
+    {
+        this.random = random;
+    }
+
+    /**
+     * Discard the random bits which have not been used yet, so the next direction uses a new value from the random source.
+     * This is needed after the random source is reset, so that every direction depends only on its new state.
+     */
+    public void reset()
+    {
+        remaining = 0;
+    }
+
+    /**
+     * Access the random bits which have not been used yet, so that the stream can be saved and restored.
+     * @return The unused random bits.
+     */
+    public long getBits()
+    {
+        return bits;
+    }
+
+    /**
+     * Access the number of directions left in the unused random bits.
+     * @return The number of remaining directions [0, 32].
+     */
+    public int getRemaining()
+    {
+        return remaining;
+    }
+
+    /**
+     * Restore the unused random bits saved from another stream, so that it continues with the same directions.
+     * @param bits The unused random bits.
+     * @param remaining The number of directions left in the unused random bits [0, 32].
+     */
+    public void setState(long bits, int remaining)
+    {
+        this.bits = bits;
+        this.remaining = remaining;
+    }
+
+    /**
+     * Generate a random direction.
+     * @return A uniformly distributed direction in the range [0, 4).
+     */
+    public int nextDirection()
+    {
+        // Refill the random bits once all 32 directions have been used
+        if (remaining == 0)
+        {
+            bits = random.nextLong();
+            remaining = 32;
+        }
+
+        int direction = (int) bits & 3;
+        bits >>>= 2;
+        remaining--;
+        return direction;
+    }
+}
@@ -1,6 +1,5 @@
 package com.fergusleah.dla;
 
-import java.awt.Color;
 import javax.media.opengl.*;
 import javax.media.opengl.glu.GLU;
 
@@ -14,9 +13,35 @@ public class Display implements GLEventListener
     private GLU glu;
     private GL gl;
     
+    // The colour of the mask squares packed as 0xRRGGBB
+    private static final int MASK_RGB = 0xFFFFFF;
+    
     // Used to refer to the DLALogic instance
     private final DLALogic dlaLogic;
     
+    // Holds the attached particles in vertex buffer objects, or null if they are not supported
+    private ParticleVertexBuffer particleBuffer;
+    
+    // Shows the attached particles as an image of the grid, or null if the image has not been created
+    private ClusterTexture clusterTexture;
+    
+    // Holds the positions within the mask of every attached particle, and the texture showing them,
+    // or null if mask drawing has not been enabled for the current DLA circle diameter
+    private MaskOverlay maskOverlay;
+    private ClusterTexture maskTexture;
+    
+    // The largest DLA circle diameter which is shown as an image without scaling it down
+    private int maxImageSize;
+    
+    // The current display size in pixels
+    private int displayWidth = 1, displayHeight = 1;
+    
+    // The DLA circle diameter which the camera was last set up for
+    private int projectedDiameter;
+    
+    // The camera size as a multiple of the DLA circle diameter, leaving a 5% gap on each side
+    private static final double CAMERA_SCALE = 1.1;
+    
     /**
      * Initialises the DLALogic variable which provides the DLA that will be displayed.
      * @param dlaLogic Contains the DLA structure to be displayed.
@@ -28,7 +53,7 @@ public class Display implements GLEventListener
     
     
     /**
-     * Initialise the GLU graphics library variable.
+     * Initialise the GLU graphics library variable and the vertex buffer objects holding the particles.
      * @param drawable The graphics library drawing object.
      */
     @Override
@@ -36,6 +61,19 @@ public class Display implements GLEventListener
     {
         // Initialise with a new instance of the graphics library GLU class
         glu = new GLU();
+        
+        // Keep the particles in vertex buffer objects if they are supported, otherwise draw each particle every frame
+        gl = drawable.getGL();
+        clusterTexture = null;
+        maskOverlay = null;
+        maskTexture = null;
+        maxImageSize = ClusterTexture.getMaxImageSize(gl);
+        particleBuffer = null;
+        if (ParticleVertexBuffer.isSupported(gl))
+        {
+            particleBuffer = new ParticleVertexBuffer();
+            particleBuffer.init(gl);
+        }
     }
     
     /**
@@ -51,51 +89,122 @@ public class Display implements GLEventListener
         // Clear the canvas
         gl.glClear(GL.GL_COLOR_BUFFER_BIT);
 
+        // Take a snapshot of the attached particles for this frame, which the simulation threads do not change
+        // as they carry on adding particles, clearing or truncating
+        ParticleView attachedParticles = dlaLogic.getAttachedParticles().snapshot();
+        
+        // Set the camera up again whenever the DLA circle diameter changes, as the grid units it shows have changed
+        int diameter = dlaLogic.getDlaCircleDiameter();
+        if (diameter != projectedDiameter)
+        {
+            setCamera(diameter);
+        }
+        
         // Draw the mask around every attached particle if this option is enabled
         if (dlaLogic.isDrawMaskEnabled())
         {
-            // NOTE: enhanced for loop(:) here will cause errors due to threading
-            // For each attached particle
-            for(int i = 0; i < dlaLogic.getAttachedParticles().size(); i++)
+            // Create a new overlay whenever the DLA circle diameter changes, scaling it down if it does not fit a texture
+            if (maskOverlay == null || maskOverlay.getImage().getDlaCircleDiameter() != diameter)
             {
-                // Get the attached particle
-                Square particle = dlaLogic.getAttachedParticles().get(i);
-
-                //Draw each of the squares in this attached particle's neigbourhood mask
-                for(Square neighbourhoodMaskSquare : particle.getMask(dlaLogic.getMaskSize()))
-                {
-                    // Display this neighbourhood mask position in white
-                    drawSquare(neighbourhoodMaskSquare);
-                }
+                disposeMaskTexture();
+                maskOverlay = new MaskOverlay(diameter, maxImageSize, MASK_RGB);
+                maskTexture = new ClusterTexture(gl, maskOverlay.getImage());
             }
+            
+            // Add the mask positions of the particles attached since the last frame, then draw the whole overlay at once
+            maskOverlay.update(attachedParticles, attachedParticles.size(), dlaLogic.getMask());
+            maskTexture.update(gl);
+            maskTexture.draw(gl);
         }  
         
-        // NOTE: enhanced for loop(:) here will cause errors due to threading
-        // Draw each of the coloured particles in the attached particles list 
-        for(int i = 0; i < dlaLogic.getAttachedParticles().size(); i++)
+        // Show DLA circles which fit in a texture as an image, writing in only the particles attached since the last frame
+        if (diameter <= maxImageSize)
+        {
+            // Create a new image whenever the DLA circle diameter changes
+            if (clusterTexture == null || clusterTexture.getImage().getDlaCircleDiameter() != diameter)
+            {
+                disposeClusterTexture();
+                clusterTexture = new ClusterTexture(gl, new ClusterImage(diameter, maxImageSize));
+            }
+            clusterTexture.getImage().update(attachedParticles, attachedParticles.size());
+            clusterTexture.update(gl);
+            clusterTexture.draw(gl);
+            return;
+        }
+        
+        // Larger DLA circles are drawn at full detail as points, freeing the image of any smaller circle
+        disposeClusterTexture();
+        
+        // Upload the particles attached since the last frame and draw every particle with a single call
+        if (particleBuffer != null)
+        {
+            particleBuffer.update(gl, attachedParticles, attachedParticles.size());
+            particleBuffer.draw(gl, getPositionSize());
+            return;
+        }
+        
+        // Draw each of the coloured particles in the snapshot
+        for(int i = 0; i < attachedParticles.size(); i++)
         {
-            Square particle = dlaLogic.getAttachedParticles().get(i);
-            drawSquare(particle);
+            drawSquare(attachedParticles.getX(i), attachedParticles.getY(i), attachedParticles.getRgb(i));
         }
     }
     
+    /**
+     * Delete the texture showing the image of the attached particles, if there is one.
+     */
+    private void disposeClusterTexture()
+    {
+        if (clusterTexture != null)
+        {
+            clusterTexture.dispose(gl);
+            clusterTexture = null;
+        }
+    }
+    
+    /**
+     * Delete the texture showing the mask overlay, if there is one.
+     */
+    private void disposeMaskTexture()
+    {
+        if (maskTexture != null)
+        {
+            maskTexture.dispose(gl);
+            maskTexture = null;
+            maskOverlay = null;
+        }
+    }
+    
+    /**
+     * Find the size of one grid position on screen, used as the size of the points which draw particles.
+     * @return The size of a grid position in pixels, at least 1.
+     */
+    private float getPositionSize()
+    {
+        // The shorter side of the display always shows the scaled DLA circle diameter
+        double pixelsPerPosition = Math.min(displayWidth, displayHeight) / (dlaLogic.getDlaCircleDiameter() * CAMERA_SCALE);
+        return (float) Math.max(1, pixelsPerPosition);
+    }
+    
     /**
      * Draw a particle as a single square.
-     * @param particle The particle which will be displayed as a single square.
+     * @param x The x coordinate of the particle.
+     * @param y The y coordinate of the particle.
+     * @param rgb The colour of the particle packed as 0xRRGGBB.
      */
-    private void drawSquare(Square particle)
+    private void drawSquare(int x, int y, int rgb)
     {
         try
         {
             // Set the colour using the graphic library variable
-            SetColour(particle.getColour());
+            SetColour(rgb);
         
             // Draw the square
             gl.glBegin(GL.GL_POLYGON);
-            gl.glVertex3f(particle.getX() + 0.5f, particle.getY() + 0.5f, 0);
-            gl.glVertex3f(particle.getX() + 0.5f, particle.getY() - 0.5f, 0);
-            gl.glVertex3f(particle.getX() - 0.5f, particle.getY() - 0.5f, 0);
-            gl.glVertex3f(particle.getX()- 0.5f, particle.getY() + 0.5f, 0);
+            gl.glVertex3f(x + 0.5f, y + 0.5f, 0);
+            gl.glVertex3f(x + 0.5f, y - 0.5f, 0);
+            gl.glVertex3f(x - 0.5f, y - 0.5f, 0);
+            gl.glVertex3f(x - 0.5f, y + 0.5f, 0);
             gl.glEnd();
         }
         catch(Exception e)
@@ -107,12 +216,12 @@ public class Display implements GLEventListener
     
     /**
      * Set the current drawing colour by converting the colour to the OpenGL format.
-     * @param colour The colour to be set as the current drawing colour.
+     * @param rgb The colour packed as 0xRRGGBB to be set as the current drawing colour.
      */
-    private void SetColour(Color colour)
+    private void SetColour(int rgb)
     {
-        // Convert Java Color(0-255) into openGL format(0-1) and set it as current drawing colour
-        gl.glColor3f(colour.getRed() / 255.0f, colour.getGreen() / 255.0f, colour.getBlue() / 255.0f);
+        // Convert the packed colour components (0-255) into openGL format(0-1) and set it as current drawing colour
+        gl.glColor3f(((rgb >> 16) & 0xFF) / 255.0f, ((rgb >> 8) & 0xFF) / 255.0f, (rgb & 0xFF) / 255.0f);
     }
  
     /**
@@ -129,24 +238,41 @@ public class Display implements GLEventListener
         // Reset canvas
         gl = drawable.getGL();
         gl.glClear(GL.GL_COLOR_BUFFER_BIT);
+        
+        // Remember the display size so that particles can be drawn at the size of a grid position
+        displayWidth = Math.max(1, width);
+        displayHeight = Math.max(1, height);
+        setCamera(dlaLogic.getDlaCircleDiameter());
+    }
+    
+    /**
+     * Set the camera so that the whole DLA circle is centered in the display with a gap on each side.
+     * @param diameter The DLA circle diameter to show.
+     */
+    private void setCamera(int diameter)
+    {
+        // Reset the camera
         gl.glMatrixMode(GL.GL_PROJECTION);
         gl.glLoadIdentity();
+        projectedDiameter = diameter;
+        int width = displayWidth;
+        int height = displayHeight;
         
         // Set the camera size to be at least 100% of the DLA circle size plus two 5% gaps on each side
-        double cameraScale = 1.1;
+        double cameraScale = CAMERA_SCALE;
         
         // Determine whether minimum constraint dimension is width or height
         int minimumDimension = Math.min(width, height);
         
         // Scale the camera width and size so that the DLA circle is not hidden or distorted by screen size changes
-        int cameraSceneWidth = (int) (dlaLogic.getDlaCircleDiameter() * cameraScale * ((double) width / minimumDimension));
-        int cameraSceneHeight = (int) (dlaLogic.getDlaCircleDiameter() * cameraScale * ((double) height / minimumDimension));
+        int cameraSceneWidth = (int) (diameter * cameraScale * ((double) width / minimumDimension));
+        int cameraSceneHeight = (int) (diameter * cameraScale * ((double) height / minimumDimension));
         
         // Set the far left, right bottom and top camera positions so that the DLA is centered
-        int minXCameraPosition = -cameraSceneWidth / 2 + dlaLogic.getDlaCircleDiameter() / 2;
-        int maxXCameraPosition =  cameraSceneWidth / 2 + dlaLogic.getDlaCircleDiameter() / 2;
-        int minYCameraPosition = -cameraSceneHeight / 2 + dlaLogic.getDlaCircleDiameter() / 2;
-        int maxYCameraPosition =  cameraSceneHeight / 2 + dlaLogic.getDlaCircleDiameter() / 2;
+        int minXCameraPosition = -cameraSceneWidth / 2 + diameter / 2;
+        int maxXCameraPosition =  cameraSceneWidth / 2 + diameter / 2;
+        int minYCameraPosition = -cameraSceneHeight / 2 + diameter / 2;
+        int maxYCameraPosition =  cameraSceneHeight / 2 + diameter / 2;
         
         // Set the calculated camera positions using the graphics library variable glu
         glu.gluOrtho2D(minXCameraPosition, maxXCameraPosition, minYCameraPosition, maxYCameraPosition);
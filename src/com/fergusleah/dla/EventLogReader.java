@@ -0,0 +1,309 @@
+package com.fergusleah.dla;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * EventLogReader decodes an event log written by EventLogWriter, one attached particle at a time.
+ * The index of the log is used to start decoding at any event, going to the nearest indexed event before it and
+ * decoding forward from there, so any point in the growth can be reached without decoding the whole log.
+ * A log whose last event was only partly written, such as when the program was stopped, ends before that event.
+ * @author Fergus Leah
+ */
+class EventLogReader
+{
+    // The size of the buffer which the log is read into
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // The event log file
+    private final FileChannel logChannel;
+
+    // The buffer holding the part of the log being decoded
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    // Whether the buffer holds the end of the log
+    private boolean endOfLog;
+
+    // The diameter of the DLA circle the log was written from, and its center
+    private final int dlaCircleDiameter;
+    private final int center;
+
+    // The number of events between indexed events, and the byte offset of each indexed event
+    private final int indexInterval;
+    private final long[] indexOffsets;
+
+    // The number of complete events in the log
+    private final int eventCount;
+
+    // The index of the next event to be decoded
+    private int nextEvent;
+
+    // The colours of the current palette
+    private final int[] palette = new int[EventLogWriter.MAX_PALETTE_SIZE];
+    private int paletteSize;
+
+    // The last decoded event
+    private int x, y, rgb;
+
+    /**
+     * Open an event log and its index.
+     * @param file The event log file. The index is read from the same path with ".idx" added.
+     * @throws IOException If either file could not be read or is not an event log file.
+     */
+    EventLogReader(File file) throws IOException
+    {
+        // Read the whole index, which holds one offset per interval of events
+        FileChannel indexChannel = new FileInputStream(EventLogWriter.getIndexFile(file)).getChannel();
+        try
+        {
+            ByteBuffer index = ByteBuffer.allocate((int) indexChannel.size());
+            while (index.hasRemaining() && indexChannel.read(index) >= 0)
+            {
+            }
+            index.flip();
+            if (index.remaining() < EventLogWriter.INDEX_HEADER_LENGTH || index.getInt() != EventLogWriter.INDEX_MAGIC || index.getInt() != EventLogWriter.VERSION)
+            {
+                throw new IOException("Error - " + file + " does not have an event log index");
+            }
+            indexInterval = index.getInt();
+            indexOffsets = new long[index.remaining() / 8];
+            for (int i = 0; i < indexOffsets.length; i++)
+            {
+                indexOffsets[i] = index.getLong();
+            }
+        }
+        finally
+        {
+            indexChannel.close();
+        }
+
+        logChannel = new FileInputStream(file).getChannel();
+        try
+        {
+            // Check the header and read the diameter, starting with an empty buffer
+            buffer.limit(0);
+            fill();
+            if (buffer.remaining() < EventLogWriter.HEADER_LENGTH || buffer.getInt() != EventLogWriter.MAGIC || buffer.getInt() != EventLogWriter.VERSION)
+            {
+                throw new IOException("Error - " + file + " is not an event log file");
+            }
+            dlaCircleDiameter = buffer.getInt();
+            center = dlaCircleDiameter / 2;
+
+            // Count the events by decoding from the last indexed event to the end of the log
+            seek(Integer.MAX_VALUE);
+            eventCount = nextEvent;
+            seek(0);
+        }
+        catch (IOException e)
+        {
+            logChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Access the diameter of the DLA circle which the log was written from.
+     * @return The DLA circle diameter.
+     */
+    int getDlaCircleDiameter()
+    {
+        return dlaCircleDiameter;
+    }
+
+    /**
+     * Access the number of complete events in the log, which is the number of attached particles.
+     * @return The event count.
+     */
+    int getEventCount()
+    {
+        return eventCount;
+    }
+
+    /**
+     * Access the index of the next event to be decoded, which is the number of events before it.
+     * @return The index of the next event.
+     */
+    int getNextEvent()
+    {
+        return nextEvent;
+    }
+
+    /**
+     * Move to an event so that it is the next one decoded, starting from the nearest indexed event before it.
+     * @param event The index of the event, which is limited to the number of events in the log.
+     * @throws IOException If the log could not be read.
+     */
+    void seek(int event) throws IOException
+    {
+        // Only go back to an indexed event if the event is not ahead in the current interval
+        int indexEntry = Math.min(event / indexInterval, indexOffsets.length - 1);
+        if (indexEntry >= 0 && (event < nextEvent || (long) indexEntry * indexInterval > nextEvent))
+        {
+            logChannel.position(indexOffsets[indexEntry]);
+            buffer.clear().flip();
+            endOfLog = false;
+            nextEvent = indexEntry * indexInterval;
+            paletteSize = 0;
+        }
+
+        // Decode forward to the event
+        while (nextEvent < event && next())
+        {
+        }
+    }
+
+    /**
+     * Decode the next event.
+     * @return True if an event was decoded, false at the end of the log.
+     * @throws IOException If the log could not be read.
+     */
+    boolean next() throws IOException
+    {
+        // Make sure a whole event is in the buffer, unless the end of the log has been reached
+        if (buffer.remaining() < EventLogWriter.MAX_EVENT_LENGTH && !endOfLog)
+        {
+            fill();
+        }
+
+        // Each indexed event starts a new palette
+        if (nextEvent % indexInterval == 0)
+        {
+            paletteSize = 0;
+        }
+
+        int start = buffer.position();
+        try
+        {
+            int eventX = center + unzigzag(getVarint());
+            int eventY = center + unzigzag(getVarint());
+            int colourIndex = getVarint();
+            int eventRgb;
+            if (colourIndex == paletteSize)
+            {
+                // A new colour follows, starting the palette again once it is full as the writer does
+                if (buffer.remaining() < 3)
+                {
+                    throw new EOFException();
+                }
+                eventRgb = ((buffer.get() & 0xFF) << 16) | ((buffer.get() & 0xFF) << 8) | (buffer.get() & 0xFF);
+                if (paletteSize == EventLogWriter.MAX_PALETTE_SIZE)
+                {
+                    paletteSize = 0;
+                }
+                palette[paletteSize++] = eventRgb;
+            }
+            else if (colourIndex < paletteSize)
+            {
+                eventRgb = palette[colourIndex];
+            }
+            else
+            {
+                throw new IOException("Error - The event log is corrupt at event " + nextEvent);
+            }
+            x = eventX;
+            y = eventY;
+            rgb = eventRgb;
+        }
+        catch (EOFException e)
+        {
+            // The last event was only partly written, so the log ends before it
+            buffer.position(start);
+            return false;
+        }
+        nextEvent++;
+        return true;
+    }
+
+    /**
+     * Access the x position of the last decoded event.
+     * @return The x coordinate of the particle.
+     */
+    int getX()
+    {
+        return x;
+    }
+
+    /**
+     * Access the y position of the last decoded event.
+     * @return The y coordinate of the particle.
+     */
+    int getY()
+    {
+        return y;
+    }
+
+    /**
+     * Access the colour of the last decoded event.
+     * @return The colour packed as 0xRRGGBB.
+     */
+    int getRgb()
+    {
+        return rgb;
+    }
+
+    /**
+     * Close the event log.
+     * @throws IOException If the file could not be closed.
+     */
+    void close() throws IOException
+    {
+        logChannel.close();
+    }
+
+    /**
+     * Move the unread bytes to the start of the buffer and read more of the log after them.
+     * @throws IOException If the log could not be read.
+     */
+    private void fill() throws IOException
+    {
+        buffer.compact();
+        while (buffer.hasRemaining())
+        {
+            if (logChannel.read(buffer) < 0)
+            {
+                endOfLog = true;
+                break;
+            }
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Read a value written seven bits per byte.
+     * @return The value.
+     * @throws IOException If the value is longer than an int or ends at the end of the log.
+     */
+    private int getVarint() throws IOException
+    {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7)
+        {
+            if (!buffer.hasRemaining())
+            {
+                throw new EOFException();
+            }
+            int b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+            {
+                return value;
+            }
+        }
+        throw new IOException("Error - The event log is corrupt at event " + nextEvent);
+    }
+
+    /**
+     * Reverse the zigzag encoding of a signed value.
+     * @param value The zigzag encoded value.
+     * @return The signed value.
+     */
+    private static int unzigzag(int value)
+    {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,328 @@
+package com.fergusleah.dla;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * EventLogWriter records every particle attached to the growing structure in an append only event log, so that the
+ * growth can be replayed later without generating the DLA again.
+ *
+ * The writer runs on its own background thread and polls the particle store for newly attached particles, so the
+ * threads moving particles never wait for the disk. Events are encoded into a direct buffer and written through a
+ * file channel a batch at a time. Each event is the position of the particle relative to the center of the DLA circle
+ * as two zigzag variable length integers, followed by its colour as an index into a small palette. The order of each
+ * particle is its position in the log. An index is written alongside the log holding the byte offset of every Nth
+ * event, and the palette is started again at each indexed event, so a reader can start decoding at any of them.
+ * @author Fergus Leah
+ */
+class EventLogWriter
+{
+    // Identifies an event log file and its index file, the characters "DLAE" and "DLAI"
+    static final int MAGIC = 0x444C4145;
+    static final int INDEX_MAGIC = 0x444C4149;
+
+    // The version of the file layout
+    static final int VERSION = 1;
+
+    // The number of bytes in the headers of the event log and the index
+    static final int HEADER_LENGTH = 12;
+    static final int INDEX_HEADER_LENGTH = 12;
+
+    // The default number of events between indexed events
+    static final int DEFAULT_INDEX_INTERVAL = 4096;
+
+    // The most colours held in the palette, which is started again once it is full
+    static final int MAX_PALETTE_SIZE = 256;
+
+    // The longest encoded event: two 5 byte integers, a 2 byte colour index and a 3 byte colour
+    static final int MAX_EVENT_LENGTH = 15;
+
+    // The size of the buffers which events and index entries are collected in
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // The time between checks for newly attached particles in milliseconds
+    private static final long POLL_INTERVAL = 50;
+
+    // The event log and index files
+    private final FileChannel logChannel;
+    private final FileChannel indexChannel;
+
+    // The buffers which batch the writes to each file
+    private final ByteBuffer logBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final ByteBuffer indexBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    // The attached particles, polled for new events
+    private final ParticleView particles;
+
+    // The center of the DLA circle, which event positions are relative to
+    private final int center;
+
+    // The number of events between indexed events
+    private final int indexInterval;
+
+    // The background thread which writes the events
+    private final Thread thread;
+
+    // Set to tell the background thread to write the remaining events and finish
+    private volatile boolean stopped;
+
+    // The number of events which have been encoded, and the bytes before the next event in the log
+    private int writtenEvents;
+    private long logPosition = HEADER_LENGTH;
+
+    // The colours of the current palette
+    private final int[] palette = new int[MAX_PALETTE_SIZE];
+    private int paletteSize;
+    private int lastColourIndex;
+
+    // The first error which occurred while writing, reported when the writer is closed
+    private volatile IOException error;
+
+    /**
+     * Create the event log and index files and start writing events on a background thread.
+     * @param file The event log file. The index is written to the same path with ".idx" added.
+     * @param particles The attached particles, whose new particles are written as they are published.
+     * @param dlaCircleDiameter The diameter of the DLA circle.
+     * @param indexInterval The number of events between indexed events, at least 1.
+     * @throws IOException If the files could not be created.
+     */
+    EventLogWriter(File file, ParticleView particles, int dlaCircleDiameter, int indexInterval) throws IOException
+    {
+        this.particles = particles;
+        this.center = dlaCircleDiameter / 2;
+        this.indexInterval = indexInterval;
+
+        // Start both files with their headers, replacing any existing files
+        logChannel = openTruncated(file);
+        indexChannel = openTruncated(getIndexFile(file));
+        logBuffer.putInt(MAGIC).putInt(VERSION).putInt(dlaCircleDiameter);
+        indexBuffer.putInt(INDEX_MAGIC).putInt(VERSION).putInt(indexInterval);
+
+        thread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                writeEvents();
+            }
+        }, "DLA Event Log Writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Find the index file of an event log.
+     * @param file The event log file.
+     * @return The index file, at the same path with ".idx" added.
+     */
+    static File getIndexFile(File file)
+    {
+        return new File(file.getPath() + ".idx");
+    }
+
+    /**
+     * Open a file for writing, removing any existing contents.
+     * @param file The file.
+     * @return The channel of the empty file.
+     * @throws IOException If the file could not be opened.
+     */
+    private static FileChannel openTruncated(File file) throws IOException
+    {
+        FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+        channel.truncate(0);
+        return channel;
+    }
+
+    /**
+     * Poll for newly attached particles until the writer is stopped, then write the remaining events and close the files.
+     */
+    private void writeEvents()
+    {
+        try
+        {
+            while (!stopped)
+            {
+                encodeNewEvents();
+                try
+                {
+                    Thread.sleep(POLL_INTERVAL);
+                }
+                catch (InterruptedException e)
+                {
+                    // Only stopping ends the writer, so that no events are lost
+                }
+            }
+
+            // Particles attached before the writer was stopped are still written
+            encodeNewEvents();
+            flush(logChannel, logBuffer);
+            flush(indexChannel, indexBuffer);
+        }
+        catch (IOException e)
+        {
+            error = e;
+        }
+        finally
+        {
+            try
+            {
+                logChannel.close();
+                indexChannel.close();
+            }
+            catch (IOException e)
+            {
+                if (error == null)
+                {
+                    error = e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Encode every particle published since the last poll, writing the buffers to the files whenever they fill.
+     * @throws IOException If a buffer could not be written.
+     */
+    private void encodeNewEvents() throws IOException
+    {
+        int size = particles.size();
+        for (; writtenEvents < size; writtenEvents++)
+        {
+            if (logBuffer.remaining() < MAX_EVENT_LENGTH)
+            {
+                flush(logChannel, logBuffer);
+            }
+
+            // Index every Nth event and start a new palette there, so decoding can begin at it
+            if (writtenEvents % indexInterval == 0)
+            {
+                if (indexBuffer.remaining() < 8)
+                {
+                    flush(indexChannel, indexBuffer);
+                }
+                indexBuffer.putLong(logPosition);
+                paletteSize = 0;
+                lastColourIndex = 0;
+            }
+
+            int start = logBuffer.position();
+            putVarint(logBuffer, zigzag(particles.getX(writtenEvents) - center));
+            putVarint(logBuffer, zigzag(particles.getY(writtenEvents) - center));
+            putColour(particles.getRgb(writtenEvents));
+            logPosition += logBuffer.position() - start;
+        }
+    }
+
+    /**
+     * Encode a colour as its index in the palette, adding it to the palette if it is new.
+     * Neighbouring particles usually share a colour, so the last colour used is checked first.
+     * @param rgb The colour packed as 0xRRGGBB.
+     */
+    private void putColour(int rgb)
+    {
+        int index = lastColourIndex;
+        if (index >= paletteSize || palette[index] != rgb)
+        {
+            index = 0;
+            while (index < paletteSize && palette[index] != rgb)
+            {
+                index++;
+            }
+        }
+
+        if (index == paletteSize)
+        {
+            // An index one past the palette is followed by the new colour
+            putVarint(logBuffer, paletteSize);
+            logBuffer.put((byte) (rgb >> 16)).put((byte) (rgb >> 8)).put((byte) rgb);
+
+            // Start the palette again once it is full, which the reader does at the same point
+            if (paletteSize == MAX_PALETTE_SIZE)
+            {
+                paletteSize = 0;
+            }
+            index = paletteSize;
+            palette[paletteSize++] = rgb;
+        }
+        else
+        {
+            putVarint(logBuffer, index);
+        }
+        lastColourIndex = index;
+    }
+
+    /**
+     * Map a signed value to an unsigned value so that small negative values also encode to few bytes.
+     * @param value The signed value.
+     * @return The zigzag encoded value.
+     */
+    static int zigzag(int value)
+    {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    /**
+     * Write a value seven bits per byte, with the top bit of each byte set if more bytes follow.
+     * @param buffer The buffer to write to.
+     * @param value The value, treated as unsigned.
+     */
+    private static void putVarint(ByteBuffer buffer, int value)
+    {
+        while ((value & ~0x7F) != 0)
+        {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Write the contents of a buffer to its file and empty the buffer.
+     * @param channel The file.
+     * @param buffer The buffer.
+     * @throws IOException If the buffer could not be written.
+     */
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException
+    {
+        buffer.flip();
+        while (buffer.hasRemaining())
+        {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Write every particle attached so far, then close the files.
+     * @throws IOException If any events could not be written.
+     */
+    void close() throws IOException
+    {
+        stopped = true;
+        boolean interrupted = false;
+        while (thread.isAlive())
+        {
+            try
+            {
+                thread.join();
+            }
+            catch (InterruptedException e)
+            {
+                // Keep waiting so that the log is complete, and remember the interrupt
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        if (error != null)
+        {
+            throw error;
+        }
+    }
+}
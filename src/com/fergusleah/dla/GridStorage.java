@@ -0,0 +1,25 @@
+package com.fergusleah.dla;
+
+/**
+ * GridStorage is the choice of where the occupancy grids hold their positions.
+ * @author Fergus Leah
+ */
+public enum GridStorage
+{
+    /**
+     * Bit packed arrays on the heap covering the whole DLA circle. This is the fastest storage, and the only one
+     * which can be used by several threads.
+     */
+    PACKED,
+
+    /**
+     * Chunks on the heap which are only allocated around the growing structure, for DLA circles too large to cover.
+     */
+    SPARSE,
+
+    /**
+     * Bit packed memory mapped files off the heap covering the whole DLA circle, paged in and out by the operating
+     * system, for grids larger than the heap. Garbage collection is not affected by the size of the grids.
+     */
+    MAPPED
+}
@@ -0,0 +1,51 @@
+package com.fergusleah.dla;
+
+import java.util.Random;
+
+/**
+ * JdkRandomSource adapts a java.util.Random to the RandomSource interface.
+ * It is slower than Xoshiro256StarStar but allows any Random subclass to be plugged in.
+ * @author Fergus Leah
+ */
+public class JdkRandomSource implements RandomSource
+{
+    // The wrapped random variable
+    private final Random random;
+
+    /**
+     * Wrap a random variable.
+     * @param random The random variable which provides the values.
+     */
+    public JdkRandomSource(Random random)
+    {
+        this.random = random;
+    }
+
+    @Override
+    public long nextLong()
+    {
+        return random.nextLong();
+    }
+
+    @Override
+    public double nextDouble()
+    {
+        return random.nextDouble();
+    }
+
+    @Override
+    public int nextInt(int bound)
+    {
+        return random.nextInt(bound);
+    }
+
+    /**
+     * Create a source wrapping a new random variable seeded from this one.
+     * @return The new random source.
+     */
+    @Override
+    public RandomSource split()
+    {
+        return new JdkRandomSource(new Random(random.nextLong()));
+    }
+}
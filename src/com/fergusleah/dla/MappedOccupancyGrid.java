@@ -0,0 +1,241 @@
+package com.fergusleah.dla;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * MappedOccupancyGrid stores the same tiles as PackedOccupancyGrid, with the same guard border, in a memory mapped
+ * file instead of on the heap. The operating system pages the tiles in and out as they are used, so the grid can be
+ * far larger than the heap and its size has no effect on garbage collection.
+ *
+ * A mapping is limited to 2GB, so the file is mapped as a number of 1GB segments. The file is created in a directory
+ * of temporary files and deleted straight away where the operating system allows it, so it only lasts as long as the
+ * mapping. Closing the grid unmaps the segments straight away rather than leaving them to the garbage collector, and
+ * deletes the file if it could not be deleted before. This grid is not thread safe.
+ * @author Fergus Leah
+ */
+public class MappedOccupancyGrid implements OccupancyGrid
+{
+    // Each segment holds 2^27 tiles, which is 1GB
+    private static final int SEGMENT_SHIFT = 27;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+    // The number of positions along each side of the grid, not including the guard border
+    private final int size;
+
+    // The number of tiles along each side of the grid, including the guard border
+    private final int tilesPerRow;
+
+    // The mapped segments of the file, each holding tiles stored row by row
+    private final MappedByteBuffer[] segments;
+
+    // The file holding the tiles, which may already have been deleted
+    private final File file;
+
+    // The lowest and highest tiles which have been marked since the grid was last cleared
+    private long lowestMarkedTile = Long.MAX_VALUE;
+    private long highestMarkedTile = -1;
+
+    /**
+     * Create an empty grid backed by a new file.
+     * @param size The number of positions along each side of the grid.
+     * @param directory The directory to create the file in, or null to use the default temporary file directory.
+     */
+    public MappedOccupancyGrid(int size, File directory)
+    {
+        this.size = size;
+        this.tilesPerRow = PackedOccupancyGrid.getTilesPerRow(size);
+
+        long tileCount = (long) tilesPerRow * tilesPerRow;
+        segments = new MappedByteBuffer[(int) ((tileCount + SEGMENT_MASK) >> SEGMENT_SHIFT)];
+
+        try
+        {
+            // A new file is filled with zeros, so every position starts unoccupied
+            file = File.createTempFile("dla-grid", ".bin", directory);
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+            try
+            {
+                randomAccessFile.setLength(tileCount * 8);
+
+                // Map each segment, the last one holding the remaining tiles
+                FileChannel channel = randomAccessFile.getChannel();
+                for (int i = 0; i < segments.length; i++)
+                {
+                    long firstTile = (long) i << SEGMENT_SHIFT;
+                    long segmentTiles = Math.min(tileCount - firstTile, 1L << SEGMENT_SHIFT);
+                    segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, firstTile * 8, segmentTiles * 8);
+                    segments[i].order(ByteOrder.nativeOrder());
+                }
+            }
+            finally
+            {
+                // The mappings stay valid after the file is closed
+                randomAccessFile.close();
+            }
+
+            // Remove the file now if possible, otherwise when the program exits
+            if (!file.delete())
+            {
+                file.deleteOnExit();
+            }
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Error - The occupancy grid file could not be mapped: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Check whether a position is occupied.
+     * @param x The x coordinate of the position, which may be up to GUARD positions outside of the grid.
+     * @param y The y coordinate of the position, which may be up to GUARD positions outside of the grid.
+     * @return True if the position is occupied, else false.
+     */
+    @Override
+    public boolean isOccupied(int x, int y)
+    {
+        x += PackedOccupancyGrid.GUARD;
+        y += PackedOccupancyGrid.GUARD;
+        long tile = tileIndex(x, y);
+        return (segments[(int) (tile >>> SEGMENT_SHIFT)].getLong((int) (tile & SEGMENT_MASK) << 3) & PackedOccupancyGrid.bit(x, y)) != 0;
+    }
+
+    /**
+     * Mark a position inside of the grid as occupied.
+     * @param x The x coordinate of the position.
+     * @param y The y coordinate of the position.
+     */
+    @Override
+    public void setOccupied(int x, int y)
+    {
+        x += PackedOccupancyGrid.GUARD;
+        y += PackedOccupancyGrid.GUARD;
+        long tile = tileIndex(x, y);
+        MappedByteBuffer segment = segments[(int) (tile >>> SEGMENT_SHIFT)];
+        int offset = (int) (tile & SEGMENT_MASK) << 3;
+        segment.putLong(offset, segment.getLong(offset) | PackedOccupancyGrid.bit(x, y));
+
+        // Remember the range of marked tiles so that clearing only needs to write over that range
+        lowestMarkedTile = Math.min(lowestMarkedTile, tile);
+        highestMarkedTile = Math.max(highestMarkedTile, tile);
+    }
+
+    /**
+     * Mark a position inside of the grid as occupied unless it is already occupied. This is not thread safe.
+     * @param x The x coordinate of the position.
+     * @param y The y coordinate of the position.
+     * @return True if this call marked the position, false if it was already occupied.
+     */
+    @Override
+    public boolean trySetOccupied(int x, int y)
+    {
+        if (isOccupied(x, y))
+        {
+            return false;
+        }
+        setOccupied(x, y);
+        return true;
+    }
+
+    /**
+     * Mark every position as unoccupied, only writing over the range of tiles which have been marked.
+     */
+    @Override
+    public void clear()
+    {
+        for (long tile = lowestMarkedTile; tile <= highestMarkedTile; tile++)
+        {
+            segments[(int) (tile >>> SEGMENT_SHIFT)].putLong((int) (tile & SEGMENT_MASK) << 3, 0);
+        }
+        lowestMarkedTile = Long.MAX_VALUE;
+        highestMarkedTile = -1;
+    }
+
+    /**
+     * Unmap every segment and delete the file. The grid must not be used afterwards.
+     */
+    @Override
+    public void close()
+    {
+        for (int i = 0; i < segments.length; i++)
+        {
+            if (segments[i] != null)
+            {
+                unmap(segments[i]);
+                segments[i] = null;
+            }
+        }
+
+        // Some operating systems only allow the file to be deleted once it is no longer mapped
+        if (file.exists() && !file.delete())
+        {
+            file.deleteOnExit();
+        }
+    }
+
+    /**
+     * Release a mapping without waiting for the garbage collector, which there is no public API for.
+     * If the runtime does not allow it the mapping is released when the buffer is collected.
+     * @param buffer The mapping to release, which must not be used afterwards.
+     */
+    private static void unmap(MappedByteBuffer buffer)
+    {
+        try
+        {
+            // Java 9 and later release a direct buffer through Unsafe.invokeCleaner
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+        }
+        catch (NoSuchMethodException e)
+        {
+            try
+            {
+                // Earlier versions release it through the cleaner of the buffer itself
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+            catch (Exception cleanerFailure)
+            {
+                // Leave the mapping to the garbage collector
+            }
+        }
+        catch (Exception e)
+        {
+            // Leave the mapping to the garbage collector
+        }
+    }
+
+    /**
+     * Access the number of positions along each side of the grid.
+     * @return The grid size, not including the guard border.
+     */
+    @Override
+    public int getSize()
+    {
+        return size;
+    }
+
+    /**
+     * Find the tile holding a position, which may be beyond the range of an int for very large grids.
+     * @param x The x coordinate including the guard offset.
+     * @param y The y coordinate including the guard offset.
+     * @return The index of the tile.
+     */
+    private long tileIndex(int x, int y)
+    {
+        return (long) (y >> PackedOccupancyGrid.TILE_SHIFT) * tilesPerRow + (x >> PackedOccupancyGrid.TILE_SHIFT);
+    }
+}
@@ -0,0 +1,210 @@
+package com.fergusleah.dla;
+
+/**
+ * Mask is the set of neighbourhood positions around a particle which determine where it can attach.
+ * A moving particle attaches when an attached particle is found at any of its mask positions.
+ * Masks are either one of the original 4, 8, 12 and 16 position masks, or every position within a radius.
+ * @author Fergus Leah
+ */
+public class Mask
+{
+    // The offsets of each neighbourhood position, relative to the center position
+    private final int[] offsetsX;
+    private final int[] offsetsY;
+
+    // The furthest distance (in either x or y) from the center to a neighbourhood position
+    private final int reach;
+
+    // The furthest straight line distance from the center to a neighbourhood position, rounded up
+    private final int distanceReach;
+
+    // The name of the mask used for display purposes
+    private final String name;
+
+    /**
+     * Create a mask from its neighbourhood position offsets.
+     * @param offsetsX The x offset of each neighbourhood position.
+     * @param offsetsY The y offset of each neighbourhood position.
+     * @param name The name of the mask.
+     */
+    private Mask(int[] offsetsX, int[] offsetsY, String name)
+    {
+        this.offsetsX = offsetsX;
+        this.offsetsY = offsetsY;
+        this.name = name;
+
+        // Find the furthest offset in either direction, and the furthest squared straight line distance
+        int furthest = 0;
+        int furthestSquared = 0;
+        for (int i = 0; i < offsetsX.length; i++)
+        {
+            furthest = Math.max(furthest, Math.max(Math.abs(offsetsX[i]), Math.abs(offsetsY[i])));
+            furthestSquared = Math.max(furthestSquared, offsetsX[i] * offsetsX[i] + offsetsY[i] * offsetsY[i]);
+        }
+        this.reach = furthest;
+        this.distanceReach = (int) Math.ceil(Math.sqrt(furthestSquared));
+    }
+
+    /**
+     * Create one of the original masks.
+     * @param maskSize The number of neighbourhood positions: 4, 8, 12 or 16.
+     * @return The mask of the given size.
+     */
+    public static Mask fromSize(int maskSize)
+    {
+        return new Mask(Square.getMaskOffsetsX(maskSize), Square.getMaskOffsetsY(maskSize), Integer.toString(maskSize));
+    }
+
+    /**
+     * Create a mask from offsets which were saved from another mask, such as in a checkpoint file.
+     * @param offsetsX The x offset of each neighbourhood position.
+     * @param offsetsY The y offset of each neighbourhood position.
+     * @param name The name of the mask.
+     * @return The mask holding the offsets.
+     */
+    static Mask fromOffsets(int[] offsetsX, int[] offsetsY, String name)
+    {
+        return new Mask(offsetsX, offsetsY, name);
+    }
+
+    /**
+     * Create a square mask holding every position within a Chebyshev (chessboard) distance of the center.
+     * @param radius The furthest distance in either x or y, at least 1.
+     * @return The Chebyshev mask of the given radius.
+     */
+    public static Mask chebyshev(int radius)
+    {
+        return fromRadius(radius, false);
+    }
+
+    /**
+     * Create a circular mask holding every position within a Euclidean (straight line) distance of the center.
+     * @param radius The furthest straight line distance, at least 1.
+     * @return The Euclidean mask of the given radius.
+     */
+    public static Mask euclidean(int radius)
+    {
+        return fromRadius(radius, true);
+    }
+
+    /**
+     * Create a mask holding every position within a distance of the center, not including the center itself.
+     * @param radius The furthest distance, at least 1.
+     * @param euclidean True to use the Euclidean distance, false to use the Chebyshev distance.
+     * @return The mask of the given radius.
+     */
+    private static Mask fromRadius(int radius, boolean euclidean)
+    {
+        if (radius < 1)
+        {
+            throw new IllegalArgumentException("Error - The mask radius must be at least 1");
+        }
+
+        // Count the positions within the radius so the offset arrays can be created
+        int count = 0;
+        for (int dx = -radius; dx <= radius; dx++)
+        {
+            for (int dy = -radius; dy <= radius; dy++)
+            {
+                if (isWithinRadius(dx, dy, radius, euclidean))
+                {
+                    count++;
+                }
+            }
+        }
+
+        // Fill the offset arrays
+        int[] offsetsX = new int[count];
+        int[] offsetsY = new int[count];
+        int i = 0;
+        for (int dx = -radius; dx <= radius; dx++)
+        {
+            for (int dy = -radius; dy <= radius; dy++)
+            {
+                if (isWithinRadius(dx, dy, radius, euclidean))
+                {
+                    offsetsX[i] = dx;
+                    offsetsY[i] = dy;
+                    i++;
+                }
+            }
+        }
+
+        return new Mask(offsetsX, offsetsY, (euclidean ? "Euclidean " : "Chebyshev ") + radius);
+    }
+
+    /**
+     * Check whether a neighbourhood offset lies within a radius of the center, excluding the center itself.
+     * @param dx The x offset.
+     * @param dy The y offset.
+     * @param radius The furthest distance.
+     * @param euclidean True to use the Euclidean distance, false to use the Chebyshev distance.
+     * @return True if the offset is part of the mask, else false.
+     */
+    private static boolean isWithinRadius(int dx, int dy, int radius, boolean euclidean)
+    {
+        if (dx == 0 && dy == 0)
+        {
+            return false;
+        }
+        return euclidean ? dx * dx + dy * dy <= radius * radius : true;
+    }
+
+    /**
+     * Access the number of neighbourhood positions in the mask.
+     * @return The mask size.
+     */
+    public int getSize()
+    {
+        return offsetsX.length;
+    }
+
+    /**
+     * Access the x offset of a neighbourhood position.
+     * @param index The index of the neighbourhood position [0, size).
+     * @return The x offset relative to the center position.
+     */
+    public int getOffsetX(int index)
+    {
+        return offsetsX[index];
+    }
+
+    /**
+     * Access the y offset of a neighbourhood position.
+     * @param index The index of the neighbourhood position [0, size).
+     * @return The y offset relative to the center position.
+     */
+    public int getOffsetY(int index)
+    {
+        return offsetsY[index];
+    }
+
+    /**
+     * Access the furthest distance (in either x or y) from the center to a neighbourhood position.
+     * @return The reach of the mask.
+     */
+    public int getReach()
+    {
+        return reach;
+    }
+
+    /**
+     * Access the furthest straight line distance from the center to a neighbourhood position, rounded up.
+     * This is how far the sticky halo around an attached particle extends in any direction.
+     * @return The straight line reach of the mask.
+     */
+    public int getDistanceReach()
+    {
+        return distanceReach;
+    }
+
+    /**
+     * Access the name of the mask.
+     * @return The name used for display purposes.
+     */
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+}
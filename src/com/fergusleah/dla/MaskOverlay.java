@@ -0,0 +1,73 @@
+package com.fergusleah.dla;
+
+/**
+ * MaskOverlay is the image of every position within the mask of an attached particle, drawn underneath the structure
+ * when mask drawing is enabled. It is the union of the mask positions, so each position is drawn once no matter how
+ * many particles share it. The mask positions of newly attached particles are added as they arrive, and the overlay
+ * is only drawn again from the start when the mask changes or the particles are cleared.
+ * @author Fergus Leah
+ */
+class MaskOverlay
+{
+    // The image holding the mask positions
+    private final ClusterImage image;
+
+    // The colour of the mask positions packed as 0xRRGGBB
+    private final int rgb;
+
+    // The mask which the overlay has been drawn with
+    private Mask mask;
+
+    // The number of particles whose mask positions have been drawn, and the epoch they were read from
+    private int drawnParticles;
+    private int drawnEpoch;
+
+    /**
+     * Create an empty overlay of a DLA circle.
+     * @param dlaCircleDiameter The diameter of the DLA circle.
+     * @param maxSize The largest number of pixels along each side, where larger DLA circles are scaled down.
+     * @param rgb The colour of the mask positions packed as 0xRRGGBB.
+     */
+    MaskOverlay(int dlaCircleDiameter, int maxSize, int rgb)
+    {
+        this.image = new ClusterImage(dlaCircleDiameter, maxSize);
+        this.rgb = rgb;
+    }
+
+    /**
+     * Add the mask positions of the particles attached since the last update, drawing the overlay again from the start
+     * if the mask changed or particles were removed.
+     * @param particles The attached particles, ideally a snapshot so that no particles are removed during the update.
+     * @param count The number of particles to show, read once by the caller so the whole update uses the same count.
+     * @param mask The mask used to attach particles.
+     */
+    void update(ParticleView particles, int count, Mask mask)
+    {
+        if (mask != this.mask || particles.getEpoch() != drawnEpoch || count < drawnParticles)
+        {
+            image.clear();
+            this.mask = mask;
+            drawnEpoch = particles.getEpoch();
+            drawnParticles = 0;
+        }
+
+        for (; drawnParticles < count; drawnParticles++)
+        {
+            int x = particles.getX(drawnParticles);
+            int y = particles.getY(drawnParticles);
+            for (int i = 0; i < mask.getSize(); i++)
+            {
+                image.drawPosition(x + mask.getOffsetX(i), y + mask.getOffsetY(i), rgb);
+            }
+        }
+    }
+
+    /**
+     * Access the image holding the mask positions.
+     * @return The overlay image.
+     */
+    ClusterImage getImage()
+    {
+        return image;
+    }
+}
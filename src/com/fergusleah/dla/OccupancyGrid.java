@@ -0,0 +1,49 @@
+package com.fergusleah.dla;
+
+/**
+ * OccupancyGrid is used to quickly determine whether a grid position contains an attached particle.
+ * Positions are given as [x, y] coordinates in the range [0, size).
+ * @author Fergus Leah
+ */
+public interface OccupancyGrid
+{
+    /**
+     * Check whether a position is occupied.
+     * @param x The x coordinate of the position to check.
+     * @param y The y coordinate of the position to check.
+     * @return True if the position is occupied, else false.
+     */
+    boolean isOccupied(int x, int y);
+
+    /**
+     * Mark a position as occupied.
+     * @param x The x coordinate of the position.
+     * @param y The y coordinate of the position.
+     */
+    void setOccupied(int x, int y);
+
+    /**
+     * Mark a position as occupied unless it is already occupied.
+     * Thread safe implementations claim the position atomically, so only one caller can succeed.
+     * @param x The x coordinate of the position.
+     * @param y The y coordinate of the position.
+     * @return True if this call marked the position, false if it was already occupied.
+     */
+    boolean trySetOccupied(int x, int y);
+
+    /**
+     * Mark every position as unoccupied, reusing the existing storage.
+     */
+    void clear();
+
+    /**
+     * Release any storage held outside of the heap. The grid must not be used afterwards.
+     */
+    void close();
+
+    /**
+     * Access the number of positions along each side of the grid.
+     * @return The grid size.
+     */
+    int getSize();
+}
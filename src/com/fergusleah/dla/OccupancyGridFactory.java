@@ -0,0 +1,58 @@
+package com.fergusleah.dla;
+
+import java.io.File;
+
+/**
+ * OccupancyGridFactory creates the occupancy grids used by the DLA logic and the occupancy pyramid.
+ * Small grids, such as the coarse levels of the pyramid, are always bit packed on the heap whatever storage is chosen.
+ * @author Fergus Leah
+ */
+public class OccupancyGridFactory
+{
+    // Grids with no more positions than this along each side are always bit packed on the heap
+    private static final int SMALL_GRID_SIZE = 512;
+
+    // Where the grids hold their positions
+    private final GridStorage storage;
+
+    // Whether several threads will mark positions at the same time
+    private final boolean concurrent;
+
+    // The directory which holds the files of memory mapped grids
+    private final File directory;
+
+    /**
+     * Create a factory for grids using the chosen storage.
+     * @param storage Where the grids hold their positions.
+     * @param concurrent True if several threads will mark positions at the same time, which needs packed storage.
+     * @param directory The directory which holds the files of memory mapped grids.
+     */
+    public OccupancyGridFactory(GridStorage storage, boolean concurrent, File directory)
+    {
+        if (concurrent && storage != GridStorage.PACKED)
+        {
+            throw new IllegalArgumentException("Error - Only packed grids can be used by several threads");
+        }
+        this.storage = storage;
+        this.concurrent = concurrent;
+        this.directory = directory;
+    }
+
+    /**
+     * Create an empty grid.
+     * @param size The number of positions along each side of the grid.
+     * @return The grid.
+     */
+    public OccupancyGrid create(int size)
+    {
+        if (storage == GridStorage.SPARSE && size > SMALL_GRID_SIZE)
+        {
+            return new SparseOccupancyGrid(size);
+        }
+        if (storage == GridStorage.MAPPED && size > SMALL_GRID_SIZE)
+        {
+            return new MappedOccupancyGrid(size, directory);
+        }
+        return concurrent ? new ConcurrentOccupancyGrid(size) : new PackedOccupancyGrid(size);
+    }
+}
@@ -0,0 +1,128 @@
+package com.fergusleah.dla;
+
+/**
+ * OccupancyPyramid is a coarse to fine summary of the positions which contain attached particles.
+ * Level k divides the grid into blocks of 2^k by 2^k positions and marks every block containing an attached particle.
+ * This allows a moving particle to quickly find how far it is from the growing structure, so it can jump through empty space.
+ * @author Fergus Leah
+ */
+public class OccupancyPyramid
+{
+    // The occupied blocks for each level, where level k holds blocks of size 2^k (level 0 is unused)
+    private final OccupancyGrid[] levels;
+
+    /**
+     * Create an empty pyramid covering a square grid.
+     * @param gridSize The number of positions along each side of the grid.
+     * @param gridFactory Creates the grid of blocks for each level.
+     */
+    public OccupancyPyramid(int gridSize, OccupancyGridFactory gridFactory)
+    {
+        // Add levels until a single block covers the whole grid
+        int levelCount = 1;
+        while ((1 << (levelCount - 1)) < gridSize)
+        {
+            levelCount++;
+        }
+
+        levels = new OccupancyGrid[levelCount];
+
+        // Create the blocks for each level, rounding up so the whole grid is covered
+        for (int k = 1; k < levelCount; k++)
+        {
+            int levelSize = (gridSize + (1 << k) - 1) >> k;
+            levels[k] = gridFactory.create(levelSize);
+        }
+    }
+
+    /**
+     * Mark the blocks containing this position as occupied in every level.
+     * When several threads mark positions at once a coarser block may briefly lag behind a finer one,
+     * which only means another thread's mark is not seen yet.
+     * @param x The x coordinate of the attached particle.
+     * @param y The y coordinate of the attached particle.
+     */
+    public void setOccupied(int x, int y)
+    {
+        for (int k = 1; k < levels.length; k++)
+        {
+            // If this block is already occupied then so are all of the coarser blocks containing it
+            if (levels[k].isOccupied(x >> k, y >> k))
+            {
+                return;
+            }
+            levels[k].setOccupied(x >> k, y >> k);
+        }
+    }
+
+    /**
+     * Mark every block in every level as unoccupied, reusing the existing storage.
+     */
+    public void clear()
+    {
+        for (int k = 1; k < levels.length; k++)
+        {
+            levels[k].clear();
+        }
+    }
+
+    /**
+     * Release the storage of every level held outside of the heap. The pyramid must not be used afterwards.
+     */
+    public void close()
+    {
+        for (int k = 1; k < levels.length; k++)
+        {
+            levels[k].close();
+        }
+    }
+
+    /**
+     * Find a distance from this position to the growing structure by searching upwards from a minimum level.
+     * A level is empty around the position when its block and the eight surrounding blocks are unoccupied,
+     * which guarantees that every position within 2^k positions (in both x and y) is also unoccupied.
+     * @param x The x coordinate of the position to check.
+     * @param y The y coordinate of the position to check.
+     * @param minimumLevel The first level to check.
+     * @return The block size 2^k of the coarsest empty level, or 0 if the minimum level is not empty.
+     */
+    public int getEmptyDistance(int x, int y, int minimumLevel)
+    {
+        int emptyDistance = 0;
+
+        // Move up through the levels while the surrounding blocks remain empty
+        for (int k = minimumLevel; k < levels.length; k++)
+        {
+            if (!isEmptyAround(levels[k], x >> k, y >> k))
+            {
+                break;
+            }
+            emptyDistance = 1 << k;
+        }
+
+        return emptyDistance;
+    }
+
+    /**
+     * Check whether a block and its eight surrounding blocks are all unoccupied.
+     * Blocks just outside of the grid fall in the guard border of the level and are always unoccupied.
+     * @param level The level to check.
+     * @param blockX The x coordinate of the center block.
+     * @param blockY The y coordinate of the center block.
+     * @return True if all nine blocks are unoccupied, else false.
+     */
+    private boolean isEmptyAround(OccupancyGrid level, int blockX, int blockY)
+    {
+        for (int bx = blockX - 1; bx <= blockX + 1; bx++)
+        {
+            for (int by = blockY - 1; by <= blockY + 1; by++)
+            {
+                if (level.isOccupied(bx, by))
+                {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,270 @@
+package com.fergusleah.dla;
+
+import java.util.Arrays;
+
+/**
+ * OffLatticeCluster holds the attached particles of an off-lattice DLA, where each particle is a disc of unit diameter
+ * at any position rather than a grid position, so two particles touch when their centers are one unit apart.
+ *
+ * The discs are found through a spatial hash: the plane is divided into square cells twice the disc diameter wide and
+ * each cell's discs are chained through a head index per hash bucket and a next index per disc. Every disc within two
+ * units of a position lies in the 3 by 3 cells around it, so a moving particle only tests the discs in nine buckets,
+ * and the nearest disc is found by searching rings of cells outwards until no further ring can hold a nearer one.
+ * The hash table doubles as the discs are added, so it holds a few discs per bucket at any size. The grid position of
+ * each disc center is also marked in an occupancy pyramid, which finds how far a position is from every disc so that
+ * moving particles can jump through the empty space around the structure.
+ * @author Fergus Leah
+ */
+class OffLatticeCluster
+{
+    // The width of a hash cell, so the discs touching a particle or reached by its next step lie in the nine cells around it
+    private static final double CELL_SIZE = 2;
+
+    // The number of rings of cells around a position's own cell which getNearestDistance() searches
+    private static final int SEARCH_RINGS = 3;
+
+    // The distance within which getNearestDistance() finds every disc, since a disc beyond the searched rings is further
+    static final double SEARCH_DISTANCE = SEARCH_RINGS * CELL_SIZE;
+
+    // The number of discs the arrays and hash table are first created for
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // Large primes which spread the cell coordinates over the hash buckets
+    private static final int X_PRIME = 73856093;
+    private static final int Y_PRIME = 19349663;
+
+    // The centers of the discs in the order they were added
+    private double[] xs = new double[INITIAL_CAPACITY];
+    private double[] ys = new double[INITIAL_CAPACITY];
+
+    // The next disc in the same bucket as each disc, or -1 at the end of the chain
+    private int[] next = new int[INITIAL_CAPACITY];
+
+    // The first disc in each hash bucket, or -1 if the bucket is empty, where the bucket count is a power of two
+    private int[] heads = createHeads(2 * INITIAL_CAPACITY);
+
+    // The number of discs
+    private int count;
+
+    // Marks the grid positions of the disc centers, used to find how far a position is from every disc
+    private final OccupancyPyramid occupancyPyramid;
+
+    /**
+     * Create an empty cluster within a square grid.
+     * @param gridSize The number of positions along each side of the grid, which holds the center of every disc.
+     * @param gridFactory Creates the grids of the occupancy pyramid, which are only used by one thread.
+     */
+    OffLatticeCluster(int gridSize, OccupancyGridFactory gridFactory)
+    {
+        occupancyPyramid = new OccupancyPyramid(gridSize, gridFactory);
+    }
+
+    /**
+     * Add a disc, which must lie within the grid.
+     * @param x The x coordinate of the disc center.
+     * @param y The y coordinate of the disc center.
+     */
+    void add(double x, double y)
+    {
+        // Grow the arrays, and the hash table with them so that its chains stay short
+        if (count == xs.length)
+        {
+            xs = Arrays.copyOf(xs, count * 2);
+            ys = Arrays.copyOf(ys, count * 2);
+            next = Arrays.copyOf(next, count * 2);
+            heads = createHeads(heads.length * 2);
+            for (int i = 0; i < count; i++)
+            {
+                addToBucket(i);
+            }
+        }
+
+        xs[count] = x;
+        ys[count] = y;
+        addToBucket(count);
+        occupancyPyramid.setOccupied((int) x, (int) y);
+        count++;
+    }
+
+    /**
+     * Remove every disc, reusing the existing storage.
+     */
+    void clear()
+    {
+        Arrays.fill(heads, -1);
+        occupancyPyramid.clear();
+        count = 0;
+    }
+
+    /**
+     * Release the storage of the occupancy pyramid held outside of the heap. The discs must not be used afterwards.
+     */
+    void close()
+    {
+        occupancyPyramid.close();
+    }
+
+    /**
+     * Access the number of discs.
+     * @return The disc count.
+     */
+    int size()
+    {
+        return count;
+    }
+
+    /**
+     * Find a distance from a position to the nearest disc center using the occupancy pyramid, as for the grid positions
+     * of a lattice DLA. Every disc center lies in a grid position further than the distance away in x or y, so the
+     * centers are at least the distance minus one from the position.
+     * @param x The x coordinate of the position, which must lie within the grid.
+     * @param y The y coordinate of the position, which must lie within the grid.
+     * @param minimumLevel The first level of the pyramid to check.
+     * @return The empty distance, or 0 if the minimum level is not empty around the position.
+     */
+    int getEmptyDistance(double x, double y, int minimumLevel)
+    {
+        return occupancyPyramid.getEmptyDistance((int) x, (int) y, minimumLevel);
+    }
+
+    /**
+     * Find the distance from a position to the nearest disc center, searching rings of cells outwards from the cell
+     * holding the position. A disc in ring r is at least r - 1 cells away, so the search stops at the first ring which
+     * cannot hold a disc nearer than the nearest found so far.
+     * @param x The x coordinate of the position.
+     * @param y The y coordinate of the position.
+     * @return The distance to the nearest disc center, or the search distance if no disc center is nearer than that.
+     */
+    double getNearestDistance(double x, double y)
+    {
+        double nearestSquared = SEARCH_DISTANCE * SEARCH_DISTANCE;
+        int cellX = getCell(x);
+        int cellY = getCell(y);
+        for (int ring = 0; ring <= SEARCH_RINGS; ring++)
+        {
+            double ringDistance = (ring - 1) * CELL_SIZE;
+            if (ring > 1 && nearestSquared <= ringDistance * ringDistance)
+            {
+                break;
+            }
+            for (int cy = cellY - ring; cy <= cellY + ring; cy++)
+            {
+                // The top and bottom rows of the ring are whole, the rows between only have their two ends in the ring
+                int step = cy == cellY - ring || cy == cellY + ring ? 1 : 2 * ring;
+                for (int cx = cellX - ring; cx <= cellX + ring; cx += step)
+                {
+                    nearestSquared = getNearestSquaredDistance(cx, cy, x, y, nearestSquared);
+                }
+            }
+        }
+        return Math.sqrt(nearestSquared);
+    }
+
+    /**
+     * Find the squared distance from a position to the nearest disc center in the bucket of a cell.
+     * Discs in other cells sharing the bucket are also tested, which is harmless since their distances are still real.
+     * @param cellX The x coordinate of the cell.
+     * @param cellY The y coordinate of the cell.
+     * @param x The x coordinate of the position.
+     * @param y The y coordinate of the position.
+     * @param nearestSquared The squared distance to the nearest disc center found so far.
+     * @return The smaller of the nearest squared distance so far and those of the discs in the bucket.
+     */
+    private double getNearestSquaredDistance(int cellX, int cellY, double x, double y, double nearestSquared)
+    {
+        for (int i = heads[getBucket(cellX, cellY)]; i >= 0; i = next[i])
+        {
+            double dx = xs[i] - x;
+            double dy = ys[i] - y;
+            nearestSquared = Math.min(nearestSquared, dx * dx + dy * dy);
+        }
+        return nearestSquared;
+    }
+
+    /**
+     * Find how far a particle can move in a straight line before it touches a disc, searching the nine cells around it.
+     * The particle must not already overlap a disc, and the move must be no longer than the cell size minus one.
+     * @param x The x coordinate of the particle.
+     * @param y The y coordinate of the particle.
+     * @param dx The x component of the unit direction of the move.
+     * @param dy The y component of the unit direction of the move.
+     * @param length The length of the move.
+     * @return The distance moved when the particle first touches a disc, or infinity if it touches none within the length.
+     */
+    double getContactDistance(double x, double y, double dx, double dy, double length)
+    {
+        double contactDistance = Double.POSITIVE_INFINITY;
+        int cellX = getCell(x);
+        int cellY = getCell(y);
+        for (int cx = cellX - 1; cx <= cellX + 1; cx++)
+        {
+            for (int cy = cellY - 1; cy <= cellY + 1; cy++)
+            {
+                for (int i = heads[getBucket(cx, cy)]; i >= 0; i = next[i])
+                {
+                    // The particle touches the disc at distance t along the move where |offset + t * direction| = 1
+                    double offsetX = x - xs[i];
+                    double offsetY = y - ys[i];
+                    double b = offsetX * dx + offsetY * dy;
+                    double c = offsetX * offsetX + offsetY * offsetY - 1;
+                    double discriminant = b * b - c;
+
+                    // Only a particle moving towards the disc can touch it
+                    if (b < 0 && discriminant >= 0)
+                    {
+                        double t = Math.max(0, -b - Math.sqrt(discriminant));
+                        if (t <= length && t < contactDistance)
+                        {
+                            contactDistance = t;
+                        }
+                    }
+                }
+            }
+        }
+        return contactDistance;
+    }
+
+    /**
+     * Chain a disc into the front of its bucket.
+     * @param i The index of the disc.
+     */
+    private void addToBucket(int i)
+    {
+        int bucket = getBucket(getCell(xs[i]), getCell(ys[i]));
+        next[i] = heads[bucket];
+        heads[bucket] = i;
+    }
+
+    /**
+     * Find the hash bucket of a cell.
+     * @param cellX The x coordinate of the cell.
+     * @param cellY The y coordinate of the cell.
+     * @return The index of the bucket.
+     */
+    private int getBucket(int cellX, int cellY)
+    {
+        return ((cellX * X_PRIME) ^ (cellY * Y_PRIME)) & (heads.length - 1);
+    }
+
+    /**
+     * Find the cell coordinate of a position coordinate.
+     * @param coordinate The x or y coordinate of the position.
+     * @return The x or y coordinate of the cell holding the position.
+     */
+    private static int getCell(double coordinate)
+    {
+        return (int) Math.floor(coordinate / CELL_SIZE);
+    }
+
+    /**
+     * Create an empty hash table.
+     * @param bucketCount The number of buckets, which must be a power of two.
+     * @return The heads of the buckets, all empty.
+     */
+    private static int[] createHeads(int bucketCount)
+    {
+        int[] heads = new int[bucketCount];
+        Arrays.fill(heads, -1);
+        return heads;
+    }
+}
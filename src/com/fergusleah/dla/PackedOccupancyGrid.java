@@ -0,0 +1,147 @@
+package com.fergusleah.dla;
+
+import java.util.Arrays;
+
+/**
+ * PackedOccupancyGrid stores one bit per position, packed into 8x8 tiles where each tile is a single long.
+ * Within a tile the bits are laid out in Morton (Z) order, so a small neighbourhood of positions is held
+ * in one or two tiles. The grid is surrounded by a guard border of one tile which is never occupied, so
+ * positions up to GUARD positions outside of the grid can be checked without any bounds checking.
+ * @author Fergus Leah
+ */
+public class PackedOccupancyGrid implements OccupancyGrid
+{
+    // The number of positions outside of each edge of the grid which can be safely checked
+    public static final int GUARD = 8;
+
+    // Tiles are 8x8 positions, which is 64 bits
+    static final int TILE_SHIFT = 3;
+    static final int TILE_MASK = 7;
+
+    // Spreads the three bits of a coordinate within a tile onto the even bits of the Morton order index
+    private static final int[] MORTON_SPREAD = { 0, 1, 4, 5, 16, 17, 20, 21 };
+
+    // The number of positions along each side of the grid, not including the guard border
+    private final int size;
+
+    // The number of tiles along each side of the grid, including the guard border
+    private final int tilesPerRow;
+
+    // The tiles stored row by row
+    private final long[] tiles;
+
+    /**
+     * Create an empty grid.
+     * @param size The number of positions along each side of the grid.
+     */
+    public PackedOccupancyGrid(int size)
+    {
+        this.size = size;
+        this.tilesPerRow = getTilesPerRow(size);
+        this.tiles = new long[tilesPerRow * tilesPerRow];
+    }
+
+    /**
+     * Check whether a position is occupied.
+     * @param x The x coordinate of the position, which may be up to GUARD positions outside of the grid.
+     * @param y The y coordinate of the position, which may be up to GUARD positions outside of the grid.
+     * @return True if the position is occupied, else false.
+     */
+    @Override
+    public boolean isOccupied(int x, int y)
+    {
+        x += GUARD;
+        y += GUARD;
+        return (tiles[tileIndex(tilesPerRow, x, y)] & bit(x, y)) != 0;
+    }
+
+    /**
+     * Mark a position inside of the grid as occupied.
+     * @param x The x coordinate of the position.
+     * @param y The y coordinate of the position.
+     */
+    @Override
+    public void setOccupied(int x, int y)
+    {
+        x += GUARD;
+        y += GUARD;
+        tiles[tileIndex(tilesPerRow, x, y)] |= bit(x, y);
+    }
+
+    /**
+     * Mark a position inside of the grid as occupied unless it is already occupied. This is not thread safe.
+     * @param x The x coordinate of the position.
+     * @param y The y coordinate of the position.
+     * @return True if this call marked the position, false if it was already occupied.
+     */
+    @Override
+    public boolean trySetOccupied(int x, int y)
+    {
+        if (isOccupied(x, y))
+        {
+            return false;
+        }
+        setOccupied(x, y);
+        return true;
+    }
+
+    /**
+     * Mark every position as unoccupied without allocating new tiles.
+     */
+    @Override
+    public void clear()
+    {
+        Arrays.fill(tiles, 0);
+    }
+
+    /**
+     * Nothing is held outside of the heap, so the storage is left to the garbage collector.
+     */
+    @Override
+    public void close()
+    {
+    }
+
+    /**
+     * Access the number of positions along each side of the grid.
+     * @return The grid size, not including the guard border.
+     */
+    @Override
+    public int getSize()
+    {
+        return size;
+    }
+
+    /**
+     * Find the number of tiles along each side of a grid, including the guard border.
+     * @param size The number of positions along each side of the grid.
+     * @return The number of tiles along each side.
+     */
+    static int getTilesPerRow(int size)
+    {
+        return (size + 2 * GUARD + TILE_MASK) >> TILE_SHIFT;
+    }
+
+    /**
+     * Find the tile holding a position.
+     * @param tilesPerRow The number of tiles along each side of the grid.
+     * @param x The x coordinate including the guard offset.
+     * @param y The y coordinate including the guard offset.
+     * @return The index of the tile.
+     */
+    static int tileIndex(int tilesPerRow, int x, int y)
+    {
+        return (y >> TILE_SHIFT) * tilesPerRow + (x >> TILE_SHIFT);
+    }
+
+    /**
+     * Find the bit of a position within its tile using Morton order.
+     * @param x The x coordinate including the guard offset.
+     * @param y The y coordinate including the guard offset.
+     * @return The tile value with only this position's bit set.
+     */
+    static long bit(int x, int y)
+    {
+        return 1L << (MORTON_SPREAD[x & TILE_MASK] | (MORTON_SPREAD[y & TILE_MASK] << 1));
+    }
+}
@@ -0,0 +1,370 @@
+package com.fergusleah.dla;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * ParticleStore holds the attached particles as parallel primitive arrays rather than as individual objects.
+ * The arrays are split into fixed size chunks so that the store can grow without copying the existing particles.
+ *
+ * The store is append only and lock free, so several threads can add particles at once. Each particle is given
+ * its index when it is reserved, then written and marked as ready. The size only covers the unbroken run of ready
+ * particles from the start of the store, so readers on other threads always see fully written particles.
+ *
+ * Particles are never changed once they are published. Clearing or truncating the store starts a new generation of
+ * chunks with a new epoch instead of rewriting the old ones, so a snapshot taken by a reader such as the display keeps
+ * showing the same particles while the simulation carries on, and the reader can tell from the epoch that particles
+ * were removed without taking any locks. A generation which no snapshot has seen passes its chunk table on to the
+ * next generation rather than allocating a new one, so stores which are reset often without being displayed, such as
+ * those of a parameter sweep, do not allocate a new table on every reset.
+ * @author Fergus Leah
+ */
+public class ParticleStore implements ParticleView
+{
+    // Each chunk holds 4096 particles
+    private static final int CHUNK_SHIFT = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    // The maximum number of chunks, allowing up to 2^28 particles
+    private static final int MAX_CHUNKS = 1 << 16;
+
+    // The maximum number of particles which can be stored
+    public static final int CAPACITY = MAX_CHUNKS << CHUNK_SHIFT;
+
+    // Marks a colour value as written, colours themselves only use the lower 24 bits
+    private static final int READY = 0xFF000000;
+
+    // The states of a generation: not seen by any snapshot, seen by a snapshot, or replaced while unseen
+    private static final int UNSHARED = 0;
+    private static final int SHARED = 1;
+    private static final int RETIRED = 2;
+
+    // The current generation, replaced whenever particles are removed
+    private volatile Generation generation = new Generation(0, new AtomicReferenceArray<Chunk>(MAX_CHUNKS));
+
+    /**
+     * Add a particle to the end of the store. This may be called by several threads at once.
+     * @param x The x coordinate of the particle.
+     * @param y The y coordinate of the particle.
+     * @param rgb The colour of the particle packed as 0xRRGGBB.
+     * @return The index of the particle, which is also its attachment order.
+     */
+    public int add(int x, int y, int rgb)
+    {
+        int index = reserve();
+        set(index, x, y, rgb);
+        return index;
+    }
+
+    /**
+     * Reserve the index of the next particle. Every reserved index must then be written using set().
+     * @return The reserved index.
+     */
+    public int reserve()
+    {
+        int index = generation.reserved.getAndIncrement();
+        if (index >= CAPACITY)
+        {
+            throw new IllegalStateException("Error - The particle store is full");
+        }
+        return index;
+    }
+
+    /**
+     * Write a reserved particle and publish it to readers once every earlier particle has also been written.
+     * @param index The reserved index of the particle.
+     * @param x The x coordinate of the particle.
+     * @param y The y coordinate of the particle.
+     * @param rgb The colour of the particle packed as 0xRRGGBB.
+     */
+    public void set(int index, int x, int y, int rgb)
+    {
+        Generation current = generation;
+        Chunk chunk = current.getOrCreateChunk(index >>> CHUNK_SHIFT);
+        int offset = index & CHUNK_MASK;
+        chunk.x[offset] = x;
+        chunk.y[offset] = y;
+
+        // Writing the colour with the ready mark releases the other values to any thread which sees it
+        chunk.rgb.set(offset, rgb | READY);
+
+        // Move the published size past every particle which is now ready, helping any slower writers
+        int size = current.published.get();
+        while (size < current.reserved.get() && current.isReady(size))
+        {
+            current.published.compareAndSet(size, size + 1);
+            size = current.published.get();
+        }
+    }
+
+    /**
+     * Remove every particle from the store, starting a new generation so that snapshots of the old particles are kept.
+     * This must not be called while other threads are adding particles.
+     */
+    public void clear()
+    {
+        Generation old = generation;
+        generation = new Generation(old.epoch + 1, takeChunkTable(old, 0));
+    }
+
+    /**
+     * Remove every particle after the first few, keeping the earlier particles in place.
+     * The full chunks of kept particles are shared with the new generation, and the last partly kept chunk is copied,
+     * so snapshots of the old particles are not changed when the removed positions are written again.
+     * This must not be called while other threads are adding particles.
+     * @param size The number of particles to keep, at most the current size.
+     */
+    public void truncate(int size)
+    {
+        Generation old = generation;
+        int fullChunks = size >>> CHUNK_SHIFT;
+        int partialSize = size & CHUNK_MASK;
+
+        // Copy the partly kept chunk before the old chunk table is handed on
+        Chunk partial = partialSize > 0 ? old.chunks.get(fullChunks).copy(partialSize) : null;
+        Generation truncated = new Generation(old.epoch + 1, takeChunkTable(old, fullChunks));
+        for (int i = 0; i < fullChunks; i++)
+        {
+            truncated.chunks.set(i, old.chunks.get(i));
+        }
+        if (partial != null)
+        {
+            truncated.chunks.set(fullChunks, partial);
+        }
+        truncated.reserved.set(size);
+        truncated.published.set(size);
+        generation = truncated;
+    }
+
+    /**
+     * Find a chunk table for the generation replacing an old one, reusing the old table if no snapshot has seen it.
+     * @param old The generation being replaced.
+     * @param keptChunks The number of chunks at the start of the table which the caller sets again.
+     * @return The old table with every chunk after the kept ones removed, or a new empty table.
+     */
+    private static AtomicReferenceArray<Chunk> takeChunkTable(Generation old, int keptChunks)
+    {
+        // Once retired no snapshot can see the old generation, so its table can be handed on
+        if (!old.state.compareAndSet(UNSHARED, RETIRED))
+        {
+            return new AtomicReferenceArray<Chunk>(MAX_CHUNKS);
+        }
+
+        // Only the chunks of reserved particles were ever created
+        int usedChunks = (int) Math.min(((long) old.reserved.get() + CHUNK_MASK) >>> CHUNK_SHIFT, MAX_CHUNKS);
+        for (int i = keptChunks; i < usedChunks; i++)
+        {
+            old.chunks.set(i, null);
+        }
+        return old.chunks;
+    }
+
+    /**
+     * Take a fixed view of the particles published so far. Later additions, clears and truncations do not change it.
+     * @return The snapshot.
+     */
+    @Override
+    public ParticleView snapshot()
+    {
+        while (true)
+        {
+            // Mark the generation as seen so that its chunk table is kept for this snapshot
+            Generation current = generation;
+            if (current.state.get() == SHARED || current.state.compareAndSet(UNSHARED, SHARED))
+            {
+                return new Snapshot(current, current.published.get());
+            }
+
+            // The generation is being replaced while unseen, so wait for the generation replacing it
+            Thread.yield();
+        }
+    }
+
+    @Override
+    public int getEpoch()
+    {
+        return generation.epoch;
+    }
+
+    @Override
+    public int size()
+    {
+        return generation.published.get();
+    }
+
+    @Override
+    public int getX(int index)
+    {
+        return generation.chunks.get(index >>> CHUNK_SHIFT).x[index & CHUNK_MASK];
+    }
+
+    @Override
+    public int getY(int index)
+    {
+        return generation.chunks.get(index >>> CHUNK_SHIFT).y[index & CHUNK_MASK];
+    }
+
+    @Override
+    public int getOrder(int index)
+    {
+        // Particles are reserved in the order they are attached, so the index is the attachment order
+        return index;
+    }
+
+    @Override
+    public int getRgb(int index)
+    {
+        return generation.chunks.get(index >>> CHUNK_SHIFT).rgb.get(index & CHUNK_MASK) & ~READY;
+    }
+
+    /**
+     * Generation holds the particles added since the store was last cleared or truncated.
+     */
+    private static class Generation
+    {
+        // Identifies the generation, so readers can tell when particles were removed
+        final int epoch;
+
+        // The chunks, which are created when they are first needed
+        final AtomicReferenceArray<Chunk> chunks;
+
+        // Whether a snapshot has seen this generation, which stops its chunk table from being reused
+        final AtomicInteger state = new AtomicInteger(UNSHARED);
+
+        // The number of particles which have been given an index
+        final AtomicInteger reserved = new AtomicInteger();
+
+        // The number of particles from the start of the store which are ready to be read
+        final AtomicInteger published = new AtomicInteger();
+
+        /**
+         * Create a generation using a chunk table.
+         * @param epoch The epoch identifying the generation.
+         * @param chunks The chunk table, holding no chunks other than those the caller sets.
+         */
+        Generation(int epoch, AtomicReferenceArray<Chunk> chunks)
+        {
+            this.epoch = epoch;
+            this.chunks = chunks;
+        }
+
+        /**
+         * Check whether a reserved particle has been written.
+         * @param index The index of the particle.
+         * @return True if the particle has been written, else false.
+         */
+        boolean isReady(int index)
+        {
+            Chunk chunk = chunks.get(index >>> CHUNK_SHIFT);
+            return chunk != null && (chunk.rgb.get(index & CHUNK_MASK) & READY) != 0;
+        }
+
+        /**
+         * Access a chunk, creating it if no thread has done so yet.
+         * @param chunkIndex The index of the chunk.
+         * @return The chunk.
+         */
+        Chunk getOrCreateChunk(int chunkIndex)
+        {
+            Chunk chunk = chunks.get(chunkIndex);
+            if (chunk == null)
+            {
+                // Only one new chunk is kept if several threads create it at the same time
+                chunks.compareAndSet(chunkIndex, null, new Chunk());
+                chunk = chunks.get(chunkIndex);
+            }
+            return chunk;
+        }
+    }
+
+    /**
+     * Snapshot is a fixed prefix of one generation. Its particles are never written again, so it can be read without locks.
+     */
+    private static class Snapshot implements ParticleView
+    {
+        private final Generation generation;
+        private final int size;
+
+        /**
+         * Create a view of the first particles of a generation.
+         * @param generation The generation.
+         * @param size The number of published particles to show.
+         */
+        Snapshot(Generation generation, int size)
+        {
+            this.generation = generation;
+            this.size = size;
+        }
+
+        @Override
+        public ParticleView snapshot()
+        {
+            return this;
+        }
+
+        @Override
+        public int getEpoch()
+        {
+            return generation.epoch;
+        }
+
+        @Override
+        public int size()
+        {
+            return size;
+        }
+
+        @Override
+        public int getX(int index)
+        {
+            return generation.chunks.get(index >>> CHUNK_SHIFT).x[index & CHUNK_MASK];
+        }
+
+        @Override
+        public int getY(int index)
+        {
+            return generation.chunks.get(index >>> CHUNK_SHIFT).y[index & CHUNK_MASK];
+        }
+
+        @Override
+        public int getOrder(int index)
+        {
+            return index;
+        }
+
+        @Override
+        public int getRgb(int index)
+        {
+            return generation.chunks.get(index >>> CHUNK_SHIFT).rgb.get(index & CHUNK_MASK) & ~READY;
+        }
+    }
+
+    /**
+     * Chunk holds the values of 4096 particles.
+     */
+    private static class Chunk
+    {
+        final int[] x = new int[CHUNK_SIZE];
+        final int[] y = new int[CHUNK_SIZE];
+        final AtomicIntegerArray rgb = new AtomicIntegerArray(CHUNK_SIZE);
+
+        /**
+         * Copy the first particles of the chunk into a new chunk.
+         * @param count The number of particles to copy.
+         * @return The new chunk.
+         */
+        Chunk copy(int count)
+        {
+            Chunk chunk = new Chunk();
+            System.arraycopy(x, 0, chunk.x, 0, count);
+            System.arraycopy(y, 0, chunk.y, 0, count);
+            for (int i = 0; i < count; i++)
+            {
+                chunk.rgb.set(i, rgb.get(i));
+            }
+            return chunk;
+        }
+    }
+}
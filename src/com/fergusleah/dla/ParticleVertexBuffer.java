@@ -0,0 +1,157 @@
+package com.fergusleah.dla;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import javax.media.opengl.GL;
+
+/**
+ * ParticleVertexBuffer keeps the positions and colours of the attached particles in OpenGL vertex buffer objects,
+ * so every particle is drawn with a single call instead of several calls per particle per frame.
+ * The attached particles never change once they are added, so each frame only uploads the particles attached since
+ * the previous frame. Each particle is drawn as a square point whose size covers one grid position.
+ * @author Fergus Leah
+ */
+class ParticleVertexBuffer
+{
+    // The number of particles the buffers hold when they are first created
+    private static final int INITIAL_CAPACITY = 1 << 16;
+
+    // The most particles the buffer objects can hold, since their sizes in bytes are ints
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE / 8;
+
+    // The most particles copied into the staging buffers per upload call
+    private static final int UPLOAD_BATCH = 1 << 16;
+
+    // The bytes used by each particle: two int coordinates, and four colour bytes so each colour is aligned
+    private static final int POSITION_BYTES = 8;
+    private static final int COLOUR_BYTES = 4;
+
+    // The names of the position and colour buffer objects
+    private final int[] bufferNames = new int[2];
+
+    // The number of particles the buffer objects have room for
+    private int capacity;
+
+    // The number of particles which have been uploaded, and the epoch they were read from
+    private int uploadedParticles;
+    private int uploadedEpoch;
+
+    // The staging buffers which new particles are copied into before they are uploaded
+    private final ByteBuffer positions = ByteBuffer.allocateDirect(UPLOAD_BATCH * POSITION_BYTES).order(ByteOrder.nativeOrder());
+    private final ByteBuffer colours = ByteBuffer.allocateDirect(UPLOAD_BATCH * COLOUR_BYTES);
+
+    /**
+     * Check whether vertex buffer objects can be used, which needs OpenGL 1.5.
+     * @param gl The graphics library variable.
+     * @return True if vertex buffer objects are available, else false.
+     */
+    static boolean isSupported(GL gl)
+    {
+        return gl.isFunctionAvailable("glGenBuffers") && gl.isFunctionAvailable("glBufferSubData");
+    }
+
+    /**
+     * Create the buffer objects, which must be done again whenever the OpenGL context is created.
+     * @param gl The graphics library variable.
+     */
+    void init(GL gl)
+    {
+        gl.glGenBuffers(2, bufferNames, 0);
+        allocate(gl, INITIAL_CAPACITY);
+        uploadedParticles = 0;
+    }
+
+    /**
+     * Upload the particles attached since the previous frame, starting again if particles were removed.
+     * @param gl The graphics library variable.
+     * @param particles The attached particles, ideally a snapshot so that no particles are removed during the upload.
+     * @param size The number of particles to draw this frame, read once so the whole frame uses the same count.
+     */
+    void update(GL gl, ParticleView particles, int size)
+    {
+        // Particles beyond the largest buffer objects are not drawn
+        size = Math.min(size, MAX_CAPACITY);
+
+        // A new epoch or fewer particles than were uploaded means particles were removed, so upload them all again
+        if (particles.getEpoch() != uploadedEpoch || size < uploadedParticles)
+        {
+            uploadedParticles = 0;
+            uploadedEpoch = particles.getEpoch();
+        }
+
+        // Grow the buffer objects by doubling, uploading every particle again into the new storage
+        if (size > capacity)
+        {
+            int newCapacity = capacity;
+            while (newCapacity < size)
+            {
+                newCapacity = (int) Math.min(newCapacity * 2L, MAX_CAPACITY);
+            }
+            allocate(gl, newCapacity);
+            uploadedParticles = 0;
+        }
+
+        // Upload the new particles a batch at a time
+        while (uploadedParticles < size)
+        {
+            int count = Math.min(size - uploadedParticles, UPLOAD_BATCH);
+            positions.clear();
+            colours.clear();
+            for (int i = uploadedParticles; i < uploadedParticles + count; i++)
+            {
+                int rgb = particles.getRgb(i);
+                positions.putInt(particles.getX(i)).putInt(particles.getY(i));
+                colours.put((byte) (rgb >> 16)).put((byte) (rgb >> 8)).put((byte) rgb).put((byte) 0xFF);
+            }
+            positions.flip();
+            colours.flip();
+
+            gl.glBindBuffer(GL.GL_ARRAY_BUFFER, bufferNames[0]);
+            gl.glBufferSubData(GL.GL_ARRAY_BUFFER, uploadedParticles * POSITION_BYTES, count * POSITION_BYTES, positions);
+            gl.glBindBuffer(GL.GL_ARRAY_BUFFER, bufferNames[1]);
+            gl.glBufferSubData(GL.GL_ARRAY_BUFFER, uploadedParticles * COLOUR_BYTES, count * COLOUR_BYTES, colours);
+            uploadedParticles += count;
+        }
+        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * Draw every uploaded particle as a square point.
+     * @param gl The graphics library variable.
+     * @param pointSize The size of one grid position in pixels.
+     */
+    void draw(GL gl, float pointSize)
+    {
+        if (uploadedParticles == 0)
+        {
+            return;
+        }
+
+        gl.glPointSize(pointSize);
+        gl.glEnableClientState(GL.GL_VERTEX_ARRAY);
+        gl.glEnableClientState(GL.GL_COLOR_ARRAY);
+        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, bufferNames[0]);
+        gl.glVertexPointer(2, GL.GL_INT, 0, 0);
+        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, bufferNames[1]);
+        gl.glColorPointer(3, GL.GL_UNSIGNED_BYTE, COLOUR_BYTES, 0);
+        gl.glDrawArrays(GL.GL_POINTS, 0, uploadedParticles);
+        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, 0);
+        gl.glDisableClientState(GL.GL_COLOR_ARRAY);
+        gl.glDisableClientState(GL.GL_VERTEX_ARRAY);
+    }
+
+    /**
+     * Create new storage for the buffer objects, discarding their contents.
+     * @param gl The graphics library variable.
+     * @param newCapacity The number of particles the buffer objects have room for.
+     */
+    private void allocate(GL gl, int newCapacity)
+    {
+        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, bufferNames[0]);
+        gl.glBufferData(GL.GL_ARRAY_BUFFER, newCapacity * POSITION_BYTES, null, GL.GL_DYNAMIC_DRAW);
+        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, bufferNames[1]);
+        gl.glBufferData(GL.GL_ARRAY_BUFFER, newCapacity * COLOUR_BYTES, null, GL.GL_DYNAMIC_DRAW);
+        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, 0);
+        capacity = newCapacity;
+    }
+}
@@ -0,0 +1,59 @@
+package com.fergusleah.dla;
+
+/**
+ * ParticleView gives read only access to the particles attached to the growing structure.
+ * Particles are accessed by index in attachment order, so they can be iterated without allocating any objects.
+ * Particles may be added or removed by another thread while they are read, so readers which need a consistent set of
+ * particles, such as the display, should read from a snapshot.
+ * @author Fergus Leah
+ */
+public interface ParticleView
+{
+    /**
+     * Take a fixed view of the particles attached so far, which is not changed as particles are added or removed.
+     * @return The snapshot.
+     */
+    ParticleView snapshot();
+
+    /**
+     * Access the epoch of the particles, which changes whenever particles are removed. A reader which sees the same
+     * epoch and at least as many particles as before can keep everything it already read from the earlier particles.
+     * @return The epoch.
+     */
+    int getEpoch();
+
+    /**
+     * Access the number of attached particles.
+     * @return The number of particles which can be accessed.
+     */
+    int size();
+
+    /**
+     * Access the x position of an attached particle.
+     * @param index The index of the particle [0, size).
+     * @return The x coordinate of the particle.
+     */
+    int getX(int index);
+
+    /**
+     * Access the y position of an attached particle.
+     * @param index The index of the particle [0, size).
+     * @return The y coordinate of the particle.
+     */
+    int getY(int index);
+
+    /**
+     * Access the order in which a particle was attached to the growing structure, starting at 0 for the root particle.
+     * Particles are held in attachment order, so this is the index of the particle.
+     * @param index The index of the particle [0, size).
+     * @return The attachment order of the particle.
+     */
+    int getOrder(int index);
+
+    /**
+     * Access the colour of an attached particle.
+     * @param index The index of the particle [0, size).
+     * @return The colour packed as 0xRRGGBB.
+     */
+    int getRgb(int index);
+}
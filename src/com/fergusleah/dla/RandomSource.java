@@ -0,0 +1,34 @@
+package com.fergusleah.dla;
+
+/**
+ * RandomSource is a seedable source of random numbers used to move and create particles.
+ * Implementations are not thread safe, each thread should use its own source created with split().
+ * @author Fergus Leah
+ */
+public interface RandomSource
+{
+    /**
+     * Generate 64 random bits.
+     * @return A uniformly distributed long value.
+     */
+    long nextLong();
+
+    /**
+     * Generate a random value in the range [0, 1).
+     * @return A uniformly distributed double value.
+     */
+    double nextDouble();
+
+    /**
+     * Generate a random value in the range [0, bound).
+     * @param bound The upper bound (exclusive), which must be positive.
+     * @return A uniformly distributed int value.
+     */
+    int nextInt(int bound);
+
+    /**
+     * Create a new independent source whose values do not overlap with the values of this source.
+     * @return The new random source.
+     */
+    RandomSource split();
+}
@@ -0,0 +1,205 @@
+package com.fergusleah.dla;
+
+import java.io.IOException;
+
+/**
+ * ReplayPlayer replays an event log into the DLA logic's attached particles, so the existing display shows the
+ * recorded growth without generating the DLA again. Particles are added at a chosen speed, and the replay can be
+ * moved to any particle: moving forward decodes up to it, and moving back removes the later particles and moves
+ * the reader back to that event using the log's index.
+ * @author Fergus Leah
+ */
+class ReplayPlayer implements Runnable
+{
+    // The time between batches of replayed particles in milliseconds
+    private static final long FRAME_INTERVAL = 10;
+
+    // The decoder of the event log
+    private final EventLogReader reader;
+
+    // The DLA logic whose attached particles are shown by the display
+    private final DLALogic dlaLogic;
+
+    // The number of particles added per second, where 0 pauses the replay
+    private volatile int speed;
+
+    // The particle which the replay has been asked to move to, or -1 if no move is waiting
+    private volatile int seekTarget = -1;
+
+    // Set to tell the replay to finish
+    private volatile boolean stopped;
+
+    /**
+     * Create a replay of an event log. The DLA logic is given the log's DLA circle diameter and its particles are removed.
+     * @param reader The decoder of the event log.
+     * @param dlaLogic The DLA logic whose attached particles are shown by the display, which must not be generating a DLA.
+     * @param speed The number of particles added per second, where 0 pauses the replay.
+     */
+    ReplayPlayer(EventLogReader reader, DLALogic dlaLogic, int speed)
+    {
+        this.reader = reader;
+        this.dlaLogic = dlaLogic;
+        this.speed = speed;
+        if (dlaLogic.getDlaCircleDiameter() != reader.getDlaCircleDiameter())
+        {
+            dlaLogic.setDlaCircleDiameter(reader.getDlaCircleDiameter());
+        }
+        dlaLogic.resetAttachedParticles();
+    }
+
+    /**
+     * Add particles from the event log at the chosen speed, moving to any requested particle, until stopped.
+     * The event log is closed when the replay finishes.
+     */
+    @Override
+    public void run()
+    {
+        try
+        {
+            long lastTime = System.nanoTime();
+            double owedParticles = 0;
+            while (!stopped)
+            {
+                // Move to a requested particle straight away
+                int target = seekTarget;
+                if (target >= 0)
+                {
+                    seekTarget = -1;
+                    moveTo(target);
+                }
+
+                // Add the particles owed at the current speed since the last batch
+                long time = System.nanoTime();
+                owedParticles += speed * ((time - lastTime) / 1e9);
+                lastTime = time;
+                int count = (int) owedParticles;
+                owedParticles -= count;
+                if (count > 0)
+                {
+                    moveTo(getPosition() + count);
+                }
+
+                // Stop owing particles while paused or once every particle has been added
+                if (speed == 0 || reader.getNextEvent() == reader.getEventCount())
+                {
+                    owedParticles = 0;
+                }
+
+                try
+                {
+                    Thread.sleep(FRAME_INTERVAL);
+                }
+                catch (InterruptedException e)
+                {
+                    stopped = true;
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            // Print out message if an error occurs
+            System.out.println("Error reading event log: " + e.getMessage());
+        }
+        finally
+        {
+            try
+            {
+                reader.close();
+            }
+            catch (IOException e)
+            {
+                System.out.println("Error closing event log: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Show the growing structure as it was when a number of particles were attached.
+     * @param particle The number of particles to show, limited to the number of events in the log.
+     * @throws IOException If the event log could not be read.
+     */
+    private void moveTo(int particle) throws IOException
+    {
+        particle = Math.min(particle, reader.getEventCount());
+        int shown = dlaLogic.getAttachedParticles().size();
+        if (particle < shown)
+        {
+            // The earlier particles are already shown, so only the later ones are removed
+            dlaLogic.truncateAttachedParticles(particle);
+            reader.seek(particle);
+        }
+        else
+        {
+            // Decode from the last shown particle
+            if (reader.getNextEvent() != shown)
+            {
+                reader.seek(shown);
+            }
+            while (reader.getNextEvent() < particle && reader.next())
+            {
+                dlaLogic.addReplayedParticle(reader.getX(), reader.getY(), reader.getRgb());
+            }
+        }
+    }
+
+    /**
+     * Access the number of particles in the event log.
+     * @return The number of particles the replay can show.
+     */
+    int getParticleCount()
+    {
+        return reader.getEventCount();
+    }
+
+    /**
+     * Access the number of particles being shown.
+     * @return The current replay position.
+     */
+    int getPosition()
+    {
+        return dlaLogic.getAttachedParticles().size();
+    }
+
+    /**
+     * Set the number of particles added per second.
+     * @param speed The new speed, where 0 pauses the replay.
+     */
+    void setSpeed(int speed)
+    {
+        this.speed = speed;
+    }
+
+    /**
+     * Ask the replay to show the growing structure as it was when a number of particles were attached.
+     * @param particle The number of particles to show.
+     */
+    void seek(int particle)
+    {
+        seekTarget = particle;
+    }
+
+    /**
+     * Tell the replay to finish and wait for it, so that the attached particles are no longer changed.
+     * @param thread The thread running the replay.
+     */
+    void stop(Thread thread)
+    {
+        stopped = true;
+        boolean interrupted = false;
+        while (thread.isAlive())
+        {
+            try
+            {
+                thread.join();
+            }
+            catch (InterruptedException e)
+            {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
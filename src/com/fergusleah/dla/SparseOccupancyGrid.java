@@ -0,0 +1,292 @@
+package com.fergusleah.dla;
+
+import java.util.Arrays;
+
+/**
+ * SparseOccupancyGrid stores one bit per position like PackedOccupancyGrid, but only allocates storage where positions
+ * are occupied. The grid is divided into chunks of 64x64 positions, each held as 64 of the 8x8 Morton order tiles,
+ * and a chunk is only created when one of its positions is first marked. The memory used is therefore proportional
+ * to the area around the growing structure rather than the whole DLA circle.
+ *
+ * Chunks are found using an open addressing hash table with primitive keys, in front of which a small cache holds
+ * the most recently used chunks (and chunks which are known not to exist), since moving particles check the same
+ * few chunks many times in a row. Positions in chunks which do not exist are unoccupied, so any position, including
+ * positions outside of the grid, can be checked. This grid is not thread safe.
+ * @author Fergus Leah
+ */
+public class SparseOccupancyGrid implements OccupancyGrid
+{
+    // Chunks are 64x64 positions, which is 8x8 tiles
+    private static final int CHUNK_SHIFT = 6;
+    private static final int CHUNK_TILE_MASK = 7;
+    private static final int CHUNK_TILES = 64;
+
+    // The number of recently used chunks which are cached, a power of two
+    private static final int CACHE_SIZE = 16;
+
+    // The initial number of hash table slots, a power of two
+    private static final int INITIAL_CAPACITY = 64;
+
+    // The number of positions along each side of the grid
+    private final int size;
+
+    // The hash table keys (chunk coordinates packed into a long) and chunks, where an empty slot has no chunk
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private long[][] chunks = new long[INITIAL_CAPACITY][];
+
+    // The number of chunks in the hash table
+    private int chunkCount;
+
+    // The cache of recently used chunks, where a cached key with no chunk means the chunk does not exist
+    private final long[] cacheKeys = new long[CACHE_SIZE];
+    private final long[][] cacheChunks = new long[CACHE_SIZE][];
+    private final boolean[] cacheValid = new boolean[CACHE_SIZE];
+
+    // Chunks which were cleared and can be reused without allocating
+    private long[][] freeChunks = new long[0][];
+    private int freeChunkCount;
+
+    /**
+     * Create an empty grid.
+     * @param size The number of positions along each side of the grid.
+     */
+    public SparseOccupancyGrid(int size)
+    {
+        this.size = size;
+    }
+
+    /**
+     * Check whether a position is occupied.
+     * @param x The x coordinate of the position.
+     * @param y The y coordinate of the position.
+     * @return True if the position is occupied, else false.
+     */
+    @Override
+    public boolean isOccupied(int x, int y)
+    {
+        long[] chunk = getChunk(x >> CHUNK_SHIFT, y >> CHUNK_SHIFT);
+        return chunk != null && (chunk[tileIndex(x, y)] & PackedOccupancyGrid.bit(x, y)) != 0;
+    }
+
+    /**
+     * Mark a position as occupied, creating its chunk if needed.
+     * @param x The x coordinate of the position.
+     * @param y The y coordinate of the position.
+     */
+    @Override
+    public void setOccupied(int x, int y)
+    {
+        long[] chunk = getOrCreateChunk(x >> CHUNK_SHIFT, y >> CHUNK_SHIFT);
+        chunk[tileIndex(x, y)] |= PackedOccupancyGrid.bit(x, y);
+    }
+
+    /**
+     * Mark a position as occupied unless it is already occupied. This is not thread safe.
+     * @param x The x coordinate of the position.
+     * @param y The y coordinate of the position.
+     * @return True if this call marked the position, false if it was already occupied.
+     */
+    @Override
+    public boolean trySetOccupied(int x, int y)
+    {
+        if (isOccupied(x, y))
+        {
+            return false;
+        }
+        setOccupied(x, y);
+        return true;
+    }
+
+    /**
+     * Mark every position as unoccupied. The chunks are kept so they can be reused by the next structure.
+     */
+    @Override
+    public void clear()
+    {
+        // Move every chunk to the free list
+        if (freeChunks.length < freeChunkCount + chunkCount)
+        {
+            freeChunks = Arrays.copyOf(freeChunks, freeChunkCount + chunkCount);
+        }
+        for (int i = 0; i < chunks.length; i++)
+        {
+            if (chunks[i] != null)
+            {
+                Arrays.fill(chunks[i], 0);
+                freeChunks[freeChunkCount++] = chunks[i];
+                chunks[i] = null;
+            }
+        }
+        chunkCount = 0;
+        Arrays.fill(cacheChunks, null);
+        Arrays.fill(cacheValid, false);
+    }
+
+    /**
+     * Nothing is held outside of the heap, so the storage is left to the garbage collector.
+     */
+    @Override
+    public void close()
+    {
+    }
+
+    /**
+     * Access the number of positions along each side of the grid.
+     * @return The grid size.
+     */
+    @Override
+    public int getSize()
+    {
+        return size;
+    }
+
+    /**
+     * Access the number of chunks which hold occupied positions.
+     * @return The chunk count, each chunk using 512 bytes.
+     */
+    public int getChunkCount()
+    {
+        return chunkCount;
+    }
+
+    /**
+     * Find the tile holding a position within its chunk.
+     * @param x The x coordinate of the position.
+     * @param y The y coordinate of the position.
+     * @return The index of the tile within the chunk.
+     */
+    private static int tileIndex(int x, int y)
+    {
+        return (((y >> PackedOccupancyGrid.TILE_SHIFT) & CHUNK_TILE_MASK) << 3) | ((x >> PackedOccupancyGrid.TILE_SHIFT) & CHUNK_TILE_MASK);
+    }
+
+    /**
+     * Pack chunk coordinates into a single key.
+     * @param chunkX The x coordinate of the chunk.
+     * @param chunkY The y coordinate of the chunk.
+     * @return The key.
+     */
+    private static long key(int chunkX, int chunkY)
+    {
+        return ((long) chunkX << 32) | (chunkY & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Mix the bits of a key so that neighbouring chunks are spread across the hash table.
+     * @param key The key.
+     * @return The hash of the key.
+     */
+    private static int hash(long key)
+    {
+        key *= 0x9e3779b97f4a7c15L;
+        return (int) (key ^ (key >>> 32));
+    }
+
+    /**
+     * Find a chunk, using the cache of recently used chunks first.
+     * @param chunkX The x coordinate of the chunk.
+     * @param chunkY The y coordinate of the chunk.
+     * @return The chunk, or null if it does not exist.
+     */
+    private long[] getChunk(int chunkX, int chunkY)
+    {
+        long key = key(chunkX, chunkY);
+        int cacheIndex = (chunkX + chunkY * 5) & (CACHE_SIZE - 1);
+        if (cacheValid[cacheIndex] && cacheKeys[cacheIndex] == key)
+        {
+            return cacheChunks[cacheIndex];
+        }
+
+        // Look up the hash table and cache the result, even if the chunk does not exist
+        long[] chunk = findChunk(key);
+        cacheKeys[cacheIndex] = key;
+        cacheChunks[cacheIndex] = chunk;
+        cacheValid[cacheIndex] = true;
+        return chunk;
+    }
+
+    /**
+     * Find a chunk, creating it if it does not exist.
+     * @param chunkX The x coordinate of the chunk.
+     * @param chunkY The y coordinate of the chunk.
+     * @return The chunk.
+     */
+    private long[] getOrCreateChunk(int chunkX, int chunkY)
+    {
+        long[] chunk = getChunk(chunkX, chunkY);
+        if (chunk == null)
+        {
+            // Reuse a cleared chunk if there is one
+            chunk = freeChunkCount > 0 ? freeChunks[--freeChunkCount] : new long[CHUNK_TILES];
+            long key = key(chunkX, chunkY);
+            insertChunk(key, chunk);
+
+            // Replace the cached result, which said the chunk did not exist
+            int cacheIndex = (chunkX + chunkY * 5) & (CACHE_SIZE - 1);
+            cacheKeys[cacheIndex] = key;
+            cacheChunks[cacheIndex] = chunk;
+            cacheValid[cacheIndex] = true;
+        }
+        return chunk;
+    }
+
+    /**
+     * Look up a chunk in the hash table.
+     * @param key The key of the chunk.
+     * @return The chunk, or null if it does not exist.
+     */
+    private long[] findChunk(long key)
+    {
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; chunks[slot] != null; slot = (slot + 1) & mask)
+        {
+            if (keys[slot] == key)
+            {
+                return chunks[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Add a chunk to the hash table, doubling its capacity once it is half full.
+     * @param key The key of the chunk, which must not already be in the table.
+     * @param chunk The chunk.
+     */
+    private void insertChunk(long key, long[] chunk)
+    {
+        if ((chunkCount + 1) * 2 > keys.length)
+        {
+            long[] oldKeys = keys;
+            long[][] oldChunks = chunks;
+            keys = new long[oldKeys.length * 2];
+            chunks = new long[oldKeys.length * 2][];
+            for (int i = 0; i < oldKeys.length; i++)
+            {
+                if (oldChunks[i] != null)
+                {
+                    putChunk(oldKeys[i], oldChunks[i]);
+                }
+            }
+        }
+        putChunk(key, chunk);
+        chunkCount++;
+    }
+
+    /**
+     * Place a chunk in the first empty slot after its hash.
+     * @param key The key of the chunk.
+     * @param chunk The chunk.
+     */
+    private void putChunk(long key, long[] chunk)
+    {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (chunks[slot] != null)
+        {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        chunks[slot] = chunk;
+    }
+}
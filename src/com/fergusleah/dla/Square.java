@@ -2,6 +2,7 @@ package com.fergusleah.dla;
 
 import java.awt.Color;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Random;
 
 /**
@@ -19,12 +20,14 @@ public class Square
     // The colour of this square, set as the mask colour by default
     private Color Colour = maskColour;
     
-    // List of squares that this position's mask consists of
-    private final ArrayList<Square> mask = new ArrayList<Square>();
-    
     // Setup the random variable
     private final Random random = new Random();
     
+    // The neighbourhood position offsets of the largest mask, where each smaller mask of size n uses the first n offsets
+    // 4: adjacent, 8: adjacent and diagonal, 12: also two positions away, 16: also two positions diagonally
+    private static final int[] MASK_OFFSETS_X = { -1, 1,  0, 0,  1,  1, -1, -1,  -2, 2,  0, 0,  2,  2, -2, -2 };
+    private static final int[] MASK_OFFSETS_Y = {  0, 0, -1, 1,  1, -1,  1, -1,   0, 0, -2, 2,  2, -2,  2, -2 };
+    
      // The four particle movement directions left, right, down, up
     private final int LEFT  = 1;
     private final int RIGHT = 2;
@@ -66,42 +69,51 @@ public class Square
      */
     public ArrayList<Square> getMask(int maskSize)
     {
-        // Create an empty ArrayList to hold the mask of neighbour squares
-        ArrayList<Square> adjacentSquares = new ArrayList<Square>();
-
-        // Use recursion to create and return a mask of the required size
-        switch(maskSize)
+        // Look up the offsets of the neighbourhood positions, which also checks the mask size
+        int[] offsetsX = getMaskOffsetsX(maskSize);
+        int[] offsetsY = getMaskOffsetsY(maskSize);
+        
+        // Create an ArrayList holding a square at each neighbourhood position
+        ArrayList<Square> adjacentSquares = new ArrayList<Square>(maskSize);
+        for (int i = 0; i < maskSize; i++)
         {
-            case 4:
-                adjacentSquares.add(new Square(x - 1, y    ));
-                adjacentSquares.add(new Square(x + 1, y    ));
-                adjacentSquares.add(new Square(x    , y - 1));
-                adjacentSquares.add(new Square(x    , y + 1));
-                return adjacentSquares;
-            case 8:
-                adjacentSquares.add(new Square(x + 1, y + 1));
-                adjacentSquares.add(new Square(x + 1, y - 1));
-                adjacentSquares.add(new Square(x - 1, y + 1));
-                adjacentSquares.add(new Square(x - 1, y - 1));
-                adjacentSquares.addAll(getMask(4));
-                return adjacentSquares;
-            case 12:
-                adjacentSquares.add(new Square(x - 2, y    ));
-                adjacentSquares.add(new Square(x + 2, y    ));
-                adjacentSquares.add(new Square(x    , y - 2));
-                adjacentSquares.add(new Square(x    , y + 2));
-                adjacentSquares.addAll(getMask(8));
-                return adjacentSquares;
-            case 16:
-                adjacentSquares.add(new Square(x + 2, y + 2));
-                adjacentSquares.add(new Square(x + 2, y - 2));
-                adjacentSquares.add(new Square(x - 2, y + 2));
-                adjacentSquares.add(new Square(x - 2, y - 2));
-                adjacentSquares.addAll(getMask(12));
-                return adjacentSquares;   
+            adjacentSquares.add(new Square(x + offsetsX[i], y + offsetsY[i]));
+        }
+        return adjacentSquares;
+    }
+    
+    /**
+     * Access the x offsets of the neighbourhood positions in a mask, relative to the center position.
+     * @param maskSize The number of neighbourhood square positions in the mask.
+     * @return A new array holding the x offset of each neighbourhood position.
+     */
+    public static int[] getMaskOffsetsX(int maskSize)
+    {
+        checkMaskSize(maskSize);
+        return Arrays.copyOf(MASK_OFFSETS_X, maskSize);
+    }
+    
+    /**
+     * Access the y offsets of the neighbourhood positions in a mask, relative to the center position.
+     * @param maskSize The number of neighbourhood square positions in the mask.
+     * @return A new array holding the y offset of each neighbourhood position.
+     */
+    public static int[] getMaskOffsetsY(int maskSize)
+    {
+        checkMaskSize(maskSize);
+        return Arrays.copyOf(MASK_OFFSETS_Y, maskSize);
+    }
+    
+    /**
+     * Check that a mask size is one of the available sizes.
+     * @param maskSize The number of neighbourhood square positions in the mask.
+     */
+    private static void checkMaskSize(int maskSize)
+    {
+        if (maskSize != 4 && maskSize != 8 && maskSize != 12 && maskSize != 16)
+        {
+            throw new IllegalArgumentException("Error - Available mask sizes: 4, 8, 12, 16");
         }
-        
-        throw new IllegalArgumentException("Error - Available mask sizes: 4, 8, 12, 16");
     }
 
     /**
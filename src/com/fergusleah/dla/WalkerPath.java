@@ -0,0 +1,189 @@
+package com.fergusleah.dla;
+
+/**
+ * WalkerPath records the path of a particle which was moved speculatively, before every earlier particle was attached.
+ * Each step of the path holds a position and a sensitivity distance, which is how far the particle looked for the
+ * growing structure at that step. A particle attached further than the sensitivity distance (plus the mask reach)
+ * from every step could not have changed any decision made along the path, so the path is still valid.
+ *
+ * Neighbouring steps with the same sensitivity distance are merged into a single bounding box while the box stays
+ * small, so a long random walk close to the structure only needs a few records.
+ * @author Fergus Leah
+ */
+class WalkerPath
+{
+    // The number of values in each record: the bounding box corners followed by the sensitivity distance
+    private static final int RECORD_LENGTH = 5;
+
+    // The smallest bounding box size which steps are merged into, so that short distances do not need a record per step
+    private static final int MINIMUM_MERGE_SIZE = 4;
+
+    // The index of the particle whose path is held, written last so other threads see the complete path
+    volatile long walker = -1;
+
+    // The number of attached particles and the structure radius which the particle started moving with
+    private int startParticles;
+    private int startClusterRadius;
+
+    // Whether the particle reached a position where it attaches, that position and the number of steps taken to reach it
+    private boolean attached;
+    private int x, y;
+    private long steps;
+
+    // The records, each holding minimum x, minimum y, maximum x, maximum y and the sensitivity distance
+    private int[] records = new int[RECORD_LENGTH * 64];
+
+    // The number of values used in the records array
+    private int length;
+
+    /**
+     * Clear the path so that it can record a new particle.
+     * @param startParticles The number of attached particles the particle was moved against.
+     * @param startClusterRadius The structure radius used to launch the particle.
+     */
+    void start(int startParticles, int startClusterRadius)
+    {
+        this.startParticles = startParticles;
+        this.startClusterRadius = startClusterRadius;
+        this.attached = false;
+        this.length = 0;
+    }
+
+    /**
+     * Add a step to the path, merging it into the last record if possible.
+     * @param stepX The x coordinate of the step.
+     * @param stepY The y coordinate of the step.
+     * @param distance The sensitivity distance of the step.
+     */
+    void addStep(int stepX, int stepY, int distance)
+    {
+        // If the last record has the same distance, grow its bounding box while it stays within that distance
+        if (length > 0 && records[length - 1] == distance)
+        {
+            int start = length - RECORD_LENGTH;
+            int minX = Math.min(records[start], stepX);
+            int minY = Math.min(records[start + 1], stepY);
+            int maxX = Math.max(records[start + 2], stepX);
+            int maxY = Math.max(records[start + 3], stepY);
+            int mergeSize = Math.max(distance, MINIMUM_MERGE_SIZE);
+            if (maxX - minX <= mergeSize && maxY - minY <= mergeSize)
+            {
+                records[start] = minX;
+                records[start + 1] = minY;
+                records[start + 2] = maxX;
+                records[start + 3] = maxY;
+                return;
+            }
+        }
+
+        // Grow the records array when it is full, which stops once the longest path has been seen
+        if (length == records.length)
+        {
+            int[] grown = new int[records.length * 2];
+            System.arraycopy(records, 0, grown, 0, length);
+            records = grown;
+        }
+
+        // Start a new record holding only this step
+        records[length] = stepX;
+        records[length + 1] = stepY;
+        records[length + 2] = stepX;
+        records[length + 3] = stepY;
+        records[length + 4] = distance;
+        length += RECORD_LENGTH;
+    }
+
+    /**
+     * Record where the particle finished moving.
+     * @param attached True if the particle reached a position where it attaches, false if it was killed.
+     * @param x The x coordinate of the final position.
+     * @param y The y coordinate of the final position.
+     * @param steps The number of moves and jumps the particle made.
+     */
+    void finish(boolean attached, int x, int y, long steps)
+    {
+        this.attached = attached;
+        this.x = x;
+        this.y = y;
+        this.steps = steps;
+    }
+
+    /**
+     * Check whether the path is the same as if the particle had been moved after every earlier particle was attached.
+     * @param particles The attached particles.
+     * @param endParticles The number of particles attached before this particle.
+     * @param endClusterRadius The structure radius after those particles were attached.
+     * @param reach The reach of the mask used to attach particles.
+     * @return True if no particle attached after the particle started moving could have changed its path, else false.
+     */
+    boolean isValid(ParticleView particles, int endParticles, int endClusterRadius, int reach)
+    {
+        // The launch circle, kill zone and reinjection circle all depend on the structure radius
+        if (startClusterRadius != endClusterRadius)
+        {
+            return false;
+        }
+
+        // Check each newly attached particle against every record of the path
+        for (int i = startParticles; i < endParticles; i++)
+        {
+            int particleX = particles.getX(i);
+            int particleY = particles.getY(i);
+            for (int start = 0; start < length; start += RECORD_LENGTH)
+            {
+                int range = records[start + 4] + reach;
+                if (particleX >= records[start] - range && particleX <= records[start + 2] + range
+                        && particleY >= records[start + 1] - range && particleY <= records[start + 3] + range)
+                {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Access the structure radius which the particle was launched with.
+     * @return The structure radius.
+     */
+    int getStartClusterRadius()
+    {
+        return startClusterRadius;
+    }
+
+    /**
+     * Access whether the particle reached a position where it attaches.
+     * @return True if the particle attaches, false if it was killed.
+     */
+    boolean isAttached()
+    {
+        return attached;
+    }
+
+    /**
+     * Access the x coordinate where the particle finished moving.
+     * @return The final x coordinate.
+     */
+    int getX()
+    {
+        return x;
+    }
+
+    /**
+     * Access the y coordinate where the particle finished moving.
+     * @return The final y coordinate.
+     */
+    int getY()
+    {
+        return y;
+    }
+
+    /**
+     * Access the number of moves and jumps the particle made.
+     * @return The number of steps.
+     */
+    long getSteps()
+    {
+        return steps;
+    }
+}
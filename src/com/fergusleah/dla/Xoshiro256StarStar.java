@@ -0,0 +1,154 @@
+package com.fergusleah.dla;
+
+/**
+ * Xoshiro256StarStar is a fast random source using the xoshiro256** generator by Blackman and Vigna.
+ * It has a 256 bit state, passes all standard statistical tests and takes no locks, unlike java.util.Random.
+ * Splitting jumps this generator 2^128 values ahead, so split sources never overlap in practice.
+ * @author Fergus Leah
+ */
+public class Xoshiro256StarStar implements RandomSource
+{
+    // The jump polynomial which advances the state by 2^128 values
+    private static final long[] JUMP = { 0x180ec6d33cfd0abaL, 0xd5a61266f0c9392cL, 0xa9582618e03fc9aaL, 0x39abdc4529b1661cL };
+
+    // The 256 bit generator state
+    private long s0, s1, s2, s3;
+
+    /**
+     * Create a generator from a 64 bit seed, which is expanded into the full state using the SplitMix64 generator.
+     * @param seed The seed value.
+     */
+    public Xoshiro256StarStar(long seed)
+    {
+        setStream(seed, 0);
+    }
+
+    /**
+     * Reset this generator to the start of one of many independent streams made from a single seed, without allocating.
+     * The state of stream n is made from the SplitMix64 values 4n to 4n + 3 of the seed, so streams never share seed values.
+     * Stream 0 matches a generator created from the same seed.
+     * @param seed The seed value.
+     * @param stream The index of the stream.
+     */
+    public void setStream(long seed, long stream)
+    {
+        seed += stream * 4 * 0x9e3779b97f4a7c15L;
+        s0 = splitMix64(seed += 0x9e3779b97f4a7c15L);
+        s1 = splitMix64(seed += 0x9e3779b97f4a7c15L);
+        s2 = splitMix64(seed += 0x9e3779b97f4a7c15L);
+        s3 = splitMix64(seed + 0x9e3779b97f4a7c15L);
+    }
+
+    /**
+     * Create a generator with a copy of an existing state.
+     * @param state The four state values, which must not all be zero.
+     */
+    public Xoshiro256StarStar(long[] state)
+    {
+        s0 = state[0];
+        s1 = state[1];
+        s2 = state[2];
+        s3 = state[3];
+    }
+
+    @Override
+    public long nextLong()
+    {
+        long result = Long.rotateLeft(s1 * 5, 7) * 9;
+        long t = s1 << 17;
+        s2 ^= s0;
+        s3 ^= s1;
+        s1 ^= s2;
+        s0 ^= s3;
+        s2 ^= t;
+        s3 = Long.rotateLeft(s3, 45);
+        return result;
+    }
+
+    @Override
+    public double nextDouble()
+    {
+        // Use the top 53 bits as the fraction of a double
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    @Override
+    public int nextInt(int bound)
+    {
+        if (bound <= 0)
+        {
+            throw new IllegalArgumentException("Error - The bound must be positive");
+        }
+
+        // Use the top 31 bits, rejecting values which would bias the result as java.util.Random does
+        int r = (int) (nextLong() >>> 33);
+        int m = bound - 1;
+        if ((bound & m) == 0)
+        {
+            return (int) ((bound * (long) r) >> 31);
+        }
+        for (int u = r; u - (r = u % bound) + m < 0; u = (int) (nextLong() >>> 33))
+        {
+        }
+        return r;
+    }
+
+    /**
+     * Create a source continuing from the current state, then jump this source 2^128 values ahead.
+     * @return The new random source.
+     */
+    @Override
+    public RandomSource split()
+    {
+        RandomSource split = new Xoshiro256StarStar(getState());
+        jump();
+        return split;
+    }
+
+    /**
+     * Access a copy of the generator state so that it can be saved and restored.
+     * @return The four state values.
+     */
+    public long[] getState()
+    {
+        return new long[] { s0, s1, s2, s3 };
+    }
+
+    /**
+     * Advance the state by 2^128 values.
+     */
+    private void jump()
+    {
+        long t0 = 0, t1 = 0, t2 = 0, t3 = 0;
+        for (int i = 0; i < JUMP.length; i++)
+        {
+            for (int b = 0; b < 64; b++)
+            {
+                if ((JUMP[i] & (1L << b)) != 0)
+                {
+                    t0 ^= s0;
+                    t1 ^= s1;
+                    t2 ^= s2;
+                    t3 ^= s3;
+                }
+                nextLong();
+            }
+        }
+        s0 = t0;
+        s1 = t1;
+        s2 = t2;
+        s3 = t3;
+    }
+
+    /**
+     * Mix a value using the SplitMix64 finaliser.
+     * @param z The value to mix.
+     * @return The mixed value.
+     */
+    private static long splitMix64(long z)
+    {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
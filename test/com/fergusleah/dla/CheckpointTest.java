@@ -0,0 +1,157 @@
+package com.fergusleah.dla;
+
+import java.io.File;
+import java.io.IOException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * CheckpointTest checks that a DLA resumed from a checkpoint grows into exactly the same structure as a DLA which was
+ * never interrupted.
+ * @author Fergus Leah
+ */
+public class CheckpointTest
+{
+    // A DLA circle large enough for the generation process to be cancelled part way through
+    private static final int DIAMETER = 600;
+    private static final double FILL_PERCENTAGE = 10;
+    private static final long SEED = 42;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * A deterministic DLA cancelled part way through and resumed attaches the same particles with the same colours.
+     * @throws Exception If the checkpoint could not be written or read, or the test was interrupted.
+     */
+    @Test
+    public void cancelledDeterministicRunResumesIdentically() throws Exception
+    {
+        File file = folder.newFile("deterministic.chk");
+
+        // Cancel a run once a quarter of its particles are attached, with checkpoints written as often as possible
+        DLALogic interrupted = createLogic(4, true);
+        interrupted.setCheckpointFile(file);
+        interrupted.setCheckpointInterval(1);
+        interrupted.start();
+        while (interrupted.getAttachedParticles().size() < interrupted.getMaxParticles() / 4)
+        {
+            Thread.sleep(1);
+        }
+        interrupted.cancel();
+        assertNull(interrupted.getFailure());
+        int savedCount = Checkpoint.read(file).particleCount;
+        assertTrue(savedCount < interrupted.getMaxParticles());
+
+        // Resume with a different number of threads, which makes no difference in deterministic mode
+        DLALogic resumed = new DLALogic(8);
+        resumed.setThreadCount(2);
+        resumed.resume(file);
+        assertEquals(savedCount, resumed.getAttachedParticles().size());
+        resumed.run();
+
+        DLALogic uninterrupted = createLogic(1, true);
+        uninterrupted.run();
+        assertArrayEquals(getParticles(uninterrupted), getParticles(resumed));
+    }
+
+    /**
+     * A DLA generated on one thread is resumed with its random state, so extending it continues as one longer run
+     * would. The colours depend on the number of particles when each was attached, so only the positions are compared.
+     * @throws IOException If the checkpoint could not be written or read.
+     */
+    @Test
+    public void singleThreadRunResumesWithItsRandomState() throws IOException
+    {
+        File file = folder.newFile("single.chk");
+
+        DLALogic first = createLogic(1, false);
+        first.setFillPercentage(FILL_PERCENTAGE / 2);
+        first.setCheckpointFile(file);
+        first.run();
+        assertNotNull(Checkpoint.read(file).randomState);
+
+        DLALogic resumed = new DLALogic(8);
+        resumed.resume(file);
+        resumed.setFillPercentage(FILL_PERCENTAGE);
+        resumed.run();
+
+        DLALogic uninterrupted = createLogic(1, false);
+        uninterrupted.run();
+        assertEquals(uninterrupted.getAttachedParticles().size(), resumed.getAttachedParticles().size());
+        ParticleView expected = uninterrupted.getAttachedParticles().snapshot();
+        ParticleView actual = resumed.getAttachedParticles().snapshot();
+        for (int i = 0; i < expected.size(); i++)
+        {
+            assertEquals(expected.getX(i), actual.getX(i));
+            assertEquals(expected.getY(i), actual.getY(i));
+        }
+    }
+
+    /**
+     * Reading a checkpoint file returns every particle written to it, along with the parameters of the DLA.
+     * @throws IOException If the checkpoint could not be written or read.
+     */
+    @Test
+    public void readReturnsTheWrittenParticles() throws IOException
+    {
+        File file = folder.newFile("read.chk");
+
+        DLALogic dlaLogic = createLogic(1, true);
+        dlaLogic.setCheckpointFile(file);
+        dlaLogic.run();
+
+        Checkpoint checkpoint = Checkpoint.read(file);
+        assertEquals(DIAMETER, checkpoint.dlaCircleDiameter);
+        assertEquals(SEED, checkpoint.seed);
+        assertTrue(checkpoint.deterministic);
+        int[] particles = getParticles(dlaLogic);
+        assertEquals(particles.length / 3, checkpoint.particleCount);
+        for (int i = 0; i < checkpoint.particleCount; i++)
+        {
+            assertEquals(particles[3 * i], checkpoint.particlesX[i]);
+            assertEquals(particles[3 * i + 1], checkpoint.particlesY[i]);
+            assertEquals(particles[3 * i + 2], checkpoint.particlesRgb[i]);
+        }
+    }
+
+    /**
+     * Create the DLA logic for a seeded DLA.
+     * @param threadCount The number of threads moving particles.
+     * @param deterministic True if the DLA is generated in deterministic mode.
+     * @return The DLA logic, which has not been run.
+     */
+    private static DLALogic createLogic(int threadCount, boolean deterministic)
+    {
+        DLALogic dlaLogic = new DLALogic(DIAMETER);
+        dlaLogic.setThreadCount(threadCount);
+        dlaLogic.setDeterministic(deterministic);
+        dlaLogic.setSeed(SEED);
+        dlaLogic.setFillPercentage(FILL_PERCENTAGE);
+        return dlaLogic;
+    }
+
+    /**
+     * Read the attached particles.
+     * @param dlaLogic The DLA logic.
+     * @return The x and y coordinates and colour of every attached particle in attachment order.
+     */
+    private static int[] getParticles(DLALogic dlaLogic)
+    {
+        ParticleView particles = dlaLogic.getAttachedParticles().snapshot();
+        int[] values = new int[particles.size() * 3];
+        for (int i = 0; i < particles.size(); i++)
+        {
+            values[3 * i] = particles.getX(i);
+            values[3 * i + 1] = particles.getY(i);
+            values[3 * i + 2] = particles.getRgb(i);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,173 @@
+package com.fergusleah.dla;
+
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ClusterStatisticsTest checks the box counts, fractal dimensions and other statistics against shapes whose values
+ * are known exactly: a filled square, a straight line and a single particle.
+ * @author Fergus Leah
+ */
+public class ClusterStatisticsTest
+{
+    // The size of the grid, whose center is at (GRID_SIZE / 2, GRID_SIZE / 2)
+    private static final int GRID_SIZE = 1024;
+    private static final int CENTER = GRID_SIZE / 2;
+
+    // The side of the filled square, which is aligned with the boxes of every size up to half its own
+    private static final int SQUARE_SIDE = 512;
+
+    // The largest difference allowed from the dimension of a smooth shape when fitting its mass-radius curve
+    private static final double MASS_RADIUS_TOLERANCE = 0.1;
+
+    /**
+     * A filled square is covered by exactly (side / 2^k)^2 boxes of each size up to half its side, giving a box
+     * counting dimension of 2.
+     */
+    @Test
+    public void filledSquareHasDimensionTwo()
+    {
+        ParticleStore particles = new ParticleStore();
+        addSquare(particles);
+        ClusterStatistics statistics = createStatistics(particles);
+
+        long[] boxCounts = statistics.getBoxCounts();
+        int start = CENTER - SQUARE_SIDE / 2;
+        for (int k = 0; k < boxCounts.length; k++)
+        {
+            long boxesPerSide = ((start + SQUARE_SIDE - 1) >> k) - (start >> k) + 1;
+            assertEquals("Boxes of size 2^" + k, boxesPerSide * boxesPerSide, boxCounts[k]);
+        }
+        assertEquals(2, statistics.getBoxCountingDimension(), 1e-9);
+        assertEquals(2, statistics.getMassRadiusDimension(), MASS_RADIUS_TOLERANCE);
+    }
+
+    /**
+     * A line across the grid through the root particle is covered by exactly length / 2^k boxes of each size,
+     * giving a box counting dimension of 1, and its radius of gyration is that of a uniform rod.
+     */
+    @Test
+    public void lineHasDimensionOne()
+    {
+        ParticleStore particles = new ParticleStore();
+        for (int x = 0; x < GRID_SIZE; x++)
+        {
+            particles.add(x, CENTER, 0);
+        }
+        ClusterStatistics statistics = createStatistics(particles);
+
+        long[] boxCounts = statistics.getBoxCounts();
+        for (int k = 0; k < boxCounts.length; k++)
+        {
+            assertEquals("Boxes of size 2^" + k, Math.max(1, GRID_SIZE >> k), boxCounts[k]);
+        }
+        assertEquals(1, statistics.getBoxCountingDimension(), 1e-9);
+        assertEquals(1, statistics.getMassRadiusDimension(), MASS_RADIUS_TOLERANCE);
+
+        // The positions -512 to 511 have a variance of (1024^2 - 1) / 12 around their mean of -0.5
+        assertEquals(Math.sqrt((GRID_SIZE * (double) GRID_SIZE - 1) / 12), statistics.getRadiusOfGyration(), 1e-9);
+
+        // Each ring holds the two positions at that distance, except the root particle's and the last one
+        long[] histogram = statistics.getRadialHistogram();
+        assertEquals(CENTER + 1, histogram.length);
+        assertEquals(1, histogram[0]);
+        assertEquals(2, histogram[CENTER / 2]);
+        assertEquals(1, histogram[CENTER]);
+        long[] curve = statistics.getMassRadiusCurve();
+        assertEquals(GRID_SIZE, curve[curve.length - 1]);
+    }
+
+    /**
+     * A single particle has no extent, and is too small to estimate a dimension from.
+     */
+    @Test
+    public void singleParticleHasNoDimension()
+    {
+        ParticleStore particles = new ParticleStore();
+        particles.add(CENTER, CENTER, 0);
+        ClusterStatistics statistics = createStatistics(particles);
+
+        assertEquals(1, statistics.getParticleCount());
+        assertEquals(0, statistics.getRadiusOfGyration(), 0);
+        assertArrayEquals(new long[] { 1 }, statistics.getRadialHistogram());
+        assertTrue(Double.isNaN(statistics.getBoxCountingDimension()));
+        assertTrue(Double.isNaN(statistics.getMassRadiusDimension()));
+        assertFalse(statistics.checkDimensionConverged(1));
+    }
+
+    /**
+     * Particles attached after a query are added by the next query, and removing particles builds the statistics again.
+     */
+    @Test
+    public void statisticsFollowTheParticles()
+    {
+        ParticleStore particles = new ParticleStore();
+        ClusterStatistics statistics = createStatistics(particles);
+        assertEquals(0, statistics.getParticleCount());
+
+        addSquare(particles);
+        assertEquals(SQUARE_SIDE * SQUARE_SIDE, statistics.getParticleCount());
+
+        // Keeping one row of the square leaves a line of boxes
+        particles.truncate(SQUARE_SIDE);
+        long[] boxCounts = statistics.getBoxCounts();
+        assertEquals(SQUARE_SIDE, statistics.getParticleCount());
+        assertEquals(SQUARE_SIDE / 8, boxCounts[3]);
+
+        // Clearing and adding the square again gives the same counts as the first time
+        particles.clear();
+        addSquare(particles);
+        assertEquals(2, statistics.getBoxCountingDimension(), 1e-9);
+        statistics.close();
+        assertEquals(SQUARE_SIDE * SQUARE_SIDE, statistics.getParticleCount());
+    }
+
+    /**
+     * A dimension which does not change is converged once enough estimates have been recorded.
+     */
+    @Test
+    public void steadyDimensionConverges()
+    {
+        ParticleStore particles = new ParticleStore();
+        addSquare(particles);
+        ClusterStatistics statistics = createStatistics(particles);
+        for (int i = 1; i < 5; i++)
+        {
+            assertFalse(statistics.checkDimensionConverged(0.01));
+        }
+        assertTrue(statistics.checkDimensionConverged(0.01));
+
+        // Forgetting the estimates starts the count again
+        statistics.resetConvergence();
+        assertFalse(statistics.checkDimensionConverged(0.01));
+    }
+
+    /**
+     * Create the statistics of a grid of the test size.
+     * @param particles The particles.
+     * @return The statistics.
+     */
+    private static ClusterStatistics createStatistics(ParticleView particles)
+    {
+        return new ClusterStatistics(particles, GRID_SIZE, new OccupancyGridFactory(GridStorage.PACKED, false, null));
+    }
+
+    /**
+     * Add a filled square centered on the root particle, one row at a time.
+     * @param particles The particles.
+     */
+    private static void addSquare(ParticleStore particles)
+    {
+        int start = CENTER - SQUARE_SIDE / 2;
+        for (int y = start; y < start + SQUARE_SIDE; y++)
+        {
+            for (int x = start; x < start + SQUARE_SIDE; x++)
+            {
+                particles.add(x, y, 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.fergusleah.dla;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * DLABatchTest checks that options which cannot be read or used are reported along with the usage, rather than
+ * failing part way through the setup.
+ * @author Fergus Leah
+ */
+public class DLABatchTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // The standard error stream, which is replaced to capture what DLABatch prints
+    private PrintStream standardError;
+    private final ByteArrayOutputStream error = new ByteArrayOutputStream();
+
+    /**
+     * Capture the standard error stream.
+     */
+    @Before
+    public void captureError()
+    {
+        standardError = System.err;
+        System.setErr(new PrintStream(error, true));
+    }
+
+    /**
+     * Restore the standard error stream.
+     */
+    @After
+    public void restoreError()
+    {
+        System.setErr(standardError);
+    }
+
+    /**
+     * A fill percentage over 100 is read as a number but rejected by the DLA logic.
+     */
+    @Test
+    public void fillOverOneHundredIsRejected()
+    {
+        assertRejected("The fill percentage must be between 0 and 100", "--fill", "150");
+    }
+
+    /**
+     * A diameter below the smallest DLA circle is rejected.
+     */
+    @Test
+    public void negativeDiameterIsRejected()
+    {
+        assertRejected("The DLA circle diameter must be at least 8", "--diameter", "-5");
+    }
+
+    /**
+     * A thread count below one is rejected.
+     */
+    @Test
+    public void zeroThreadsAreRejected()
+    {
+        assertRejected("The thread count must be at least 1", "--threads", "0");
+    }
+
+    /**
+     * Deterministic mode cannot be combined with off-lattice mode, which would ignore it.
+     */
+    @Test
+    public void deterministicOffLatticeIsRejected()
+    {
+        assertRejected("Deterministic mode cannot be used with off-lattice mode", "--deterministic", "true", "--off-lattice", "true");
+    }
+
+    /**
+     * An unknown grid storage is rejected with the names of the available ones.
+     */
+    @Test
+    public void unknownGridStorageListsTheChoices()
+    {
+        assertRejected("use packed, sparse or mapped", "--grid", "compressed");
+        assertEquals(GridStorage.MAPPED, DLABatch.parseGridStorage("Mapped"));
+    }
+
+    /**
+     * Mapped grids in a directory which does not exist cannot be created, for a diameter large enough to map its grids.
+     */
+    @Test
+    public void missingGridDirectoryIsRejected()
+    {
+        File missing = new File(folder.getRoot(), "missing");
+        assertRejected("could not be mapped", "--diameter", "1000", "--grid", "mapped", "--grid-directory", missing.getPath());
+    }
+
+    /**
+     * Check that DLABatch fails with a message and the usage before generating a DLA.
+     * @param message Part of the message expected for the rejected option.
+     * @param args The command line options.
+     */
+    private void assertRejected(String message, String... args)
+    {
+        assertEquals(1, DLABatch.run(args));
+        String printed = error.toString();
+        assertTrue(printed, printed.contains(message));
+        assertTrue(printed, printed.contains("Usage: DLABatch"));
+    }
+}
@@ -0,0 +1,112 @@
+package com.fergusleah.dla;
+
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * DeterministicModeTest checks that in deterministic mode the attached particles only depend on the seed, whatever
+ * the number of threads moving them.
+ * @author Fergus Leah
+ */
+public class DeterministicModeTest
+{
+    // A small DLA circle which still grows far enough for the worker threads to speculate against each other
+    private static final int DIAMETER = 300;
+    private static final double FILL_PERCENTAGE = 10;
+
+    /**
+     * One thread and several threads attach the same particles in the same order.
+     */
+    @Test
+    public void threadCountDoesNotChangeTheResult()
+    {
+        int[] oneThread = generate(1, 42, false);
+        assertArrayEquals(oneThread, generate(4, 42, false));
+        assertArrayEquals(oneThread, generate(3, 42, false));
+    }
+
+    /**
+     * Reinjected particles are also attached identically for any number of threads.
+     */
+    @Test
+    public void threadCountDoesNotChangeTheResultWithReinjection()
+    {
+        assertArrayEquals(generate(1, 7, true), generate(4, 7, true));
+    }
+
+    /**
+     * Stepping on the calling thread attaches the same particles as running with several threads.
+     */
+    @Test
+    public void steppingMatchesRunning()
+    {
+        DLALogic dlaLogic = createLogic(1, 42, false);
+        while (dlaLogic.step(100, Long.MAX_VALUE))
+        {
+        }
+        assertArrayEquals(generate(4, 42, false), getPositions(dlaLogic));
+    }
+
+    /**
+     * Different seeds give different structures.
+     */
+    @Test
+    public void seedChangesTheResult()
+    {
+        assertFalse(Arrays.equals(generate(2, 1, false), generate(2, 2, false)));
+    }
+
+    /**
+     * Generate a deterministic DLA.
+     * @param threadCount The number of threads moving particles.
+     * @param seed The seed.
+     * @param reinject True if escaped particles are reinjected.
+     * @return The x and y coordinates and order of every attached particle.
+     */
+    private static int[] generate(int threadCount, long seed, boolean reinject)
+    {
+        DLALogic dlaLogic = createLogic(threadCount, seed, reinject);
+        dlaLogic.run();
+        assertEquals(dlaLogic.getMaxParticles(), dlaLogic.getAttachedParticles().size());
+        return getPositions(dlaLogic);
+    }
+
+    /**
+     * Create the DLA logic for a deterministic DLA.
+     * @param threadCount The number of threads moving particles.
+     * @param seed The seed.
+     * @param reinject True if escaped particles are reinjected.
+     * @return The DLA logic, which has not been run.
+     */
+    private static DLALogic createLogic(int threadCount, long seed, boolean reinject)
+    {
+        DLALogic dlaLogic = new DLALogic(DIAMETER);
+        dlaLogic.setThreadCount(threadCount);
+        dlaLogic.setDeterministic(true);
+        dlaLogic.setSeed(seed);
+        dlaLogic.setReinjectEscapedParticles(reinject);
+        dlaLogic.setFillPercentage(FILL_PERCENTAGE);
+        return dlaLogic;
+    }
+
+    /**
+     * Read the positions and order of the attached particles.
+     * @param dlaLogic The DLA logic.
+     * @return The x and y coordinates and order of every attached particle.
+     */
+    static int[] getPositions(DLALogic dlaLogic)
+    {
+        ParticleView particles = dlaLogic.getAttachedParticles().snapshot();
+        int[] positions = new int[particles.size() * 3];
+        for (int i = 0; i < particles.size(); i++)
+        {
+            positions[3 * i] = particles.getX(i);
+            positions[3 * i + 1] = particles.getY(i);
+            positions[3 * i + 2] = particles.getOrder(i);
+        }
+        return positions;
+    }
+}
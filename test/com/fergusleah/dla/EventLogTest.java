@@ -0,0 +1,195 @@
+package com.fergusleah.dla;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * EventLogTest checks that events written by EventLogWriter are decoded unchanged by EventLogReader, whether the log
+ * is read from the start or from an indexed event.
+ * @author Fergus Leah
+ */
+public class EventLogTest
+{
+    // The DLA circle the particles are recorded from, whose center event positions are relative to
+    private static final int DIAMETER = 1000;
+
+    // A short index interval so that the log holds many indexed events
+    private static final int INDEX_INTERVAL = 64;
+
+    // The number of recorded particles, which is not a multiple of the index interval
+    private static final int EVENT_COUNT = 3000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Zigzag encoding maps small values of either sign to small unsigned values.
+     */
+    @Test
+    public void zigzagInterleavesSigns()
+    {
+        assertEquals(0, EventLogWriter.zigzag(0));
+        assertEquals(1, EventLogWriter.zigzag(-1));
+        assertEquals(2, EventLogWriter.zigzag(1));
+        assertEquals(3, EventLogWriter.zigzag(-2));
+        assertEquals(-2, EventLogWriter.zigzag(Integer.MAX_VALUE));
+        assertEquals(-1, EventLogWriter.zigzag(Integer.MIN_VALUE));
+    }
+
+    /**
+     * Every event is decoded in order with its position and colour, including positions needing the longest integers
+     * and more colours than the palette holds.
+     * @throws IOException If the log could not be written or read.
+     */
+    @Test
+    public void eventsAreReadInOrder() throws IOException
+    {
+        ParticleStore particles = createParticles();
+        File file = writeLog(particles, EventLogWriter.DEFAULT_INDEX_INTERVAL);
+
+        EventLogReader reader = new EventLogReader(file);
+        try
+        {
+            assertEquals(DIAMETER, reader.getDlaCircleDiameter());
+            assertEquals(EVENT_COUNT, reader.getEventCount());
+            for (int i = 0; i < EVENT_COUNT; i++)
+            {
+                assertTrue(reader.next());
+                assertEvent(particles, i, reader);
+            }
+            assertFalse(reader.next());
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    /**
+     * Seeking forwards and backwards, onto indexed events and between them, decodes the same events as reading from
+     * the start, with the palette started again at each indexed event.
+     * @throws IOException If the log could not be written or read.
+     */
+    @Test
+    public void seekStartsFromIndexedEvents() throws IOException
+    {
+        ParticleStore particles = createParticles();
+        File file = writeLog(particles, INDEX_INTERVAL);
+
+        EventLogReader reader = new EventLogReader(file);
+        try
+        {
+            int[] events = { 2000, 64, 65, 63, 2999, 0, 1280, 1300, 1290, 700 };
+            for (int i = 0; i < events.length; i++)
+            {
+                reader.seek(events[i]);
+                assertEquals(events[i], reader.getNextEvent());
+                assertTrue(reader.next());
+                assertEvent(particles, events[i], reader);
+            }
+
+            // Seeking past the end stops at the last event
+            reader.seek(EVENT_COUNT + 100);
+            assertEquals(EVENT_COUNT, reader.getNextEvent());
+            assertFalse(reader.next());
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    /**
+     * A log whose last event was only partly written ends before that event.
+     * @throws IOException If the log could not be written or read.
+     */
+    @Test
+    public void partlyWrittenEventIsIgnored() throws IOException
+    {
+        ParticleStore particles = createParticles();
+        File file = writeLog(particles, INDEX_INTERVAL);
+        RandomAccessFile log = new RandomAccessFile(file, "rw");
+        try
+        {
+            log.setLength(log.length() - 1);
+        }
+        finally
+        {
+            log.close();
+        }
+
+        EventLogReader reader = new EventLogReader(file);
+        try
+        {
+            assertEquals(EVENT_COUNT - 1, reader.getEventCount());
+            reader.seek(EVENT_COUNT - 2);
+            assertTrue(reader.next());
+            assertEvent(particles, EVENT_COUNT - 2, reader);
+            assertFalse(reader.next());
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    /**
+     * Create particles which spread in both directions from the center, some far outside the DLA circle so that their
+     * offsets need the longest variable length integers, with runs of repeated colours among more colours than the
+     * palette holds.
+     * @return The particles.
+     */
+    private static ParticleStore createParticles()
+    {
+        ParticleStore particles = new ParticleStore();
+        int center = DIAMETER / 2;
+        for (int i = 0; i < EVENT_COUNT; i++)
+        {
+            int x = center + (i % 2 == 0 ? i / 7 : -i / 5);
+            int y = center - (i % 3) * (i % 11);
+            if (i % 97 == 0)
+            {
+                x = Integer.MAX_VALUE / 2 - i;
+                y = Integer.MIN_VALUE / 2 + i;
+            }
+            int rgb = ((i / 4) % 300) * 0x010203 & 0xFFFFFF;
+            particles.add(x, y, rgb);
+        }
+        return particles;
+    }
+
+    /**
+     * Write every particle to a new event log.
+     * @param particles The particles.
+     * @param indexInterval The number of events between indexed events.
+     * @return The event log file.
+     * @throws IOException If the log could not be written.
+     */
+    private File writeLog(ParticleStore particles, int indexInterval) throws IOException
+    {
+        File file = new File(folder.getRoot(), "events.log");
+        EventLogWriter writer = new EventLogWriter(file, particles, DIAMETER, indexInterval);
+        writer.close();
+        return file;
+    }
+
+    /**
+     * Check that the last decoded event matches a particle.
+     * @param particles The particles which were written.
+     * @param index The index of the particle.
+     * @param reader The reader which decoded the event.
+     */
+    private static void assertEvent(ParticleStore particles, int index, EventLogReader reader)
+    {
+        assertEquals(particles.getX(index), reader.getX());
+        assertEquals(particles.getY(index), reader.getY());
+        assertEquals(particles.getRgb(index), reader.getRgb());
+    }
+}
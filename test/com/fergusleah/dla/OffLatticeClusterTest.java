@@ -0,0 +1,92 @@
+package com.fergusleah.dla;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * OffLatticeClusterTest checks the distances found through the spatial hash of attached discs against those found by
+ * testing every disc.
+ * @author Fergus Leah
+ */
+public class OffLatticeClusterTest
+{
+    // The size of the grid holding the disc centers
+    private static final int GRID_SIZE = 256;
+
+    // The center of the grid, where the first disc is placed
+    private static final double CENTER = GRID_SIZE / 2 + 0.5;
+
+    /**
+     * A particle 5 units from a lone disc finds it 5 units away, so it can fly 4 units, further than a single move,
+     * before it could touch the disc.
+     */
+    @Test
+    public void particleNearLoneDiscCanFlyFreely()
+    {
+        OffLatticeCluster discs = createDiscs();
+        discs.add(CENTER, CENTER);
+
+        assertEquals(5, discs.getNearestDistance(CENTER + 5, CENTER), 1e-9);
+        assertEquals(5, discs.getNearestDistance(CENTER - 3, CENTER + 4), 1e-9);
+        double gap = discs.getNearestDistance(CENTER + 5, CENTER) - 1;
+        assertTrue(gap > 1);
+
+        // Flying all but half a unit of the gap towards the disc leaves a single move which touches it half way
+        double flownX = CENTER + 5 - (gap - 0.5);
+        assertEquals(0.5, discs.getContactDistance(flownX, CENTER, -1, 0, 1), 1e-9);
+    }
+
+    /**
+     * A particle further from every disc than the search distance finds only the search distance.
+     */
+    @Test
+    public void distantDiscsAreBeyondTheSearchDistance()
+    {
+        OffLatticeCluster discs = createDiscs();
+        discs.add(CENTER, CENTER);
+        assertEquals(OffLatticeCluster.SEARCH_DISTANCE, discs.getNearestDistance(CENTER + 40, CENTER), 0);
+        assertEquals(OffLatticeCluster.SEARCH_DISTANCE, discs.getNearestDistance(CENTER + OffLatticeCluster.SEARCH_DISTANCE + 0.01, CENTER), 0);
+    }
+
+    /**
+     * The nearest distance matches the distance to the nearest of all discs, limited to the search distance, for
+     * particles at every distance from a scattered cluster.
+     */
+    @Test
+    public void nearestDistanceMatchesEveryDisc()
+    {
+        Xoshiro256StarStar random = new Xoshiro256StarStar(5);
+        OffLatticeCluster discs = createDiscs();
+        int discCount = 3000;
+        double[] xs = new double[discCount];
+        double[] ys = new double[discCount];
+        for (int i = 0; i < discCount; i++)
+        {
+            xs[i] = 32 + random.nextDouble() * (GRID_SIZE - 64);
+            ys[i] = 32 + random.nextDouble() * (GRID_SIZE - 64);
+            discs.add(xs[i], ys[i]);
+        }
+
+        for (int p = 0; p < 2000; p++)
+        {
+            double x = 16 + random.nextDouble() * (GRID_SIZE - 32);
+            double y = 16 + random.nextDouble() * (GRID_SIZE - 32);
+            double expected = OffLatticeCluster.SEARCH_DISTANCE;
+            for (int i = 0; i < discCount; i++)
+            {
+                expected = Math.min(expected, Math.hypot(xs[i] - x, ys[i] - y));
+            }
+            assertEquals(expected, discs.getNearestDistance(x, y), 1e-9);
+        }
+    }
+
+    /**
+     * Create an empty cluster in a grid of the test size.
+     * @return The cluster.
+     */
+    private static OffLatticeCluster createDiscs()
+    {
+        return new OffLatticeCluster(GRID_SIZE, new OccupancyGridFactory(GridStorage.PACKED, false, null));
+    }
+}
@@ -0,0 +1,197 @@
+package com.fergusleah.dla;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * ParticleStoreTest checks that snapshots keep the particles and epoch they were taken with across clears and
+ * truncations, and that the store itself only holds the particles of its current generation.
+ * @author Fergus Leah
+ */
+public class ParticleStoreTest
+{
+    // More particles than fit in two chunks of the store, so that truncations can keep a partial chunk
+    private static final int PARTICLE_COUNT = 10000;
+
+    // The number of threads adding particles at once
+    private static final int THREAD_COUNT = 4;
+
+    /**
+     * Particles are numbered in the order they are added.
+     */
+    @Test
+    public void addAssignsIndicesInOrder()
+    {
+        ParticleStore particles = new ParticleStore();
+        fill(particles, PARTICLE_COUNT, 0);
+        assertEquals(PARTICLE_COUNT, particles.size());
+        assertEquals(0, particles.getEpoch());
+        assertParticles(particles, PARTICLE_COUNT, 0);
+    }
+
+    /**
+     * A snapshot only holds the particles added before it was taken.
+     */
+    @Test
+    public void snapshotIgnoresLaterAdditions()
+    {
+        ParticleStore particles = new ParticleStore();
+        fill(particles, 100, 0);
+        ParticleView snapshot = particles.snapshot();
+        fill(particles, PARTICLE_COUNT, 100);
+        assertEquals(100, snapshot.size());
+        assertEquals(PARTICLE_COUNT, particles.size());
+    }
+
+    /**
+     * Clearing starts a new epoch, while a snapshot of the cleared particles keeps them and their epoch.
+     */
+    @Test
+    public void snapshotSurvivesClear()
+    {
+        ParticleStore particles = new ParticleStore();
+        fill(particles, PARTICLE_COUNT, 0);
+        ParticleView snapshot = particles.snapshot();
+
+        particles.clear();
+        assertEquals(0, particles.size());
+        assertEquals(1, particles.getEpoch());
+
+        // New particles written over the same indices do not reach the snapshot
+        fill(particles, PARTICLE_COUNT / 2, 7);
+        assertEquals(0, snapshot.getEpoch());
+        assertParticles(snapshot, PARTICLE_COUNT, 0);
+        assertParticles(particles, PARTICLE_COUNT / 2, 7);
+    }
+
+    /**
+     * Truncating keeps the earlier particles in the store, while a snapshot keeps the removed particles even where
+     * their indices, including those in the partly kept chunk, are written again.
+     */
+    @Test
+    public void snapshotSurvivesTruncate()
+    {
+        ParticleStore particles = new ParticleStore();
+        fill(particles, PARTICLE_COUNT, 0);
+        ParticleView snapshot = particles.snapshot();
+
+        int kept = 5000;
+        particles.truncate(kept);
+        assertEquals(1, particles.getEpoch());
+        assertParticles(particles, kept, 0);
+
+        // Refill the removed indices with different particles
+        for (int i = kept; i < PARTICLE_COUNT; i++)
+        {
+            assertEquals(i, particles.add(-i, -i, 1));
+        }
+        assertEquals(0, snapshot.getEpoch());
+        assertParticles(snapshot, PARTICLE_COUNT, 0);
+        assertEquals(kept - 1, particles.getX(kept - 1));
+        assertEquals(-kept, particles.getX(kept));
+        assertEquals(1, particles.getRgb(PARTICLE_COUNT - 1));
+    }
+
+    /**
+     * When no snapshot has seen a generation its chunk table is reused, which must not leave any of its particles
+     * behind, however many clears and truncations follow one another.
+     */
+    @Test
+    public void unseenGenerationsLeaveNoParticles()
+    {
+        ParticleStore particles = new ParticleStore();
+        for (int round = 0; round < 5; round++)
+        {
+            fill(particles, PARTICLE_COUNT, round);
+            particles.truncate(PARTICLE_COUNT / 3);
+            assertParticles(particles, PARTICLE_COUNT / 3, round);
+            particles.clear();
+            assertEquals(0, particles.size());
+        }
+        assertEquals(10, particles.getEpoch());
+
+        // A snapshot of a reused table still sees its particles once the next generation replaces it
+        fill(particles, 10, 3);
+        ParticleView snapshot = particles.snapshot();
+        particles.clear();
+        fill(particles, PARTICLE_COUNT, 4);
+        assertParticles(snapshot, 10, 3);
+        assertParticles(particles, PARTICLE_COUNT, 4);
+    }
+
+    /**
+     * Particles added by several threads at once are all published, each with a distinct index.
+     * @throws InterruptedException If the test was interrupted.
+     */
+    @Test
+    public void concurrentAdditionsAreAllPublished() throws InterruptedException
+    {
+        final ParticleStore particles = new ParticleStore();
+        Thread[] threads = new Thread[THREAD_COUNT];
+        for (int t = 0; t < THREAD_COUNT; t++)
+        {
+            final int thread = t;
+            threads[t] = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    for (int i = 0; i < PARTICLE_COUNT; i++)
+                    {
+                        particles.add(thread, i, i & 0xFFFFFF);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (int t = 0; t < THREAD_COUNT; t++)
+        {
+            threads[t].join();
+        }
+
+        assertEquals(THREAD_COUNT * PARTICLE_COUNT, particles.size());
+        int[] counts = new int[THREAD_COUNT];
+        for (int i = 0; i < particles.size(); i++)
+        {
+            assertEquals(i, particles.getOrder(i));
+            assertEquals(particles.getY(i) & 0xFFFFFF, particles.getRgb(i));
+            counts[particles.getX(i)]++;
+        }
+        for (int t = 0; t < THREAD_COUNT; t++)
+        {
+            assertEquals(PARTICLE_COUNT, counts[t]);
+        }
+    }
+
+    /**
+     * Add particles whose values follow from their index.
+     * @param particles The store.
+     * @param count The size of the store once the particles are added.
+     * @param offset Added to every value, so that different fills can be told apart.
+     */
+    private static void fill(ParticleStore particles, int count, int offset)
+    {
+        for (int i = particles.size(); i < count; i++)
+        {
+            assertEquals(i, particles.add(i + offset, 2 * i + offset, (3 * i + offset) & 0xFFFFFF));
+        }
+    }
+
+    /**
+     * Check that the first particles of a view hold the values written by fill().
+     * @param particles The view.
+     * @param count The number of particles in the view.
+     * @param offset The offset the particles were added with.
+     */
+    private static void assertParticles(ParticleView particles, int count, int offset)
+    {
+        assertEquals(count, particles.size());
+        for (int i = 0; i < count; i++)
+        {
+            assertEquals(i + offset, particles.getX(i));
+            assertEquals(2 * i + offset, particles.getY(i));
+            assertEquals(i, particles.getOrder(i));
+            assertEquals((3 * i + offset) & 0xFFFFFF, particles.getRgb(i));
+        }
+    }
+}
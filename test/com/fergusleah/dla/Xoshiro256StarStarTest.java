@@ -0,0 +1,164 @@
+package com.fergusleah.dla;
+
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Xoshiro256StarStarTest checks the generator against reference values of xoshiro256** and SplitMix64, and checks
+ * that split sources and streams are independent.
+ * @author Fergus Leah
+ */
+public class Xoshiro256StarStarTest
+{
+    // The number of values compared when checking that two sources do not overlap
+    private static final int OVERLAP_VALUES = 10000;
+
+    /**
+     * The first values from the state {1, 2, 3, 4} match the reference implementation of xoshiro256**.
+     */
+    @Test
+    public void nextLongMatchesReferenceValues()
+    {
+        Xoshiro256StarStar random = new Xoshiro256StarStar(new long[] { 1, 2, 3, 4 });
+        assertEquals(11520L, random.nextLong());
+        assertEquals(0L, random.nextLong());
+        assertEquals(1509978240L, random.nextLong());
+        assertEquals(1215971899390074240L, random.nextLong());
+    }
+
+    /**
+     * A seed is expanded into the state using the first four SplitMix64 values of the seed.
+     */
+    @Test
+    public void seedIsExpandedUsingSplitMix64()
+    {
+        long[] expected = { 0xe220a8397b1dcdafL, 0x6e789e6aa1b965f4L, 0x06c45d188009454fL, 0xf88bb8a8724c81ecL };
+        assertArrayEquals(expected, new Xoshiro256StarStar(0).getState());
+    }
+
+    /**
+     * Splitting returns a source continuing from the current state and jumps this source by the reference jump.
+     */
+    @Test
+    public void splitContinuesFromStateAndJumpsAhead()
+    {
+        Xoshiro256StarStar random = new Xoshiro256StarStar(new long[] { 1, 2, 3, 4 });
+        RandomSource split = random.split();
+
+        // The split source produces the values this source would have produced
+        assertEquals(11520L, split.nextLong());
+        assertEquals(0L, split.nextLong());
+
+        // This source has jumped 2^128 values ahead, as computed by the reference jump function
+        long[] jumped = { 0x8c7a153956b5f3d1L, 0x701f1a713401d85eL, 0x6527f66a65469085L, 0x8386b786c4408050L };
+        assertArrayEquals(jumped, random.getState());
+        assertEquals(0xbbd2f312298443d8L, random.nextLong());
+        assertEquals(0x62e57db2d5706577L, random.nextLong());
+    }
+
+    /**
+     * Sources split from one another share no values over a long run.
+     */
+    @Test
+    public void splitSourcesDoNotOverlap()
+    {
+        Xoshiro256StarStar random = new Xoshiro256StarStar(42);
+        RandomSource split = random.split();
+        assertNoOverlap(random, split);
+    }
+
+    /**
+     * Stream 0 of a seed matches a generator created from the seed.
+     */
+    @Test
+    public void streamZeroMatchesSeed()
+    {
+        Xoshiro256StarStar stream = new Xoshiro256StarStar(1);
+        stream.setStream(42, 0);
+        assertArrayEquals(new Xoshiro256StarStar(42).getState(), stream.getState());
+    }
+
+    /**
+     * Resetting a generator to a stream always restarts the same values, whatever the generator did before.
+     */
+    @Test
+    public void setStreamRestartsTheSameValues()
+    {
+        Xoshiro256StarStar random = new Xoshiro256StarStar(7);
+        random.setStream(42, 5);
+        long first = random.nextLong();
+        long second = random.nextLong();
+
+        random.setStream(42, 6);
+        random.nextLong();
+        random.setStream(42, 5);
+        assertEquals(first, random.nextLong());
+        assertEquals(second, random.nextLong());
+    }
+
+    /**
+     * Neighbouring streams of a seed have different states and share no values over a long run.
+     */
+    @Test
+    public void neighbouringStreamsAreIndependent()
+    {
+        Xoshiro256StarStar first = new Xoshiro256StarStar(0);
+        Xoshiro256StarStar second = new Xoshiro256StarStar(0);
+        first.setStream(42, 1);
+        second.setStream(42, 2);
+
+        // Stream n uses SplitMix64 values 4n to 4n + 3, so the last value of one stream is not the first of the next
+        assertFalse(first.getState()[3] == second.getState()[0]);
+        assertNoOverlap(first, second);
+    }
+
+    /**
+     * Bounded integers and doubles stay within their ranges.
+     */
+    @Test
+    public void boundedValuesStayInRange()
+    {
+        Xoshiro256StarStar random = new Xoshiro256StarStar(3);
+        for (int i = 0; i < OVERLAP_VALUES; i++)
+        {
+            int bounded = random.nextInt(7);
+            assertTrue(bounded >= 0 && bounded < 7);
+            int powerOfTwo = random.nextInt(64);
+            assertTrue(powerOfTwo >= 0 && powerOfTwo < 64);
+            double fraction = random.nextDouble();
+            assertTrue(fraction >= 0 && fraction < 1);
+        }
+    }
+
+    /**
+     * A bound which is not positive is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void nonPositiveBoundIsRejected()
+    {
+        new Xoshiro256StarStar(3).nextInt(0);
+    }
+
+    /**
+     * Check that two sources produce no common values over a long run.
+     * @param first The first source.
+     * @param second The second source.
+     */
+    private static void assertNoOverlap(RandomSource first, RandomSource second)
+    {
+        Set<Long> values = new HashSet<Long>();
+        for (int i = 0; i < OVERLAP_VALUES; i++)
+        {
+            values.add(first.nextLong());
+        }
+        for (int i = 0; i < OVERLAP_VALUES; i++)
+        {
+            assertFalse(values.contains(second.nextLong()));
+        }
+    }
+}